@@ -25,6 +25,10 @@ import com.eldersoftware.pdfassist.adapters.SimpleCardListAdapter;
 import com.eldersoftware.pdfassist.data.DocInfoContract;
 import com.eldersoftware.pdfassist.dialogs.CreateEditDocDialog;
 import com.eldersoftware.pdfassist.dialogs.YesNoDialog;
+import com.eldersoftware.pdfassist.export.ExportJobQueue;
+import com.eldersoftware.pdfassist.export.ExportJobService;
+import com.eldersoftware.pdfassist.images.ImageStore;
+import com.eldersoftware.pdfassist.storage.StorageSweeper;
 import com.eldersoftware.pdfassist.utils.ProviderUtils;
 
 public class AllDocsActivity extends AppCompatActivity implements
@@ -36,8 +40,10 @@ public class AllDocsActivity extends AppCompatActivity implements
     private static final int DOC_LOADER_ID = 118;
     public static final String[] DOC_LOADER_PROJECTION = {
             DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME,
+            DocInfoContract.DocInfoListEntry._ID
     };
     public static final int INDEX_DOC_NAME = 0;
+    public static final int INDEX_DOC_ID = 1;
 
 
     private final String LOG_TAG = getClass().getSimpleName();
@@ -65,6 +71,18 @@ public class AllDocsActivity extends AppCompatActivity implements
 
         //Initialises the loader for retrieving the doc information
         LoaderManager.getInstance(this).initLoader(DOC_LOADER_ID, null, this);
+
+        //Resumes exports queued before the app was last closed
+        if (savedInstanceState == null && ExportJobQueue.hasPendingJobs(this)) {
+            ExportJobService.start(this);
+        }
+
+        //Moves page images taken before the image store into it
+        if (savedInstanceState == null) {
+            ImageStore.migrateAsync(this);
+            //Deletes images and PDFs no longer used, queued after the migration
+            StorageSweeper.sweepAsync(this);
+        }
     }
 
 
@@ -77,9 +95,29 @@ public class AllDocsActivity extends AppCompatActivity implements
     }
 
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        //Export is only shown while docs are selected
+        menu.findItem(R.id.action_export_selected).setVisible(mAllDocsAdapter.isSelecting());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+
+    @Override
+    public void onBackPressed() {
+        if (mAllDocsAdapter.isSelecting()) {
+            mAllDocsAdapter.clearSelection();
+        } else {
+            super.onBackPressed();
+        }
+    }
+
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
-        if (item.getItemId() == R.id.action_create_doc) {
+        if (item.getItemId() == R.id.action_search) {
+            startActivity(new Intent(this, SearchActivity.class));
+        } else if (item.getItemId() == R.id.action_create_doc) {
             new CreateEditDocDialog(this, null,
                     new CreateEditDocDialog.SuccessCallback() {
                 @Override
@@ -89,6 +127,13 @@ public class AllDocsActivity extends AppCompatActivity implements
                             .restartLoader(DOC_LOADER_ID, null, AllDocsActivity.this);
                 }
             }).show();
+        } else if (item.getItemId() == R.id.action_export_selected) {
+            //Queues the selected docs and starts the export service to work through them
+            int queued = ExportJobQueue.enqueue(this, mAllDocsAdapter.getSelectedDocs(),
+                    DocInfoContract.ExportJobEntry.PRIORITY_NORMAL);
+            mAllDocsAdapter.clearSelection();
+            ExportJobService.start(this);
+            Toast.makeText(this, "Exporting " + queued + " docs", Toast.LENGTH_SHORT).show();
         }
 
         return super.onOptionsItemSelected(item);
@@ -145,6 +190,18 @@ public class AllDocsActivity extends AppCompatActivity implements
     }
 
 
+    /**
+     * ClickHandler from the SimpleCardListAdapter,
+     * called when a row is selected or unselected
+     * @param selectedCount - number of selected docs
+     */
+    @Override
+    public void onSimpleCardListSelectionChanged(int selectedCount) {
+        setTitle(selectedCount > 0 ? selectedCount + " Selected" : "All Docs");
+        invalidateOptionsMenu();
+    }
+
+
     /**
      * ClickHandler from the SimpleCardListAdapter,
      * called when a rows popup menu is tapped
@@ -166,6 +223,18 @@ public class AllDocsActivity extends AppCompatActivity implements
                     }
                 }).show();
                 break;
+            case R.id.action_simple_card_list_duplicate:
+                //Copies the doc rows, the page images are shared with the copy
+                String copyName = ProviderUtils.duplicateDoc(docName, this);
+                if (copyName != null) {
+                    Toast.makeText(this, ProviderUtils.CREATE_DOC_SUCCESS + copyName,
+                            Toast.LENGTH_LONG).show();
+                    LoaderManager.getInstance(this).restartLoader(DOC_LOADER_ID, null, this);
+                } else {
+                    Toast.makeText(this, "Failed to duplicate: " + docName, Toast.LENGTH_LONG)
+                            .show();
+                }
+                break;
             case R.id.action_simple_card_list_delete:
                 YesNoDialog.showYesNoDialog(this,
                         "Delete Doc",
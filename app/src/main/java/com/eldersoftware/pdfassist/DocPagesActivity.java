@@ -11,6 +11,7 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import android.content.ActivityNotFoundException;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.database.Cursor;
@@ -30,18 +31,23 @@ import com.eldersoftware.pdfassist.data.DocInfoContract;
 import com.eldersoftware.pdfassist.dialogs.CreateEditTextDialog;
 import com.eldersoftware.pdfassist.dialogs.LoadingDialog;
 import com.eldersoftware.pdfassist.dialogs.YesNoDialog;
+import com.eldersoftware.pdfassist.export.ExportJobQueue;
+import com.eldersoftware.pdfassist.export.ExportJobService;
+import com.eldersoftware.pdfassist.images.CaptureRecompressor;
 import com.eldersoftware.pdfassist.pdf.CreateDocAsync;
+import com.eldersoftware.pdfassist.pdf.DocExporter;
 import com.eldersoftware.pdfassist.utils.CameraUtils;
 import com.eldersoftware.pdfassist.utils.ProviderUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Locale;
 
 import static com.eldersoftware.pdfassist.utils.CameraUtils.REQUEST_CAMERA_AND_STORAGE_PERMISSIONS;
 import static com.eldersoftware.pdfassist.utils.ProviderUtils.PAGE_NAMES_INDEX;
-import static com.eldersoftware.pdfassist.utils.ProviderUtils.PAGE_PROJECTION;
+import static com.eldersoftware.pdfassist.utils.ProviderUtils.PAGE_LIST_PROJECTION;
 
 public class DocPagesActivity extends AppCompatActivity implements
         LoaderManager.LoaderCallbacks<Cursor>,
@@ -52,6 +58,9 @@ public class DocPagesActivity extends AppCompatActivity implements
     private static final int ACTIVITY_START_CAMERA_APP = 100;
     private static final int PAGE_LOADER_ID = 349;
 
+    //Optional intent extra, the page scrolled to once the pages have loaded
+    public static final String EXTRA_PAGE_POSITION = "pagePosition";
+
     ArrayList<String[]> mAllPageInfo = new ArrayList<>();
     TitleImageTextAdapter mPagesAdapter;
 
@@ -62,6 +71,8 @@ public class DocPagesActivity extends AppCompatActivity implements
 
     Uri mDocNameUri;
 
+    int mScrollToPosition = -1;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -77,8 +88,10 @@ public class DocPagesActivity extends AppCompatActivity implements
         mPagesRecyclerView.setLayoutManager(layoutManager);
         mPagesRecyclerView.setHasFixedSize(true);
 
-        mPagesAdapter = new TitleImageTextAdapter(this, mAllPageInfo, this);
+        mPagesAdapter = new TitleImageTextAdapter(this, this);
         mPagesRecyclerView.setAdapter(mPagesAdapter);
+        mPagesRecyclerView.addOnScrollListener(mPagesAdapter.createPreloader(
+                getResources().getInteger(R.integer.page_image_preload_rows)));
 
         mDocNameUri = getIntent().getData();
 
@@ -86,6 +99,10 @@ public class DocPagesActivity extends AppCompatActivity implements
             setTitle(mDocNameUri.getLastPathSegment());
         }
 
+        if (savedInstanceState == null) {
+            mScrollToPosition = getIntent().getIntExtra(EXTRA_PAGE_POSITION, -1);
+        }
+
         //Initialises loader for retrieving page information
         LoaderManager.getInstance(this).initLoader(PAGE_LOADER_ID, null, this);
     }
@@ -115,21 +132,52 @@ public class DocPagesActivity extends AppCompatActivity implements
             });
             editTextDialog.show();
         } else if (item.getItemId() == R.id.action_create_pdf) {
-            // Shows the loading dialog and creates the pdf
+            // Shows the loading dialog and creates the pdf, cancelling the dialog stops it
             final LoadingDialog loadingDialog = new LoadingDialog(this, "Creating PDF");
-            loadingDialog.show();
-            new CreateDocAsync(this, new CreateDocAsync.CreateDocAsyncCallback() {
+            int exportMode = DocExporter.chooseExportMode(
+                    mAllPageInfo.isEmpty() ? 0 : mAllPageInfo.get(PAGE_NAMES_INDEX).length);
+            final CreateDocAsync createDocAsync = new CreateDocAsync(this, exportMode,
+                    new CreateDocAsync.CreateDocAsyncCallback() {
                 @Override
                 public void onComplete(File pdfFile) {
                     loadingDialog.dismiss();
-                    launchPdfIntent(pdfFile);
+                    if (pdfFile != null) {
+                        launchPdfIntent(pdfFile);
+                    } else {
+                        Toast.makeText(DocPagesActivity.this, "Error creating PDF",
+                                Toast.LENGTH_LONG).show();
+                    }
                 }
 
                 @Override
-                public void onUpdate() {
+                public void onUpdate(int pageIndex, int totalPages, long bytesWritten,
+                                     long elapsedMillis) {
+                    loadingDialog.updateLoadingMessage(String.format(Locale.getDefault(),
+                            "Creating PDF, page %d of %d", pageIndex + 1, totalPages));
+                    loadingDialog.updateProgress(pageIndex + 1, totalPages);
+                }
 
+                @Override
+                public void onCancelled() {
+                    Toast.makeText(DocPagesActivity.this, "PDF cancelled",
+                            Toast.LENGTH_SHORT).show();
+                }
+            });
+            loadingDialog.setCancelButton(new DialogInterface.OnCancelListener() {
+                @Override
+                public void onCancel(DialogInterface dialogInterface) {
+                    createDocAsync.cancelExport();
                 }
-            }).execute(mDocNameUri);
+            });
+            loadingDialog.show();
+            createDocAsync.execute(mDocNameUri);
+        } else if (item.getItemId() == R.id.action_export_background) {
+            // Queues the doc ahead of other exports, the service notifies when it is done
+            ExportJobQueue.enqueue(this,
+                    Collections.singletonList(mDocNameUri.getLastPathSegment()),
+                    DocInfoContract.ExportJobEntry.PRIORITY_HIGH);
+            ExportJobService.start(this);
+            Toast.makeText(this, "Exporting in the background", Toast.LENGTH_SHORT).show();
         }
 
         return super.onOptionsItemSelected(item);
@@ -142,8 +190,8 @@ public class DocPagesActivity extends AppCompatActivity implements
         switch (id) {
             case PAGE_LOADER_ID:
                 return new CursorLoader(this,
-                        mDocNameUri,
-                        PAGE_PROJECTION,
+                        DocInfoContract.PageEntry.buildDocPagesUri(mDocNameUri),
+                        PAGE_LIST_PROJECTION,
                         null,
                         null,
                         null);
@@ -155,9 +203,20 @@ public class DocPagesActivity extends AppCompatActivity implements
 
     @Override
     public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor data) {
-        if (data != null && data.moveToFirst()) {
-            mAllPageInfo = ProviderUtils.splitPageData(data);
-            mPagesAdapter.swapData(mAllPageInfo);
+        if (data != null) {
+            mAllPageInfo = ProviderUtils.collectPageData(data);
+            mPagesAdapter.swapData(mAllPageInfo, ProviderUtils.collectPageIds(data),
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            //Only scrolls on the first load, later loads keep the users position
+                            if (mScrollToPosition >= 0 &&
+                                    mScrollToPosition < mPagesAdapter.getItemCount()) {
+                                mPagesRecyclerView.scrollToPosition(mScrollToPosition);
+                            }
+                            mScrollToPosition = -1;
+                        }
+                    });
         }
     }
 
@@ -181,15 +240,12 @@ public class DocPagesActivity extends AppCompatActivity implements
         editTextDialog.setClickListener(new CreateEditTextDialog.CreateEditTextCallback() {
             @Override
             public void onSave(String newText) {
-                //Joins the array with the new data inserted
-                String newData = ProviderUtils.replaceArrayElementAndJoin(
-                        mAllPageInfo.get(ProviderUtils.PAGE_NAMES_INDEX), newText, position);
-
-                //Updates the row with new page information
+                //Updates the pages row with the new page information
                 ProviderUtils.updatePageColumn(
                         mDocNameUri,
-                        DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_NAMES,
-                        newData,
+                        position,
+                        DocInfoContract.PageEntry.COLUMN_PAGE_NAME,
+                        newText,
                         DocPagesActivity.this);
 
                 //Restarts the loader to show the new page data in the recyclerview
@@ -248,15 +304,12 @@ public class DocPagesActivity extends AppCompatActivity implements
         editTextDialog.setClickListener(new CreateEditTextDialog.CreateEditTextCallback() {
             @Override
             public void onSave(String newText) {
-                //Joins the array with the new data inserted
-                String newData = ProviderUtils.replaceArrayElementAndJoin(
-                        mAllPageInfo.get(ProviderUtils.PAGE_TEXT_INDEX), newText, position);
-
-                //Updates the row with new page information
+                //Updates the pages row with the new page information
                 ProviderUtils.updatePageColumn(
                         mDocNameUri,
-                        DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_TEXT,
-                        newData,
+                        position,
+                        DocInfoContract.PageEntry.COLUMN_PAGE_TEXT,
+                        newText,
                         DocPagesActivity.this);
 
                 //Restarts the loader to show the new page data in the recyclerview
@@ -285,7 +338,7 @@ public class DocPagesActivity extends AppCompatActivity implements
                     public void yesNoCallback(boolean yesSelected) {
                         //Attempts to remove the respective page from the database
                         //Shows a toast message for a success/error
-                        if (ProviderUtils.deletePage(DocPagesActivity.this, mAllPageInfo, position, mDocNameUri)) {
+                        if (ProviderUtils.deletePage(DocPagesActivity.this, position, mDocNameUri)) {
                             LoaderManager.getInstance(DocPagesActivity.this)
                                     .restartLoader(PAGE_LOADER_ID, null,
                                             DocPagesActivity.this);
@@ -297,17 +350,26 @@ public class DocPagesActivity extends AppCompatActivity implements
     @Override
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         if (requestCode == ACTIVITY_START_CAMERA_APP && resultCode == RESULT_OK) {
-            //Joins the array with the new data inserted
-            String newData = ProviderUtils.replaceArrayElementAndJoin(
-                    mAllPageInfo.get(ProviderUtils.PAGE_IMAGES_INDEX), mImageLocation, mImageIndex);
-
-            //Updates the row with new page information
+            //Updates the pages row with the new image location
             ProviderUtils.updatePageColumn(
                     mDocNameUri,
-                    DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_IMAGES,
-                    newData,
+                    mImageIndex,
+                    DocInfoContract.PageEntry.COLUMN_PAGE_IMAGE,
+                    mImageLocation,
                     this);
 
+            //Shrinks the capture and moves it into the image store, the pages are reloaded
+            //again once the page shows the stored image
+            CaptureRecompressor.processAsync(this, mDocNameUri, mImageLocation, new Runnable() {
+                @Override
+                public void run() {
+                    if (!isDestroyed()) {
+                        LoaderManager.getInstance(DocPagesActivity.this)
+                                .restartLoader(PAGE_LOADER_ID, null, DocPagesActivity.this);
+                    }
+                }
+            });
+
             //Restarts the loader to show the new page data in the recyclerview
             LoaderManager.getInstance(this).restartLoader(PAGE_LOADER_ID, null, this);
 
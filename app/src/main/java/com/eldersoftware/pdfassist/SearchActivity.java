@@ -0,0 +1,159 @@
+package com.eldersoftware.pdfassist;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.loader.app.LoaderManager;
+import androidx.loader.content.CursorLoader;
+import androidx.loader.content.Loader;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.os.Handler;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.View;
+import android.widget.EditText;
+import android.widget.TextView;
+
+import com.eldersoftware.pdfassist.adapters.SearchResultsAdapter;
+import com.eldersoftware.pdfassist.data.DocInfoContract;
+
+/**
+ * Searches the titles and text of every page, results are updated as the query is typed
+ */
+public class SearchActivity extends AppCompatActivity implements
+        LoaderManager.LoaderCallbacks<Cursor>,
+        SearchResultsAdapter.SearchResultClickHandler {
+
+    private static final int SEARCH_LOADER_ID = 527;
+    private static final String ARG_QUERY = "query";
+    private static final int SEARCH_RESULT_LIMIT = 200;
+
+    //Waits for a pause in typing, so a search isn't run for every key
+    private static final long SEARCH_DELAY_MILLIS = 150;
+
+    private EditText mQueryEditText;
+    private TextView mEmptyTextView;
+    private SearchResultsAdapter mResultsAdapter;
+
+    private Handler mHandler = new Handler();
+    private Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            search();
+        }
+    };
+
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_search);
+
+        mQueryEditText = findViewById(R.id.et_search_query);
+        mEmptyTextView = findViewById(R.id.tv_search_empty);
+        RecyclerView resultsRecyclerView = findViewById(R.id.rv_search_results);
+
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        layoutManager.setOrientation(LinearLayoutManager.VERTICAL);
+        resultsRecyclerView.setLayoutManager(layoutManager);
+        resultsRecyclerView.setHasFixedSize(true);
+
+        mResultsAdapter = new SearchResultsAdapter(this, this);
+        resultsRecyclerView.setAdapter(mResultsAdapter);
+
+        setTitle("Search");
+
+        mQueryEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) { }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) { }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                mHandler.removeCallbacks(mSearchRunnable);
+                mHandler.postDelayed(mSearchRunnable, SEARCH_DELAY_MILLIS);
+            }
+        });
+
+        //Reconnects to the last search after a rotation
+        if (LoaderManager.getInstance(this).getLoader(SEARCH_LOADER_ID) != null) {
+            LoaderManager.getInstance(this).initLoader(SEARCH_LOADER_ID, null, this);
+        }
+    }
+
+
+    @Override
+    protected void onDestroy() {
+        mHandler.removeCallbacks(mSearchRunnable);
+        super.onDestroy();
+    }
+
+
+    private void search() {
+        String query = mQueryEditText.getText().toString().trim();
+        if (query.isEmpty()) {
+            LoaderManager.getInstance(this).destroyLoader(SEARCH_LOADER_ID);
+            mResultsAdapter.swapCursor(null);
+            mEmptyTextView.setVisibility(View.GONE);
+            return;
+        }
+
+        Bundle args = new Bundle();
+        args.putString(ARG_QUERY, query);
+        LoaderManager.getInstance(this).restartLoader(SEARCH_LOADER_ID, args, this);
+    }
+
+
+    @NonNull
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, @Nullable Bundle args) {
+        switch (id) {
+            case SEARCH_LOADER_ID:
+                String query = args != null ? args.getString(ARG_QUERY) : null;
+                return new CursorLoader(this,
+                        DocInfoContract.SearchEntry.buildSearchUri(
+                                query != null ? query : "", SEARCH_RESULT_LIMIT),
+                        null,
+                        null,
+                        null,
+                        null);
+            default:
+                throw new RuntimeException("Loader Not Implemented: " + id);
+        }
+    }
+
+
+    @Override
+    public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor data) {
+        mResultsAdapter.swapCursor(data);
+        mEmptyTextView.setVisibility(data != null && data.getCount() == 0
+                ? View.VISIBLE : View.GONE);
+    }
+
+
+    @Override
+    public void onLoaderReset(@NonNull Loader<Cursor> loader) {
+        mResultsAdapter.swapCursor(null);
+    }
+
+
+    /**
+     * ClickHandler from the SearchResultsAdapter, opens the doc at the page found
+     * @param docName - doc name
+     * @param pagePosition - page position, starting from 0
+     */
+    @Override
+    public void onSearchResultTap(String docName, int pagePosition) {
+        Intent docPagesIntent = new Intent(this, DocPagesActivity.class);
+        docPagesIntent.setData(DocInfoContract.DocInfoListEntry.buildDocNameUri(docName));
+        docPagesIntent.putExtra(DocPagesActivity.EXTRA_PAGE_POSITION, pagePosition);
+        startActivity(docPagesIntent);
+    }
+}
@@ -0,0 +1,155 @@
+package com.eldersoftware.pdfassist.adapters;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.eldersoftware.pdfassist.R;
+import com.eldersoftware.pdfassist.data.DocInfoContract.SearchEntry;
+
+
+/**
+ * Adapter for the search results cursor, each row shows the page, its doc and a snippet of the
+ * text around the matched words, which are shown in bold.
+ */
+public class SearchResultsAdapter extends
+        RecyclerView.Adapter<SearchResultsAdapter.SearchResultViewHolder> {
+    private Cursor mCursor;
+    private Context mContext;
+    private SearchResultClickHandler mClickHandler;
+
+    //Interface is a click handler for when a result is tapped
+    public interface SearchResultClickHandler {
+        void onSearchResultTap(String docName, int pagePosition);
+    }
+
+    /**
+     * Default constructor
+     * @param context - apps current context
+     * @param clickHandler - click handler
+     */
+    public SearchResultsAdapter(@NonNull Context context, SearchResultClickHandler clickHandler) {
+        mContext = context;
+        mClickHandler = clickHandler;
+    }
+
+
+    @NonNull
+    @Override
+    public SearchResultViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(mContext)
+                .inflate(R.layout.adapter_search_result, parent, false);
+        return new SearchResultViewHolder(view);
+    }
+
+
+    @Override
+    public void onBindViewHolder(@NonNull SearchResultViewHolder holder, int position) {
+        mCursor.moveToPosition(position);
+
+        int pagePosition = mCursor.getInt(mCursor.getColumnIndexOrThrow(
+                SearchEntry.COLUMN_PAGE_POSITION));
+        holder.mPageTextView.setText(mCursor.getString(mCursor.getColumnIndexOrThrow(
+                SearchEntry.COLUMN_PAGE_NAME)));
+        holder.mDocTextView.setText(mCursor.getString(mCursor.getColumnIndexOrThrow(
+                SearchEntry.COLUMN_DOC_NAME)) + ", page " + (pagePosition + 1));
+        holder.mSnippetTextView.setText(highlightMatches(mCursor.getString(
+                mCursor.getColumnIndexOrThrow(SearchEntry.COLUMN_SNIPPET))));
+    }
+
+
+    @Override
+    public int getItemCount() {
+        if (mCursor == null) {
+            return 0;
+        }
+        return mCursor.getCount();
+    }
+
+
+    /**
+     * Used to exchange new cursor data
+     * @param newCursor - new cursor
+     */
+    public void swapCursor(Cursor newCursor) {
+        if (mCursor == newCursor) {
+            return;
+        }
+        mCursor = newCursor;
+        notifyDataSetChanged();
+    }
+
+
+    /**
+     * Replaces the match markers in the snippet with bold text
+     * @param snippet - snippet with the SearchEntry match markers, may be null
+     * @return text to show
+     */
+    private static CharSequence highlightMatches(String snippet) {
+        SpannableStringBuilder text = new SpannableStringBuilder();
+        if (snippet == null) {
+            return text;
+        }
+
+        int index = 0;
+        while (index < snippet.length()) {
+            int start = snippet.indexOf(SearchEntry.SNIPPET_MATCH_START, index);
+            int end = start != -1 ? snippet.indexOf(SearchEntry.SNIPPET_MATCH_END, start) : -1;
+            if (end == -1) {
+                text.append(snippet, index, snippet.length());
+                break;
+            }
+
+            text.append(snippet, index, start);
+            int boldStart = text.length();
+            text.append(snippet, start + SearchEntry.SNIPPET_MATCH_START.length(), end);
+            text.setSpan(new StyleSpan(Typeface.BOLD), boldStart, text.length(),
+                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            index = end + SearchEntry.SNIPPET_MATCH_END.length();
+        }
+        return text;
+    }
+
+
+    /**
+     * View holder class that will be used by the rows, taken from the adapter_search_result
+     * layout file
+     */
+    public class SearchResultViewHolder extends RecyclerView.ViewHolder {
+        TextView mPageTextView;
+        TextView mDocTextView;
+        TextView mSnippetTextView;
+
+        public SearchResultViewHolder(View viewParent) {
+            super(viewParent);
+            mPageTextView = viewParent.findViewById(R.id.tv_search_result_page);
+            mDocTextView = viewParent.findViewById(R.id.tv_search_result_doc);
+            mSnippetTextView = viewParent.findViewById(R.id.tv_search_result_snippet);
+
+            viewParent.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    int position = getAdapterPosition();
+                    if (position == RecyclerView.NO_POSITION || !mCursor.moveToPosition(position)) {
+                        return;
+                    }
+                    mClickHandler.onSearchResultTap(
+                            mCursor.getString(mCursor.getColumnIndexOrThrow(
+                                    SearchEntry.COLUMN_DOC_NAME)),
+                            mCursor.getInt(mCursor.getColumnIndexOrThrow(
+                                    SearchEntry.COLUMN_PAGE_POSITION)));
+                }
+            });
+        }
+    }
+}
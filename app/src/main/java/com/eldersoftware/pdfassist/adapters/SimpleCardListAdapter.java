@@ -10,26 +10,41 @@ import android.widget.PopupMenu;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.cardview.widget.CardView;
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.eldersoftware.pdfassist.AllDocsActivity;
 import com.eldersoftware.pdfassist.R;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 
 /**
  * A basic adapter that uses a cursors data to inflate views that contain simply text and a
- * popup menu to support CRUD operations.
+ * popup menu to support CRUD operations. Rows can be long pressed to select several docs.
+ * Docs are identified by their row id, a new cursor is diffed against the shown docs on a
+ * background thread so only the docs that changed are bound again.
  */
 public class SimpleCardListAdapter extends
         RecyclerView.Adapter<SimpleCardListAdapter.SimpleCardViewHolder> {
-    private Cursor mCursor;
+    private AsyncListDiffer<DocItem> mDiffer;
     private Context mContext;
     private SimpleCardListClickHandler mClickHandler;
 
+    //Doc names of the selected rows, kept by name so the selection survives a cursor swap
+    private Set<String> mSelectedDocs = new HashSet<>();
+
     //Interface is a click handler for when the popup menu or row is tapped
     public interface SimpleCardListClickHandler {
         void onSimpleCardListTap(String docName, View view);
         void onSimpleCardListPopUpTap(int menuItemId, String docName);
+        void onSimpleCardListSelectionChanged(int selectedCount);
     }
 
     /**
@@ -40,6 +55,8 @@ public class SimpleCardListAdapter extends
     public SimpleCardListAdapter(@NonNull Context context, SimpleCardListClickHandler clickHandler) {
         this.mContext = context;
         this.mClickHandler = clickHandler;
+        this.mDiffer = new AsyncListDiffer<>(this, DOC_DIFF_CALLBACK);
+        setHasStableIds(true);
     }
 
     /**
@@ -59,16 +76,16 @@ public class SimpleCardListAdapter extends
 
 
     /**
-     * Uses the Cursor member variable to get the docs name and sets the the textview
+     * Uses the current list to get the docs name and sets the the textview
      * @param holder - simple card adapter view holder used from the onCreateViewHolder method
      * @param position - index of row
      */
     @Override
     public void onBindViewHolder(@NonNull SimpleCardViewHolder holder, int position) {
-        mCursor.moveToPosition(position); // get to the right location in the cursor
-
-        String description = mCursor.getString(AllDocsActivity.INDEX_DOC_NAME);
+        String description = mDiffer.getCurrentList().get(position).mName;
         holder.mDocNameTextView.setText(description);
+        ((CardView) holder.itemView).setCardBackgroundColor(ContextCompat.getColor(mContext,
+                mSelectedDocs.contains(description) ? R.color.colorSelected : android.R.color.white));
     }
 
     /**
@@ -77,31 +94,108 @@ public class SimpleCardListAdapter extends
      */
     @Override
     public int getItemCount() {
-        if (mCursor == null) {
-            return 0;
+        return mDiffer.getCurrentList().size();
+    }
+
+
+    /**
+     * @param position - index of row
+     * @return doc row id, kept by the doc when it is renamed
+     */
+    @Override
+    public long getItemId(int position) {
+        return mDiffer.getCurrentList().get(position).mId;
+    }
+
+
+    /**
+     * Used to exchange new cursor data. The docs are read from the cursor, which is left open
+     * for its loader, and the rows are updated once they have been diffed on a background thread
+     * @param newCursor - new cursor, queried with the AllDocsActivity.DOC_LOADER_PROJECTION
+     */
+    public void swapCursor(Cursor newCursor) {
+        List<DocItem> docs = new ArrayList<>();
+        if (newCursor != null) {
+            newCursor.moveToPosition(-1);
+            while (newCursor.moveToNext()) {
+                docs.add(new DocItem(newCursor.getLong(AllDocsActivity.INDEX_DOC_ID),
+                        newCursor.getString(AllDocsActivity.INDEX_DOC_NAME)));
+            }
         }
-        return mCursor.getCount();
+        mDiffer.submitList(docs);
+    }
+
+
+    /**
+     * @return true while at least one row is selected, taps then toggle the selection
+     */
+    public boolean isSelecting() {
+        return !mSelectedDocs.isEmpty();
     }
 
 
     /**
-     * Used to exchange new cursor data
-     * @param newCursor - new cursor
-     * @return the cursor used for the data set
+     * @return names of the selected docs
      */
-    public Cursor swapCursor(Cursor newCursor) {
-        // check if this cursor is the same as the previous cursor (mCursor)
-        if (mCursor == newCursor) {
-            return null; //as nothing has changed
+    public List<String> getSelectedDocs() {
+        return new ArrayList<>(mSelectedDocs);
+    }
+
+
+    /**
+     * Selects the doc if it isn't selected, otherwise unselects it
+     * @param docName - doc name
+     */
+    public void toggleSelection(String docName) {
+        if (!mSelectedDocs.remove(docName)) {
+            mSelectedDocs.add(docName);
+        }
+        //Only the toggled row changes colour
+        List<DocItem> docs = mDiffer.getCurrentList();
+        for (int i = 0; i < docs.size(); i++) {
+            if (docs.get(i).mName.equals(docName)) {
+                notifyItemChanged(i);
+                break;
+            }
         }
-        Cursor temp = mCursor;
-        this.mCursor = newCursor; // new cursor value assigned
+        mClickHandler.onSimpleCardListSelectionChanged(mSelectedDocs.size());
+    }
 
-        //check if this is a valid cursor, then update the cursor
-        if (newCursor != null) {
-            this.notifyDataSetChanged();
+
+    public void clearSelection() {
+        mSelectedDocs.clear();
+        notifyItemRangeChanged(0, getItemCount());
+        mClickHandler.onSimpleCardListSelectionChanged(0);
+    }
+
+
+    //Docs are the same doc if they have the same row id, and are bound again if renamed
+    private static final DiffUtil.ItemCallback<DocItem> DOC_DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<DocItem>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull DocItem oldDoc, @NonNull DocItem newDoc) {
+                    return oldDoc.mId == newDoc.mId;
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull DocItem oldDoc,
+                                                  @NonNull DocItem newDoc) {
+                    return oldDoc.mName.equals(newDoc.mName);
+                }
+            };
+
+
+    /**
+     * A shown doc
+     */
+    static class DocItem {
+        final long mId;
+        final String mName;
+
+        DocItem(long id, String name) {
+            mId = id;
+            mName = name;
         }
-        return temp;
     }
 
 
@@ -148,7 +242,21 @@ public class SimpleCardListAdapter extends
             mDocNameTextView.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View view) {
-                    mClickHandler.onSimpleCardListTap(mDocNameTextView.getText().toString(), viewParent);
+                    String docName = mDocNameTextView.getText().toString();
+                    if (isSelecting()) {
+                        toggleSelection(docName);
+                    } else {
+                        mClickHandler.onSimpleCardListTap(docName, viewParent);
+                    }
+                }
+            });
+
+            // Long press starts selecting docs, or adds to the selection
+            mDocNameTextView.setOnLongClickListener(new View.OnLongClickListener() {
+                @Override
+                public boolean onLongClick(View view) {
+                    toggleSelection(mDocNameTextView.getText().toString());
+                    return true;
                 }
             });
         }
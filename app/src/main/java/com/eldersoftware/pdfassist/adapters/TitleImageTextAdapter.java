@@ -1,6 +1,9 @@
 package com.eldersoftware.pdfassist.adapters;
 
 import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.MenuItem;
 import android.view.View;
@@ -10,26 +13,92 @@ import android.widget.PopupMenu;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.cardview.widget.CardView;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.RequestOptions;
+import com.bumptech.glide.ListPreloader;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.integration.recyclerview.RecyclerViewPreloader;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+import com.bumptech.glide.signature.ObjectKey;
+import com.bumptech.glide.util.ViewPreloadSizeProvider;
 import com.eldersoftware.pdfassist.R;
+import com.eldersoftware.pdfassist.images.PageThumbnail;
+import com.eldersoftware.pdfassist.images.ThumbnailStore;
 import com.eldersoftware.pdfassist.utils.ProviderUtils;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
- * Adapter that contains items with a page number, title, image, supporting text and popup menu
+ * Adapter that contains items with a page number, title, image, supporting text and popup menu.
+ * Pages are identified by their row id, new page data is diffed against the shown pages on a
+ * background thread so only the pages that changed are bound again.
  */
 public class TitleImageTextAdapter extends
         RecyclerView.Adapter<TitleImageTextAdapter.TitleImageTextViewHolder> {
     Context mContext;
     TitleImageTextClickHandler mClickHandler;
-    String[] mPageNameData;
-    String[] mPageImageData;
-    String[] mPageTextData;
+    AsyncListDiffer<PageItem> mDiffer;
+    ViewPreloadSizeProvider<PageThumbnail> mPreloadSizeProvider;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    //Builds the pages of each swap in turn, so the lists are submitted in the order swapped
+    private static final Executor sPageExecutor = Executors.newSingleThreadExecutor();
+
+    //Preloads the thumbnails of the rows about to be shown, the thumbnail files are looked up
+    //by Glide off the main thread
+    private final ListPreloader.PreloadModelProvider<PageThumbnail> mPreloadModelProvider =
+            new ListPreloader.PreloadModelProvider<PageThumbnail>() {
+                @NonNull
+                @Override
+                public List<PageThumbnail> getPreloadItems(int position) {
+                    List<PageItem> pages = mDiffer.getCurrentList();
+                    if (position >= pages.size() || !pages.get(position).hasImage()) {
+                        return Collections.emptyList();
+                    }
+                    return Collections.singletonList(pages.get(position).mThumbnail);
+                }
+
+                @Override
+                public RequestBuilder<?> getPreloadRequestBuilder(
+                        @NonNull PageThumbnail thumbnail) {
+                    return buildImageRequest(thumbnail);
+                }
+            };
+
+    //A page whose thumbnail isn't made yet fails to load, its thumbnail is then made in the
+    //background and the rows showing it are bound again
+    private final RequestListener<Drawable> mThumbnailListener = new RequestListener<Drawable>() {
+        @Override
+        public boolean onLoadFailed(@Nullable GlideException e, Object model,
+                                    Target<Drawable> target, boolean isFirstResource) {
+            final String imagePath = ((PageThumbnail) model).getImagePath();
+            ThumbnailStore.createAsync(mContext, imagePath, new Runnable() {
+                @Override
+                public void run() {
+                    onThumbnailCreated(imagePath);
+                }
+            });
+            return false;
+        }
+
+        @Override
+        public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target,
+                                       DataSource dataSource, boolean isFirstResource) {
+            return false;
+        }
+    };
 
     //Interface click handler used for tapping on either the title, image, text or popup menu
     public interface TitleImageTextClickHandler {
@@ -44,19 +113,15 @@ public class TitleImageTextAdapter extends
     /**
      * Constructor to store member variables
      * @param context - context
-     * @param pageData - page data
      * @param clickHandler - click handler
      */
     public TitleImageTextAdapter(@NonNull Context context,
-                                 ArrayList<String[]> pageData,
                                  TitleImageTextClickHandler clickHandler) {
         this.mContext = context;
         this.mClickHandler = clickHandler;
-        if (pageData.size() > 0) {
-            this.mPageNameData = pageData.get(ProviderUtils.PAGE_NAMES_INDEX);
-            this.mPageImageData = pageData.get(ProviderUtils.PAGE_IMAGES_INDEX);
-            this.mPageTextData = pageData.get(ProviderUtils.PAGE_TEXT_INDEX);
-        }
+        this.mDiffer = new AsyncListDiffer<>(this, PAGE_DIFF_CALLBACK);
+        this.mPreloadSizeProvider = new ViewPreloadSizeProvider<>();
+        setHasStableIds(true);
     }
 
 
@@ -74,7 +139,11 @@ public class TitleImageTextAdapter extends
         LayoutInflater inflater = LayoutInflater.from(mContext);
         View view = inflater.inflate(R.layout.adapter_title_image_text, parent, false);
 
-        return new TitleImageTextAdapter.TitleImageTextViewHolder(view);
+        TitleImageTextAdapter.TitleImageTextViewHolder holder =
+                new TitleImageTextAdapter.TitleImageTextViewHolder(view);
+        // Measures the page image view once, so preloads are decoded at its size
+        mPreloadSizeProvider.setView(holder.mPageImage);
+        return holder;
     }
 
     /**
@@ -85,48 +154,179 @@ public class TitleImageTextAdapter extends
     @Override
     public void onBindViewHolder(@NonNull TitleImageTextAdapter.TitleImageTextViewHolder holder,
                                  int position) {
-        holder.mPageNameTextView.setText(mPageNameData[position]);
-
-        if (mPageImageData[position] != null && !mPageImageData[position].equals("null") &&
-                !mPageImageData[position].isEmpty()) {
-//            holder.mPageImage.setBackgroundColor(R.color.cardview_shadow_end_color);
-            RequestOptions options = new RequestOptions();
-            options = options.fitCenter();
+        PageItem page = mDiffer.getCurrentList().get(position);
+        holder.mPageNameTextView.setText(page.mName);
 
-            Glide.with(mContext)
-                    .load(mPageImageData[position])
-                    .apply(options)
+        // Only thumbnails are loaded, an image without one shows the camera icon until its
+        // thumbnail has been made in the background
+        if (page.hasImage()) {
+            buildImageRequest(page.mThumbnail)
+                    .error(android.R.drawable.ic_menu_camera)
                     .into(holder.mPageImage);
+        } else {
+            // The row may have been showing another pages image
+            Glide.with(mContext).clear(holder.mPageImage);
+            holder.mPageImage.setImageResource(android.R.drawable.ic_menu_camera);
         }
 
-        if (!mPageTextData[position].equals(ProviderUtils.PROVIDER_NULL)) {
-            holder.mPageText.setText(mPageTextData[position]);
+        holder.mPageText.setText(page.hasText() ? page.mText : "");
+    }
+
+    /**
+     * Thumbnails are cached by image path. Stored images never change at their path, any other
+     * image may still be replaced before it is moved into the store, so its modified time is
+     * added to the key. The preloads use the same request, and so the same key
+     * @param thumbnail - thumbnail of the page image
+     * @return request for the thumbnail at the size of the page image view
+     */
+    private RequestBuilder<Drawable> buildImageRequest(PageThumbnail thumbnail) {
+        RequestBuilder<Drawable> request = Glide.with(mContext)
+                .load(thumbnail)
+                .listener(mThumbnailListener)
+                .fitCenter();
+        if (!thumbnail.isStored()) {
+            request = request.signature(new ObjectKey(thumbnail.getModifiedTime()));
         }
+        return request;
+    }
+
+
+    /**
+     * Creates a scroll listener that loads the thumbnails of the rows about to be shown, sized
+     * to the page image view once a row has been laid out
+     * @param maxPreload - number of rows to load ahead
+     * @return preloader to add to the recycler view
+     */
+    public RecyclerViewPreloader<PageThumbnail> createPreloader(int maxPreload) {
+        return new RecyclerViewPreloader<>(Glide.with(mContext), mPreloadModelProvider,
+                mPreloadSizeProvider, maxPreload);
     }
 
+
     /**
      * @return integer with the number of rows
      */
     @Override
     public int getItemCount() {
-        if (mPageNameData != null) {
-            return mPageNameData.length;
-        }
+        return mDiffer.getCurrentList().size();
+    }
 
-        return 0;
+
+    /**
+     * @param position - index of row
+     * @return page row id, kept by the page when pages before it are added or removed
+     */
+    @Override
+    public long getItemId(int position) {
+        return mDiffer.getCurrentList().get(position).mId;
     }
 
+
     /**
-     * Used to exchange new adapter data, then refreshes the data set
+     * Used to exchange new adapter data. The pages are built on a background thread, as each
+     * reads the modified time of its image, then diffed against the current rows so only the
+     * changed rows are updated
      * @param newPageData - contains page titles, images and text
+     * @param pageIds - row id of each page
+     * @param commitCallback - run once the new rows are shown, may be null
+     */
+    public void swapData(final ArrayList<String[]> newPageData, final long[] pageIds,
+                         final Runnable commitCallback) {
+        sPageExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<PageItem> pages = buildPages(newPageData, pageIds);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mDiffer.submitList(pages, commitCallback);
+                    }
+                });
+            }
+        });
+    }
+
+
+    private static List<PageItem> buildPages(ArrayList<String[]> pageData, long[] pageIds) {
+        List<PageItem> pages = new ArrayList<>();
+        if (pageData.size() > 0) {
+            String[] names = pageData.get(ProviderUtils.PAGE_NAMES_INDEX);
+            String[] images = pageData.get(ProviderUtils.PAGE_IMAGES_INDEX);
+            String[] text = pageData.get(ProviderUtils.PAGE_TEXT_INDEX);
+            for (int i = 0; i < names.length; i++) {
+                pages.add(new PageItem(pageIds[i], names[i], images[i], text[i]));
+            }
+        }
+        return pages;
+    }
+
+
+    /**
+     * Binds the rows showing the image again, once its thumbnail has been made
+     * @param imagePath - page image
+     */
+    public void onThumbnailCreated(String imagePath) {
+        List<PageItem> pages = mDiffer.getCurrentList();
+        for (int i = 0; i < pages.size(); i++) {
+            if (imagePath.equals(pages.get(i).mImage)) {
+                notifyItemChanged(i);
+            }
+        }
+    }
+
+
+    //Pages are the same page if they have the same row id, and are bound again only if one of
+    //the shown values has changed
+    private static final DiffUtil.ItemCallback<PageItem> PAGE_DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<PageItem>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull PageItem oldPage,
+                                               @NonNull PageItem newPage) {
+                    return oldPage.mId == newPage.mId;
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull PageItem oldPage,
+                                                  @NonNull PageItem newPage) {
+                    return oldPage.mName.equals(newPage.mName) &&
+                            oldPage.mImage.equals(newPage.mImage) &&
+                            oldPage.getImageModifiedTime() == newPage.getImageModifiedTime() &&
+                            oldPage.mText.equals(newPage.mText);
+                }
+            };
+
+
+    /**
+     * A shown page, values missing in the provider are PROVIDER_NULL
      */
-    public void swapData(ArrayList<String[]> newPageData) {
-        if (newPageData.size() > 0) {
-            this.mPageNameData = newPageData.get(ProviderUtils.PAGE_NAMES_INDEX);
-            this.mPageImageData = newPageData.get(ProviderUtils.PAGE_IMAGES_INDEX);
-            this.mPageTextData = newPageData.get(ProviderUtils.PAGE_TEXT_INDEX);
+    static class PageItem {
+        final long mId;
+        final String mName;
+        final String mImage;
+        final String mText;
+        // Made once with the page, off the main thread, so every bind and preload loads the
+        // same model. Null if the page has no image
+        final PageThumbnail mThumbnail;
+
+        PageItem(long id, String name, String image, String text) {
+            mId = id;
+            mName = name;
+            mImage = image;
+            mText = text;
+            mThumbnail = hasImage() ? new PageThumbnail(image) : null;
+        }
+
+        boolean hasImage() {
+            return !mImage.isEmpty() && !mImage.equals(ProviderUtils.PROVIDER_NULL);
+        }
+
+        long getImageModifiedTime() {
+            return mThumbnail != null ? mThumbnail.getModifiedTime() : 0;
+        }
+
+        boolean hasText() {
+            return !mText.equals(ProviderUtils.PROVIDER_NULL);
         }
-        notifyDataSetChanged();
     }
 
 
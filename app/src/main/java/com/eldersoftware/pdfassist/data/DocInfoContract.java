@@ -1,5 +1,6 @@
 package com.eldersoftware.pdfassist.data;
 
+import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
@@ -14,16 +15,221 @@ public class DocInfoContract {
     //For accessing this specific table through the Uri
     public static final String PATH_DOC_INFO_NAME = "docInfoTable";
 
+    //For accessing a single doc by its row id. Kept apart from the doc name uris, as a doc
+    //name can be a number
+    public static final String PATH_DOC_INFO_ID = "docInfoId";
+
+    //Appended to a doc name uri to access the pages belonging to that doc
+    public static final String PATH_PAGES = "pages";
+
+    //For searching the page titles and text
+    public static final String PATH_SEARCH = "search";
+
+    //For accessing the queue of background exports
+    public static final String PATH_EXPORT_JOBS = "exportJobs";
+
+    //For accessing the metadata read from the page images
+    public static final String PATH_IMAGE_METADATA = "imageMetadata";
+
+    //For accessing the images kept in the shared image store
+    public static final String PATH_IMAGE_STORE = "imageStore";
+
     //Column constants
     public static final class DocInfoListEntry implements BaseColumns {
         public static final Uri DOC_INFO_URI =
                 BASE_CONTENT_URI.buildUpon().appendPath(PATH_DOC_INFO_NAME).build();
 
+        public static final Uri DOC_INFO_ID_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_DOC_INFO_ID).build();
+
         public static final String TABLE_NAME = "docInfoTable";
+        //Unique, inserting or renaming to a name in use is ignored by the provider
         public static final String COLUMN_DOC_NAME = "docName";
+
+        //Incremented by the provider on every write to the doc or its pages
+        public static final String COLUMN_DOC_VERSION = "docVersion";
+
+        //Last PDF exported for the doc, the doc version it was exported from and its size.
+        //Writing only these columns doesn't change the doc version
+        public static final String COLUMN_EXPORT_PATH = "exportPath";
+        public static final String COLUMN_EXPORT_VERSION = "exportVersion";
+        public static final String COLUMN_EXPORT_SIZE = "exportSize";
+
+        //Legacy page columns, each holding every page of the doc joined with "_split_".
+        //Only read when upgrading a version 1 database, pages now live in the PageEntry table
         public static final String COLUMN_DOC_PAGE_NAMES = "docPageNames";
         public static final String COLUMN_DOC_PAGE_IMAGES = "docPageImages";
         public static final String COLUMN_DOC_PAGE_TEXT = "docPageText";
+
+        /**
+         * @param docId - doc row id
+         * @return Uri for the doc, stays the same when the doc is renamed
+         */
+        public static Uri buildDocUri(long docId) {
+            return ContentUris.withAppendedId(DOC_INFO_ID_URI, docId);
+        }
+
+
+        /**
+         * @param docName - doc name
+         * @return Uri for the doc name
+         */
+        public static Uri buildDocNameUri(String docName) {
+            return DOC_INFO_URI.buildUpon().appendPath(docName).build();
+        }
+    }
+
+    //Page table constants, one row per page keyed by the doc id and the pages position
+    public static final class PageEntry implements BaseColumns {
+        //The pages of every doc, for changes to all the pages showing an image
+        public static final Uri ALL_PAGES_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_PAGES).build();
+
+        public static final String TABLE_NAME = "pagesTable";
+        public static final String COLUMN_DOC_ID = "docId";
+        public static final String COLUMN_PAGE_POSITION = "pagePosition";
+        public static final String COLUMN_PAGE_NAME = "pageName";
+        public static final String COLUMN_PAGE_IMAGE = "pageImage";
+        public static final String COLUMN_PAGE_TEXT = "pageText";
+
+        /**
+         * Builds the uri for all the pages of a doc,
+         * will have the format content://authority/docInfoTable/docname/pages
+         * @param docNameUri - doc name uri
+         * @return Uri for the docs pages
+         */
+        public static Uri buildDocPagesUri(Uri docNameUri) {
+            return docNameUri.buildUpon().appendPath(PATH_PAGES).build();
+        }
+
+        /**
+         * Builds the uri for a single page of a doc,
+         * will have the format content://authority/docInfoTable/docname/pages/position
+         * @param docNameUri - doc name uri
+         * @param position - page position, starting from 0
+         * @return Uri for the page
+         */
+        public static Uri buildPageUri(Uri docNameUri, int position) {
+            return buildDocPagesUri(docNameUri).buildUpon()
+                    .appendPath(String.valueOf(position)).build();
+        }
+    }
+
+    //Export job constants, one row per doc queued for a background export. Jobs are removed
+    //with their doc
+    public static final class ExportJobEntry implements BaseColumns {
+        public static final Uri EXPORT_JOBS_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_EXPORT_JOBS).build();
+
+        public static final String TABLE_NAME = "exportJobsTable";
+        public static final String COLUMN_DOC_ID = "docId";
+        public static final String COLUMN_PRIORITY = "priority";
+        public static final String COLUMN_STATE = "state";
+        public static final String COLUMN_ATTEMPTS = "attempts";
+        public static final String COLUMN_EXPORT_PATH = "exportPath";
+        public static final String COLUMN_ERROR = "error";
+        public static final String COLUMN_CREATED_TIME = "createdTime";
+        public static final String COLUMN_UPDATED_TIME = "updatedTime";
+
+        //Job states
+        public static final int STATE_QUEUED = 0;
+        public static final int STATE_RUNNING = 1;
+        public static final int STATE_DONE = 2;
+        public static final int STATE_FAILED = 3;
+
+        //Higher priority jobs are run first, jobs of the same priority in the order queued
+        public static final int PRIORITY_NORMAL = 0;
+        public static final int PRIORITY_HIGH = 10;
+
+        /**
+         * Builds the uri for a single export job,
+         * will have the format content://authority/exportJobs/id
+         * @param jobId - job row id
+         * @return Uri for the job
+         */
+        public static Uri buildExportJobUri(long jobId) {
+            return ContentUris.withAppendedId(EXPORT_JOBS_URI, jobId);
+        }
     }
 
+    //Full text search constants. The index holds the page titles and text and is kept up to
+    //date by triggers on the pages table. Each result row is a page, its _ID is the page row id
+    public static final class SearchEntry implements BaseColumns {
+        public static final Uri SEARCH_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_SEARCH).build();
+
+        public static final String TABLE_NAME = "pagesSearch";
+
+        //Search uri parameters, the words to search for and the most results returned
+        public static final String PARAM_QUERY = "query";
+        public static final String PARAM_LIMIT = "limit";
+
+        //Result columns
+        public static final String COLUMN_DOC_ID = "docId";
+        public static final String COLUMN_DOC_NAME = "docName";
+        public static final String COLUMN_PAGE_POSITION = "pagePosition";
+        public static final String COLUMN_PAGE_NAME = "pageName";
+        public static final String COLUMN_SNIPPET = "snippet";
+
+        //Placed around the matched words in the snippet, control characters so they can't
+        //appear in page text
+        public static final String SNIPPET_MATCH_START = "\u0002";
+        public static final String SNIPPET_MATCH_END = "\u0003";
+
+        /**
+         * Builds the uri to search for pages containing words starting with each word of the
+         * query, will have the format content://authority/search?query=words
+         * @param query - words typed by the user
+         * @param limit - most results returned
+         * @return Uri for the search
+         */
+        public static Uri buildSearchUri(String query, int limit) {
+            return SEARCH_URI.buildUpon()
+                    .appendQueryParameter(PARAM_QUERY, query)
+                    .appendQueryParameter(PARAM_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+    }
+
+
+    //Image metadata constants, one row per image file, read once when the image is attached to
+    //a page so exports can size and rotate it without opening the file. A row is stale once
+    //the size or modified time of the file differ from the ones recorded
+    public static final class ImageMetadataEntry implements BaseColumns {
+        public static final Uri IMAGE_METADATA_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_IMAGE_METADATA).build();
+
+        public static final String TABLE_NAME = "imageMetadataTable";
+        //Unique, inserting the metadata of a path replaces its row
+        public static final String COLUMN_IMAGE_PATH = "imagePath";
+        //Size of the stored pixels in pixels, before the rotation is applied
+        public static final String COLUMN_WIDTH = "width";
+        public static final String COLUMN_HEIGHT = "height";
+        //Clockwise rotation from the EXIF orientation, 0, 90, 180 or 270
+        public static final String COLUMN_ROTATION = "rotation";
+        public static final String COLUMN_BYTE_SIZE = "byteSize";
+        public static final String COLUMN_MODIFIED_TIME = "modifiedTime";
+        //Hex SHA-256 of the file, null for images read ahead of an export rather than when
+        //they were captured or stored
+        public static final String COLUMN_CONTENT_HASH = "contentHash";
+    }
+
+    //Image store constants, one row per image file in the shared store. Files are named by the
+    //hash of their content, so an image used by many pages is kept once. The reference count
+    //is the number of pages showing the image, kept up to date by triggers on the pages table
+    public static final class ImageStoreEntry implements BaseColumns {
+        public static final Uri IMAGE_STORE_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_IMAGE_STORE).build();
+
+        public static final String TABLE_NAME = "imageStoreTable";
+        //Hex SHA-256 of the file, unique
+        public static final String COLUMN_CONTENT_HASH = "contentHash";
+        //Path of the stored file, unique. Pages refer to the image by this path
+        public static final String COLUMN_IMAGE_PATH = "imagePath";
+        public static final String COLUMN_REF_COUNT = "refCount";
+        public static final String COLUMN_CREATED_TIME = "createdTime";
+        //Time the last page showing the image stopped showing it, null while it is shown or
+        //if no page has shown it yet. Set by the reference count triggers
+        public static final String COLUMN_RELEASED_TIME = "releasedTime";
+    }
 }
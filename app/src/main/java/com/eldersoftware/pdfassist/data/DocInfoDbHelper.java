@@ -1,21 +1,220 @@
 package com.eldersoftware.pdfassist.data;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
 import androidx.annotation.Nullable;
 
+import com.eldersoftware.pdfassist.utils.ProviderUtils;
+
+import java.util.ArrayList;
+
 /**
  * Helper class used to instantiate a SQLite table that can be accessed by the content provider
  */
 public class DocInfoDbHelper extends SQLiteOpenHelper {
-    private static final String DATABASE_NAME = "docinfo.db";
-    private static final int DATABASE_VERSION = 1;
+    static final String DATABASE_NAME = "docinfo.db";
+    private static final int DATABASE_VERSION = 9;
+
+    //SQLite code executed to create the doc table
+    private static final String SQL_CREATE_DOCLIST_TABLE = "CREATE TABLE " +
+            DocInfoContract.DocInfoListEntry.TABLE_NAME + " (" +
+            DocInfoContract.DocInfoListEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME + " TEXT NOT NULL, " +
+            DocInfoContract.DocInfoListEntry.COLUMN_DOC_VERSION + " INTEGER NOT NULL DEFAULT 0, " +
+            DocInfoContract.DocInfoListEntry.COLUMN_EXPORT_PATH + " TEXT, " +
+            DocInfoContract.DocInfoListEntry.COLUMN_EXPORT_VERSION + " INTEGER, " +
+            DocInfoContract.DocInfoListEntry.COLUMN_EXPORT_SIZE + " INTEGER" +
+            ");";
+
+    //Docs are looked up and listed by name, which is unique
+    private static final String SQL_CREATE_DOC_NAME_INDEX = "CREATE UNIQUE INDEX docNameIndex ON " +
+            DocInfoContract.DocInfoListEntry.TABLE_NAME + " (" +
+            DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME + ");";
+
+    //SQLite code executed to create the pages table, pages are removed with their doc
+    private static final String SQL_CREATE_PAGES_TABLE = "CREATE TABLE " +
+            DocInfoContract.PageEntry.TABLE_NAME + " (" +
+            DocInfoContract.PageEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            DocInfoContract.PageEntry.COLUMN_DOC_ID + " INTEGER NOT NULL REFERENCES " +
+            DocInfoContract.DocInfoListEntry.TABLE_NAME + "(" +
+            DocInfoContract.DocInfoListEntry._ID + ") ON DELETE CASCADE, " +
+            DocInfoContract.PageEntry.COLUMN_PAGE_POSITION + " INTEGER NOT NULL, " +
+            DocInfoContract.PageEntry.COLUMN_PAGE_NAME + " TEXT, " +
+            DocInfoContract.PageEntry.COLUMN_PAGE_IMAGE + " TEXT, " +
+            DocInfoContract.PageEntry.COLUMN_PAGE_TEXT + " TEXT" +
+            ");";
+
+    //Pages are always looked up by doc id and position. Not unique, as deleting a page shifts
+    //the positions of the following pages in a single update
+    private static final String SQL_CREATE_PAGES_INDEX = "CREATE INDEX pagesDocPositionIndex ON " +
+            DocInfoContract.PageEntry.TABLE_NAME + " (" +
+            DocInfoContract.PageEntry.COLUMN_DOC_ID + ", " +
+            DocInfoContract.PageEntry.COLUMN_PAGE_POSITION + ");";
+
+
+    //Full text index of the page titles and text. The text is read from the pages table, so it
+    //isn't stored twice, and the index rowid is the page row id
+    private static final String SQL_CREATE_SEARCH_TABLE = "CREATE VIRTUAL TABLE " +
+            DocInfoContract.SearchEntry.TABLE_NAME + " USING fts4(content=\"" +
+            DocInfoContract.PageEntry.TABLE_NAME + "\", " +
+            DocInfoContract.PageEntry.COLUMN_PAGE_NAME + ", " +
+            DocInfoContract.PageEntry.COLUMN_PAGE_TEXT + ");";
+
+    //Triggers keeping the index in step with every write to the pages table. Old values are
+    //removed before a change, new values are added after it. Updates only moving a page to
+    //another position don't touch the index
+    private static final String SEARCH_DELETE_OLD = " BEGIN DELETE FROM " +
+            DocInfoContract.SearchEntry.TABLE_NAME + " WHERE docid = old." +
+            DocInfoContract.PageEntry._ID + "; END;";
+    private static final String SEARCH_INSERT_NEW = " BEGIN INSERT INTO " +
+            DocInfoContract.SearchEntry.TABLE_NAME + " (docid, " +
+            DocInfoContract.PageEntry.COLUMN_PAGE_NAME + ", " +
+            DocInfoContract.PageEntry.COLUMN_PAGE_TEXT + ") VALUES (new." +
+            DocInfoContract.PageEntry._ID + ", new." +
+            DocInfoContract.PageEntry.COLUMN_PAGE_NAME + ", new." +
+            DocInfoContract.PageEntry.COLUMN_PAGE_TEXT + "); END;";
+    private static final String SEARCH_UPDATE_OF = " UPDATE OF " +
+            DocInfoContract.PageEntry.COLUMN_PAGE_NAME + ", " +
+            DocInfoContract.PageEntry.COLUMN_PAGE_TEXT + " ON " +
+            DocInfoContract.PageEntry.TABLE_NAME;
+    private static final String[] SQL_CREATE_SEARCH_TRIGGERS = {
+            "CREATE TRIGGER pagesSearchBeforeDelete BEFORE DELETE ON " +
+                    DocInfoContract.PageEntry.TABLE_NAME + SEARCH_DELETE_OLD,
+            "CREATE TRIGGER pagesSearchBeforeUpdate BEFORE" + SEARCH_UPDATE_OF +
+                    SEARCH_DELETE_OLD,
+            "CREATE TRIGGER pagesSearchAfterUpdate AFTER" + SEARCH_UPDATE_OF +
+                    SEARCH_INSERT_NEW,
+            "CREATE TRIGGER pagesSearchAfterInsert AFTER INSERT ON " +
+                    DocInfoContract.PageEntry.TABLE_NAME + SEARCH_INSERT_NEW
+    };
+
+
+    //SQLite code executed to create the export job queue, jobs are removed with their doc
+    private static final String SQL_CREATE_EXPORT_JOBS_TABLE = "CREATE TABLE " +
+            DocInfoContract.ExportJobEntry.TABLE_NAME + " (" +
+            DocInfoContract.ExportJobEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            DocInfoContract.ExportJobEntry.COLUMN_DOC_ID + " INTEGER NOT NULL REFERENCES " +
+            DocInfoContract.DocInfoListEntry.TABLE_NAME + "(" +
+            DocInfoContract.DocInfoListEntry._ID + ") ON DELETE CASCADE, " +
+            DocInfoContract.ExportJobEntry.COLUMN_PRIORITY + " INTEGER NOT NULL DEFAULT 0, " +
+            DocInfoContract.ExportJobEntry.COLUMN_STATE + " INTEGER NOT NULL DEFAULT 0, " +
+            DocInfoContract.ExportJobEntry.COLUMN_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0, " +
+            DocInfoContract.ExportJobEntry.COLUMN_EXPORT_PATH + " TEXT, " +
+            DocInfoContract.ExportJobEntry.COLUMN_ERROR + " TEXT, " +
+            DocInfoContract.ExportJobEntry.COLUMN_CREATED_TIME + " INTEGER NOT NULL, " +
+            DocInfoContract.ExportJobEntry.COLUMN_UPDATED_TIME + " INTEGER NOT NULL" +
+            ");";
+
+    //The next job is picked by state, then priority and age
+    private static final String SQL_CREATE_EXPORT_JOBS_INDEX = "CREATE INDEX " +
+            "exportJobsStateIndex ON " + DocInfoContract.ExportJobEntry.TABLE_NAME + " (" +
+            DocInfoContract.ExportJobEntry.COLUMN_STATE + ", " +
+            DocInfoContract.ExportJobEntry.COLUMN_PRIORITY + ");";
+
+
+    //SQLite code executed to create the image metadata table. Rows are keyed by file path, as
+    //pages refer to their image by path
+    private static final String SQL_CREATE_IMAGE_METADATA_TABLE = "CREATE TABLE " +
+            DocInfoContract.ImageMetadataEntry.TABLE_NAME + " (" +
+            DocInfoContract.ImageMetadataEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            DocInfoContract.ImageMetadataEntry.COLUMN_IMAGE_PATH + " TEXT NOT NULL UNIQUE, " +
+            DocInfoContract.ImageMetadataEntry.COLUMN_WIDTH + " INTEGER NOT NULL, " +
+            DocInfoContract.ImageMetadataEntry.COLUMN_HEIGHT + " INTEGER NOT NULL, " +
+            DocInfoContract.ImageMetadataEntry.COLUMN_ROTATION + " INTEGER NOT NULL DEFAULT 0, " +
+            DocInfoContract.ImageMetadataEntry.COLUMN_BYTE_SIZE + " INTEGER NOT NULL, " +
+            DocInfoContract.ImageMetadataEntry.COLUMN_MODIFIED_TIME + " INTEGER NOT NULL, " +
+            DocInfoContract.ImageMetadataEntry.COLUMN_CONTENT_HASH + " TEXT" +
+            ");";
+
+
+    //SQLite code executed to create the image store table
+    private static final String SQL_CREATE_IMAGE_STORE_TABLE = "CREATE TABLE " +
+            DocInfoContract.ImageStoreEntry.TABLE_NAME + " (" +
+            DocInfoContract.ImageStoreEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            DocInfoContract.ImageStoreEntry.COLUMN_CONTENT_HASH + " TEXT NOT NULL UNIQUE, " +
+            DocInfoContract.ImageStoreEntry.COLUMN_IMAGE_PATH + " TEXT NOT NULL UNIQUE, " +
+            DocInfoContract.ImageStoreEntry.COLUMN_REF_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+            DocInfoContract.ImageStoreEntry.COLUMN_CREATED_TIME + " INTEGER NOT NULL, " +
+            DocInfoContract.ImageStoreEntry.COLUMN_RELEASED_TIME + " INTEGER" +
+            ");";
+
+    //Triggers counting the pages showing each stored image. Deleting a doc deletes its pages,
+    //which fires the delete trigger for each of them. Paths outside the store match no row.
+    //The time the count drops to 0 is recorded, so the sweeper keeps the image for the
+    //retention period from then. SET reads the values from before the update
+    private static final String SQL_NOW_MILLIS =
+            "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+    private static final String REF_COUNT_UPDATE = " UPDATE " +
+            DocInfoContract.ImageStoreEntry.TABLE_NAME + " SET " +
+            DocInfoContract.ImageStoreEntry.COLUMN_REF_COUNT + " = " +
+            DocInfoContract.ImageStoreEntry.COLUMN_REF_COUNT;
+    private static final String REF_COUNT_ADD_NEW = REF_COUNT_UPDATE + " + 1, " +
+            DocInfoContract.ImageStoreEntry.COLUMN_RELEASED_TIME + " = NULL WHERE " +
+            DocInfoContract.ImageStoreEntry.COLUMN_IMAGE_PATH + " = new." +
+            DocInfoContract.PageEntry.COLUMN_PAGE_IMAGE + ";";
+    private static final String REF_COUNT_REMOVE_OLD = REF_COUNT_UPDATE + " - 1, " +
+            DocInfoContract.ImageStoreEntry.COLUMN_RELEASED_TIME + " = CASE WHEN " +
+            DocInfoContract.ImageStoreEntry.COLUMN_REF_COUNT + " <= 1 THEN " + SQL_NOW_MILLIS +
+            " ELSE " + DocInfoContract.ImageStoreEntry.COLUMN_RELEASED_TIME + " END WHERE " +
+            DocInfoContract.ImageStoreEntry.COLUMN_IMAGE_PATH + " = old." +
+            DocInfoContract.PageEntry.COLUMN_PAGE_IMAGE + ";";
+    private static final String[] IMAGE_STORE_TRIGGER_NAMES = {
+            "imageStoreRefAfterInsert", "imageStoreRefAfterDelete", "imageStoreRefAfterUpdate"
+    };
+    private static final String[] SQL_CREATE_IMAGE_STORE_TRIGGERS = {
+            "CREATE TRIGGER " + IMAGE_STORE_TRIGGER_NAMES[0] + " AFTER INSERT ON " +
+                    DocInfoContract.PageEntry.TABLE_NAME + " WHEN new." +
+                    DocInfoContract.PageEntry.COLUMN_PAGE_IMAGE + " IS NOT NULL BEGIN" +
+                    REF_COUNT_ADD_NEW + " END;",
+            "CREATE TRIGGER " + IMAGE_STORE_TRIGGER_NAMES[1] + " AFTER DELETE ON " +
+                    DocInfoContract.PageEntry.TABLE_NAME + " WHEN old." +
+                    DocInfoContract.PageEntry.COLUMN_PAGE_IMAGE + " IS NOT NULL BEGIN" +
+                    REF_COUNT_REMOVE_OLD + " END;",
+            "CREATE TRIGGER " + IMAGE_STORE_TRIGGER_NAMES[2] + " AFTER UPDATE OF " +
+                    DocInfoContract.PageEntry.COLUMN_PAGE_IMAGE + " ON " +
+                    DocInfoContract.PageEntry.TABLE_NAME + " WHEN old." +
+                    DocInfoContract.PageEntry.COLUMN_PAGE_IMAGE + " IS NOT new." +
+                    DocInfoContract.PageEntry.COLUMN_PAGE_IMAGE + " BEGIN" +
+                    REF_COUNT_REMOVE_OLD + REF_COUNT_ADD_NEW + " END;"
+    };
+
+
+    //Page cache of the primary connection, negative values are in KiB. Only the primary
+    //connection runs onConfigure, the WAL read connections keep the default cache and there is
+    //no hook to configure them. The primary runs every write and transaction, so this holds the
+    //pages, index and search tables a page edit and its triggers touch
+    private static final int CACHE_SIZE_KIB = 4096;
+
+    //Compiled statements kept by each connection, covers every query the provider makes
+    private static final int MAX_SQL_CACHE_SIZE = 50;
 
 
     public DocInfoDbHelper(@Nullable Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        //Write ahead logging lets the loaders and exports read while a page edit is written,
+        //rather than waiting for the write to finish
+        setWriteAheadLoggingEnabled(true);
+    }
+
+
+    /**
+     * Enables foreign keys so deleting a doc also deletes its pages, and tunes the connection.
+     * The page size is left at the platform default of 4096, it can't be changed once the
+     * database is in WAL mode
+     * @param db database
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.setForeignKeyConstraintsEnabled(true);
+        db.setMaxSqlCacheSize(MAX_SQL_CACHE_SIZE);
+        db.execSQL("PRAGMA cache_size = -" + CACHE_SIZE_KIB);
+        //In WAL mode a commit only needs the log synced at checkpoints, an edit lost to a
+        //power cut is rolled back rather than corrupting the database
+        db.execSQL("PRAGMA synchronous = NORMAL");
     }
 
 
@@ -25,17 +224,15 @@ public class DocInfoDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
-        //SQLite code executed to create the table
-        final String SQL_CREATE_DOCLIST_TABLE = "CREATE TABLE " +
-                DocInfoContract.DocInfoListEntry.TABLE_NAME + " (" +
-                DocInfoContract.DocInfoListEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME + " TEXT NOT NULL, " +
-                DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_NAMES + " TEXT, " +
-                DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_IMAGES + " TEXT, " +
-                DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_TEXT + " TEXT" +
-                ");";
-
         db.execSQL(SQL_CREATE_DOCLIST_TABLE);
+        db.execSQL(SQL_CREATE_DOC_NAME_INDEX);
+        db.execSQL(SQL_CREATE_PAGES_TABLE);
+        db.execSQL(SQL_CREATE_PAGES_INDEX);
+        createSearchIndex(db);
+        db.execSQL(SQL_CREATE_EXPORT_JOBS_TABLE);
+        db.execSQL(SQL_CREATE_EXPORT_JOBS_INDEX);
+        db.execSQL(SQL_CREATE_IMAGE_METADATA_TABLE);
+        createImageStore(db);
     }
 
 
@@ -47,5 +244,193 @@ public class DocInfoDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            upgradeToPagesTable(db);
+        }
+        if (oldVersion < 3) {
+            upgradeToDocVersions(db);
+        }
+        if (oldVersion < 4) {
+            // Version 4 adds the export job queue, it starts empty
+            db.execSQL(SQL_CREATE_EXPORT_JOBS_TABLE);
+            db.execSQL(SQL_CREATE_EXPORT_JOBS_INDEX);
+        }
+        if (oldVersion < 5) {
+            upgradeToUniqueDocNames(db);
+        }
+        if (oldVersion < 6) {
+            // Version 6 adds the search index, filled from the existing pages
+            createSearchIndex(db);
+            db.execSQL("INSERT INTO " + DocInfoContract.SearchEntry.TABLE_NAME + " (" +
+                    DocInfoContract.SearchEntry.TABLE_NAME + ") VALUES ('rebuild')");
+        }
+        if (oldVersion < 7) {
+            // Version 7 adds the image metadata, existing images are read on their next export
+            db.execSQL(SQL_CREATE_IMAGE_METADATA_TABLE);
+        }
+        if (oldVersion < 8) {
+            // Version 8 adds the image store, existing images are moved in by the ImageStore.
+            // It is created with the version 9 released time
+            createImageStore(db);
+        } else if (oldVersion < 9) {
+            upgradeToReleasedTime(db);
+        }
+    }
+
+
+    /**
+     * Version 9 records when each stored image stopped being shown. Images already unused are
+     * treated as released now, so they get the whole retention period
+     * @param db - database, already in a transaction from the SQLiteOpenHelper
+     */
+    private static void upgradeToReleasedTime(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + DocInfoContract.ImageStoreEntry.TABLE_NAME + " ADD COLUMN " +
+                DocInfoContract.ImageStoreEntry.COLUMN_RELEASED_TIME + " INTEGER");
+        db.execSQL("UPDATE " + DocInfoContract.ImageStoreEntry.TABLE_NAME + " SET " +
+                DocInfoContract.ImageStoreEntry.COLUMN_RELEASED_TIME + " = " + SQL_NOW_MILLIS +
+                " WHERE " + DocInfoContract.ImageStoreEntry.COLUMN_REF_COUNT + " <= 0");
+        for (String triggerName : IMAGE_STORE_TRIGGER_NAMES) {
+            db.execSQL("DROP TRIGGER IF EXISTS " + triggerName);
+        }
+        for (String createTrigger : SQL_CREATE_IMAGE_STORE_TRIGGERS) {
+            db.execSQL(createTrigger);
+        }
+    }
+
+
+    /**
+     * Creates the image store and the triggers that count the pages showing each image
+     * @param db - database
+     */
+    private static void createImageStore(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_IMAGE_STORE_TABLE);
+        for (String createTrigger : SQL_CREATE_IMAGE_STORE_TRIGGERS) {
+            db.execSQL(createTrigger);
+        }
+    }
+
+
+    /**
+     * Creates the search index and the triggers that keep it up to date
+     * @param db - database
+     */
+    private static void createSearchIndex(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_SEARCH_TABLE);
+        for (String createTrigger : SQL_CREATE_SEARCH_TRIGGERS) {
+            db.execSQL(createTrigger);
+        }
+    }
+
+
+    /**
+     * Version 5 makes doc names unique. Names were only checked before inserting, so a
+     * duplicate may exist. The oldest doc keeps the name, the others have their id added
+     * @param db - database, already in a transaction from the SQLiteOpenHelper
+     */
+    private static void upgradeToUniqueDocNames(SQLiteDatabase db) {
+        String table = DocInfoContract.DocInfoListEntry.TABLE_NAME;
+        String id = DocInfoContract.DocInfoListEntry._ID;
+        String name = DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME;
+
+        db.execSQL("UPDATE " + table + " SET " + name + " = " + name + " || ' (' || " + id +
+                " || ')' WHERE " + id + " NOT IN (SELECT MIN(" + id + ") FROM " + table +
+                " GROUP BY " + name + ")");
+        db.execSQL(SQL_CREATE_DOC_NAME_INDEX);
+    }
+
+
+    /**
+     * Version 3 adds the doc version and the record of the last export to the doc table.
+     * Existing docs start at version 0 with no export, so their next export renders
+     * @param db - database, already in a transaction from the SQLiteOpenHelper
+     */
+    private static void upgradeToDocVersions(SQLiteDatabase db) {
+        String alterDocTable = "ALTER TABLE " + DocInfoContract.DocInfoListEntry.TABLE_NAME +
+                " ADD COLUMN ";
+        db.execSQL(alterDocTable + DocInfoContract.DocInfoListEntry.COLUMN_DOC_VERSION +
+                " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL(alterDocTable + DocInfoContract.DocInfoListEntry.COLUMN_EXPORT_PATH + " TEXT");
+        db.execSQL(alterDocTable + DocInfoContract.DocInfoListEntry.COLUMN_EXPORT_VERSION +
+                " INTEGER");
+        db.execSQL(alterDocTable + DocInfoContract.DocInfoListEntry.COLUMN_EXPORT_SIZE +
+                " INTEGER");
+    }
+
+
+    /**
+     * Version 2 moves the pages out of the "_split_" joined doc columns into the pages table.
+     * Each doc row is split once and its pages are inserted with their position, the legacy
+     * columns are then cleared as SQLite cannot drop them
+     * @param db - database, already in a transaction from the SQLiteOpenHelper
+     */
+    private static void upgradeToPagesTable(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_PAGES_TABLE);
+        db.execSQL(SQL_CREATE_PAGES_INDEX);
+
+        //Legacy page columns first so the cursor can be given to splitPageData, doc id last
+        String[] projection = {
+                DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_NAMES,
+                DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_IMAGES,
+                DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_TEXT,
+                DocInfoContract.DocInfoListEntry._ID
+        };
+        int docIdIndex = projection.length - 1;
+
+        SQLiteStatement insertPage = db.compileStatement("INSERT INTO " +
+                DocInfoContract.PageEntry.TABLE_NAME + " (" +
+                DocInfoContract.PageEntry.COLUMN_DOC_ID + ", " +
+                DocInfoContract.PageEntry.COLUMN_PAGE_POSITION + ", " +
+                DocInfoContract.PageEntry.COLUMN_PAGE_NAME + ", " +
+                DocInfoContract.PageEntry.COLUMN_PAGE_IMAGE + ", " +
+                DocInfoContract.PageEntry.COLUMN_PAGE_TEXT + ") VALUES (?, ?, ?, ?, ?)");
+
+        Cursor cursor = db.query(DocInfoContract.DocInfoListEntry.TABLE_NAME, projection,
+                null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                ArrayList<String[]> pageData = ProviderUtils.splitPageData(cursor);
+                String[] names = pageData.get(ProviderUtils.PAGE_NAMES_INDEX);
+                String[] images = pageData.get(ProviderUtils.PAGE_IMAGES_INDEX);
+                String[] text = pageData.get(ProviderUtils.PAGE_TEXT_INDEX);
+
+                for (int i = 0; i < names.length; i++) {
+                    insertPage.clearBindings();
+                    insertPage.bindLong(1, cursor.getLong(docIdIndex));
+                    insertPage.bindLong(2, i);
+                    insertPage.bindString(3, names[i]);
+                    bindLegacyValue(insertPage, 4, images, i);
+                    bindLegacyValue(insertPage, 5, text, i);
+                    insertPage.executeInsert();
+                }
+            }
+        } finally {
+            cursor.close();
+            insertPage.close();
+        }
+
+        db.execSQL("UPDATE " + DocInfoContract.DocInfoListEntry.TABLE_NAME + " SET " +
+                DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_NAMES + " = NULL, " +
+                DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_IMAGES + " = NULL, " +
+                DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_TEXT + " = NULL");
+    }
+
+
+    /**
+     * Binds a legacy column value, the "null" placeholder and missing values become SQL NULL
+     * @param statement - insert statement
+     * @param bindIndex - 1 based bind index
+     * @param values - split legacy column
+     * @param position - page position
+     */
+    private static void bindLegacyValue(SQLiteStatement statement,
+                                        int bindIndex,
+                                        String[] values,
+                                        int position) {
+        if (position < values.length && !values[position].isEmpty() &&
+                !values[position].equals(ProviderUtils.PROVIDER_NULL)) {
+            statement.bindString(bindIndex, values[position]);
+        } else {
+            statement.bindNull(bindIndex);
+        }
     }
 }
@@ -1,22 +1,129 @@
 package com.eldersoftware.pdfassist.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.util.List;
+import java.util.ArrayList;
 
 public class DocInfoProvider extends ContentProvider {
     public static final int DOC_INFO = 100;
     public static final int DOC_INFO_WITH_NAME = 101;
+    public static final int DOC_INFO_WITH_ID = 102;
+    public static final int DOC_PAGES = 200;
+    public static final int DOC_PAGE_WITH_POSITION = 201;
+    public static final int ALL_PAGES = 202;
+    public static final int SEARCH = 400;
+    public static final int EXPORT_JOBS = 300;
+    public static final int EXPORT_JOB_WITH_ID = 301;
+    public static final int IMAGE_METADATA = 500;
+    public static final int IMAGE_STORE = 600;
+
+    //Selection used by the page uris, resolves the doc name in the uri to its id
+    private static final String DOC_PAGES_SELECTION =
+            DocInfoContract.PageEntry.COLUMN_DOC_ID + " = (SELECT " +
+                    DocInfoContract.DocInfoListEntry._ID + " FROM " +
+                    DocInfoContract.DocInfoListEntry.TABLE_NAME + " WHERE " +
+                    DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME + " = ?)";
+
+    private static final String DOC_PAGE_WITH_POSITION_SELECTION = DOC_PAGES_SELECTION +
+            " AND " + DocInfoContract.PageEntry.COLUMN_PAGE_POSITION + " = ?";
+
+    //Increments the doc version of the rows matching the where clause appended to it
+    private static final String BUMP_DOC_VERSION_SQL = "UPDATE " +
+            DocInfoContract.DocInfoListEntry.TABLE_NAME + " SET " +
+            DocInfoContract.DocInfoListEntry.COLUMN_DOC_VERSION + " = " +
+            DocInfoContract.DocInfoListEntry.COLUMN_DOC_VERSION + " + 1 WHERE ";
+
+    //Selections for the pages of a doc, and a single page, once its doc id has been looked up
+    private static final String PAGE_DOC_ID_SELECTION =
+            DocInfoContract.PageEntry.COLUMN_DOC_ID + " = ?";
+
+    private static final String PAGE_ID_POSITION_SELECTION =
+            PAGE_DOC_ID_SELECTION + " AND " +
+                    DocInfoContract.PageEntry.COLUMN_PAGE_POSITION + " = ?";
+
+    private static final String DOC_NAME_SELECTION =
+            DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME + " = ?";
+
+    private static final String DOC_ID_SELECTION =
+            DocInfoContract.DocInfoListEntry._ID + " = ?";
+
+    private static final String EXPORT_JOB_ID_SELECTION =
+            DocInfoContract.ExportJobEntry._ID + " = ?";
+
+    private static final String DEFAULT_PAGE_SORT_ORDER =
+            DocInfoContract.PageEntry.COLUMN_PAGE_POSITION + " ASC";
+
+    //Byte offsets of each word a page matched, and the name of the column holding them
+    private static final String SEARCH_OFFSETS =
+            "offsets(" + DocInfoContract.SearchEntry.TABLE_NAME + ")";
+    private static final String SEARCH_RANKED_OFFSETS = "rankedOffsets";
+
+    //Ids of the pages with the most matches, a row id tie break keeps the cut at the limit
+    //stable. The innermost limit stops SQLite flattening the query, which would call
+    //offsets() once for each use of its result
+    private static final String SEARCH_RANKED_IDS_SQL = "SELECT docid FROM (SELECT docid, " +
+            SEARCH_OFFSETS + " AS " + SEARCH_RANKED_OFFSETS +
+            " FROM " + DocInfoContract.SearchEntry.TABLE_NAME +
+            " WHERE " + DocInfoContract.SearchEntry.TABLE_NAME + " MATCH ? LIMIT -1)" +
+            " ORDER BY " + buildHitCount(SEARCH_RANKED_OFFSETS) + " DESC, docid LIMIT ?";
+
+    //Results of the search uri, most matches first. The pages are ranked and limited before
+    //the join, so snippet() only runs for the pages returned. It needs the match of its own
+    //query, so the outer query repeats it
+    private static final String SEARCH_SQL = "SELECT " +
+            "p." + DocInfoContract.PageEntry._ID + " AS " + DocInfoContract.SearchEntry._ID + ", " +
+            "d." + DocInfoContract.DocInfoListEntry._ID + " AS " +
+            DocInfoContract.SearchEntry.COLUMN_DOC_ID + ", " +
+            "d." + DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME + " AS " +
+            DocInfoContract.SearchEntry.COLUMN_DOC_NAME + ", " +
+            "p." + DocInfoContract.PageEntry.COLUMN_PAGE_POSITION + " AS " +
+            DocInfoContract.SearchEntry.COLUMN_PAGE_POSITION + ", " +
+            "p." + DocInfoContract.PageEntry.COLUMN_PAGE_NAME + " AS " +
+            DocInfoContract.SearchEntry.COLUMN_PAGE_NAME + ", " +
+            "snippet(" + DocInfoContract.SearchEntry.TABLE_NAME + ", '" +
+            DocInfoContract.SearchEntry.SNIPPET_MATCH_START + "', '" +
+            DocInfoContract.SearchEntry.SNIPPET_MATCH_END + "', '\u2026', -1, 12) AS " +
+            DocInfoContract.SearchEntry.COLUMN_SNIPPET +
+            " FROM " + DocInfoContract.SearchEntry.TABLE_NAME +
+            " JOIN " + DocInfoContract.PageEntry.TABLE_NAME + " p ON p." +
+            DocInfoContract.PageEntry._ID + " = " + DocInfoContract.SearchEntry.TABLE_NAME +
+            ".docid" +
+            " JOIN " + DocInfoContract.DocInfoListEntry.TABLE_NAME + " d ON d." +
+            DocInfoContract.DocInfoListEntry._ID + " = p." + DocInfoContract.PageEntry.COLUMN_DOC_ID +
+            " WHERE " + DocInfoContract.SearchEntry.TABLE_NAME + " MATCH ?" +
+            " AND " + DocInfoContract.SearchEntry.TABLE_NAME + ".docid IN (" +
+            SEARCH_RANKED_IDS_SQL + ")" +
+            " ORDER BY " + buildHitCount(SEARCH_OFFSETS) + " DESC, " +
+            "d." + DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME + ", " +
+            "p." + DocInfoContract.PageEntry.COLUMN_PAGE_POSITION;
+
+    private static final String[] SEARCH_COLUMNS = {
+            DocInfoContract.SearchEntry._ID,
+            DocInfoContract.SearchEntry.COLUMN_DOC_ID,
+            DocInfoContract.SearchEntry.COLUMN_DOC_NAME,
+            DocInfoContract.SearchEntry.COLUMN_PAGE_POSITION,
+            DocInfoContract.SearchEntry.COLUMN_PAGE_NAME,
+            DocInfoContract.SearchEntry.COLUMN_SNIPPET
+    };
+
+    private static final int DEFAULT_SEARCH_LIMIT = 100;
 
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private DocInfoDbHelper mOpenHelper;
+    private DocInfoStatements mStatements;
 
 
     public static UriMatcher buildUriMatcher() {
@@ -33,6 +140,60 @@ public class DocInfoProvider extends ContentProvider {
                 DocInfoContract.PATH_DOC_INFO_NAME + "/*",
                 DOC_INFO_WITH_NAME);
 
+        //For accessing a single doc by its row id, which doesn't change when it is renamed
+        //Will have the format content://authority/docInfoId/id
+        uriMatcher.addURI(DocInfoContract.AUTHORITY,
+                DocInfoContract.PATH_DOC_INFO_ID + "/#",
+                DOC_INFO_WITH_ID);
+
+        //For accessing all pages of a doc, ordered by position
+        //Will have the format content://authority/docInfoTable/docname/pages
+        uriMatcher.addURI(DocInfoContract.AUTHORITY,
+                DocInfoContract.PATH_DOC_INFO_NAME + "/*/" + DocInfoContract.PATH_PAGES,
+                DOC_PAGES);
+
+        //For accessing a single page, so a page edit only touches its own row
+        //Will have the format content://authority/docInfoTable/docname/pages/position
+        uriMatcher.addURI(DocInfoContract.AUTHORITY,
+                DocInfoContract.PATH_DOC_INFO_NAME + "/*/" + DocInfoContract.PATH_PAGES + "/#",
+                DOC_PAGE_WITH_POSITION);
+
+        //For accessing the pages of every doc
+        //Will have the format content://authority/pages
+        uriMatcher.addURI(DocInfoContract.AUTHORITY,
+                DocInfoContract.PATH_PAGES,
+                ALL_PAGES);
+
+        //For searching the page titles and text, the words are a query parameter
+        //Will have the format content://authority/search?query=words
+        uriMatcher.addURI(DocInfoContract.AUTHORITY,
+                DocInfoContract.PATH_SEARCH,
+                SEARCH);
+
+        //For accessing the export job queue
+        //Will have the format content://authority/exportJobs
+        uriMatcher.addURI(DocInfoContract.AUTHORITY,
+                DocInfoContract.PATH_EXPORT_JOBS,
+                EXPORT_JOBS);
+
+        //For accessing a single export job by its row id
+        //Will have the format content://authority/exportJobs/id
+        uriMatcher.addURI(DocInfoContract.AUTHORITY,
+                DocInfoContract.PATH_EXPORT_JOBS + "/#",
+                EXPORT_JOB_WITH_ID);
+
+        //For accessing the image metadata
+        //Will have the format content://authority/imageMetadata
+        uriMatcher.addURI(DocInfoContract.AUTHORITY,
+                DocInfoContract.PATH_IMAGE_METADATA,
+                IMAGE_METADATA);
+
+        //For accessing the image store
+        //Will have the format content://authority/imageStore
+        uriMatcher.addURI(DocInfoContract.AUTHORITY,
+                DocInfoContract.PATH_IMAGE_STORE,
+                IMAGE_STORE);
+
         return uriMatcher;
     }
 
@@ -88,7 +249,7 @@ public class DocInfoProvider extends ContentProvider {
                 cursor = mOpenHelper.getReadableDatabase().query(
                         DocInfoContract.DocInfoListEntry.TABLE_NAME,
                         projection,
-                        DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME + " = ?",
+                        DOC_NAME_SELECTION,
                         jobNameSelectionArg,
                         null,
                         null,
@@ -97,6 +258,128 @@ public class DocInfoProvider extends ContentProvider {
                 break;
             }
 
+            case DOC_INFO_WITH_ID: {
+                //Returns the doc with the id in the last path segment
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        DocInfoContract.DocInfoListEntry.TABLE_NAME,
+                        projection,
+                        DOC_ID_SELECTION,
+                        new String[] {uri.getLastPathSegment()},
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
+            case DOC_PAGES: {
+                //Returns a row per page for the doc name in the uri, in page order by default
+                String[] docNameSelectionArg = {getDocName(uri)};
+
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        DocInfoContract.PageEntry.TABLE_NAME,
+                        projection,
+                        DOC_PAGES_SELECTION,
+                        docNameSelectionArg,
+                        null,
+                        null,
+                        sortOrder != null ? sortOrder : DEFAULT_PAGE_SORT_ORDER);
+
+                break;
+            }
+
+            case DOC_PAGE_WITH_POSITION: {
+                //Returns the single page at the position in the last path segment
+                String[] pageSelectionArgs = {getDocName(uri), uri.getLastPathSegment()};
+
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        DocInfoContract.PageEntry.TABLE_NAME,
+                        projection,
+                        DOC_PAGE_WITH_POSITION_SELECTION,
+                        pageSelectionArgs,
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
+            case SEARCH: {
+                //The projection, selection and sort order are fixed, see SearchEntry
+                cursor = search(uri);
+                break;
+            }
+
+            case EXPORT_JOBS: {
+                //For general queries to the export job queue
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        DocInfoContract.ExportJobEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
+            case EXPORT_JOB_WITH_ID: {
+                //Returns the single job with the id in the last path segment
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        DocInfoContract.ExportJobEntry.TABLE_NAME,
+                        projection,
+                        EXPORT_JOB_ID_SELECTION,
+                        new String[] {uri.getLastPathSegment()},
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
+            case IMAGE_METADATA: {
+                //For general queries to the image metadata
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        DocInfoContract.ImageMetadataEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
+            case ALL_PAGES: {
+                //For queries across the pages of every doc
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        DocInfoContract.PageEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
+            case IMAGE_STORE: {
+                //For general queries to the image store
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        DocInfoContract.ImageStoreEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -115,29 +398,129 @@ public class DocInfoProvider extends ContentProvider {
      * Inserts new rows into the content provider
      * @param uri - uri
      * @param values - values
-     * @return null
+     * @return the new docs id uri for docs, null if the name is in use. The new pages uri
+     * for pages, the new jobs uri for export jobs and the new rows uri for image metadata.
+     * The new rows uri for stored images, null if the image is already stored
      */
     @Nullable
     @Override
     public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
         switch (sUriMatcher.match(uri)) {
             case DOC_INFO: {
-                //Inserts an entirely new row into the Job Info table
-                long insertId = mOpenHelper.getWritableDatabase().insert(
+                //Inserts an entirely new row into the Doc Info table. The unique index checks
+                //the name in the same statement, a name in use inserts nothing
+                long docId = mOpenHelper.getWritableDatabase().insertWithOnConflict(
                         DocInfoContract.DocInfoListEntry.TABLE_NAME,
                         null,
+                        values,
+                        SQLiteDatabase.CONFLICT_IGNORE);
+                return docId != -1 ? DocInfoContract.DocInfoListEntry.buildDocUri(docId) : null;
+            }
+
+            case DOC_PAGES: {
+                //Appends a new page row to the end of the doc
+                return insertPage(uri, values);
+            }
+
+            case EXPORT_JOBS: {
+                //Adds a job to the export queue
+                long jobId = mOpenHelper.getWritableDatabase().insert(
+                        DocInfoContract.ExportJobEntry.TABLE_NAME,
+                        null,
                         values);
-                break;
+                return jobId != -1 ? DocInfoContract.ExportJobEntry.buildExportJobUri(jobId) : null;
+            }
+
+            case IMAGE_METADATA: {
+                //Adds the metadata of an image, replacing the row already held for its path
+                long metadataId = mOpenHelper.getWritableDatabase().insertWithOnConflict(
+                        DocInfoContract.ImageMetadataEntry.TABLE_NAME,
+                        null,
+                        values,
+                        SQLiteDatabase.CONFLICT_REPLACE);
+                return metadataId != -1 ? ContentUris.withAppendedId(
+                        DocInfoContract.ImageMetadataEntry.IMAGE_METADATA_URI, metadataId) : null;
             }
 
+            case IMAGE_STORE: {
+                //Adds an image to the store. Files are named by their hash, so an image
+                //already stored inserts nothing
+                long imageId = mOpenHelper.getWritableDatabase().insertWithOnConflict(
+                        DocInfoContract.ImageStoreEntry.TABLE_NAME,
+                        null,
+                        values,
+                        SQLiteDatabase.CONFLICT_IGNORE);
+                return imageId != -1 ? ContentUris.withAppendedId(
+                        DocInfoContract.ImageStoreEntry.IMAGE_STORE_URI, imageId) : null;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
+    }
 
-        return null;
+    /**
+     * Inserts every row in a single transaction, so a bulk insert is one disk commit, with one
+     * change notification once it is committed
+     * @param uri - DOC_INFO, DOC_PAGES or EXPORT_JOBS uri
+     * @param values - values of each row
+     * @return number of rows inserted, docs with a name in use aren't counted
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int rowsInserted = 0;
+
+        db.beginTransaction();
+        try {
+            for (ContentValues rowValues : values) {
+                if (insert(uri, rowValues) != null) {
+                    rowsInserted++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (rowsInserted > 0) {
+            notifyChange(uri);
+        }
+        return rowsInserted;
     }
 
+
+    /**
+     * Applies the operations in a single transaction, if one fails none of them are kept.
+     * Observers of every uri in the provider are notified once, after the commit
+     * @param operations - operations on any of the provider uris
+     * @return result of each operation
+     * @throws OperationApplicationException thrown when an operation fails, the transaction is
+     * rolled back
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(
+            @NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        ContentProviderResult[] results;
+
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (!operations.isEmpty()) {
+            notifyChange(DocInfoContract.BASE_CONTENT_URI);
+        }
+        return results;
+    }
+
+
     /**
      * Deletes rows matching the selection criteria
      * @param uri - uri
@@ -161,18 +544,90 @@ public class DocInfoProvider extends ContentProvider {
 
             case DOC_INFO_WITH_NAME: {
                 //The last path segment has been confirmed as a string type, and assumed to be
-                //the jobs name. This can be used to return a cursor that contains the row
-                //from the table containing job info. Will be useful for EditJobActivity
+                //the doc name. Its pages and export jobs are removed with it
                 String[] docNameSelectionArg = {uri.getLastPathSegment()};
 
-                rowsDeleted = mOpenHelper.getReadableDatabase().delete(
+                rowsDeleted = mOpenHelper.getWritableDatabase().delete(
                         DocInfoContract.DocInfoListEntry.TABLE_NAME,
-                        DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME + " = ?",
+                        DOC_NAME_SELECTION,
                         docNameSelectionArg);
 
                 break;
             }
 
+            case DOC_INFO_WITH_ID: {
+                //Removes the doc with the id in the last path segment, with its pages and jobs
+                rowsDeleted = mOpenHelper.getWritableDatabase().delete(
+                        DocInfoContract.DocInfoListEntry.TABLE_NAME,
+                        DOC_ID_SELECTION,
+                        new String[] {uri.getLastPathSegment()});
+                break;
+            }
+
+            case DOC_PAGES: {
+                //Removes every page of the doc
+                SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+                String[] docNameSelectionArg = {getDocName(uri)};
+
+                db.beginTransaction();
+                try {
+                    rowsDeleted = db.delete(
+                            DocInfoContract.PageEntry.TABLE_NAME,
+                            DOC_PAGES_SELECTION,
+                            docNameSelectionArg);
+                    if (rowsDeleted > 0) {
+                        bumpDocVersion(docNameSelectionArg[0]);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                break;
+            }
+
+            case DOC_PAGE_WITH_POSITION: {
+                //Removes a single page and closes the gap it leaves in the positions
+                rowsDeleted = deletePage(uri);
+                break;
+            }
+
+            case EXPORT_JOBS: {
+                //Removes the jobs matching the selection
+                rowsDeleted = mOpenHelper.getWritableDatabase().delete(
+                        DocInfoContract.ExportJobEntry.TABLE_NAME,
+                        selection,
+                        selectionArgs);
+                break;
+            }
+
+            case EXPORT_JOB_WITH_ID: {
+                //Removes a single job
+                rowsDeleted = mOpenHelper.getWritableDatabase().delete(
+                        DocInfoContract.ExportJobEntry.TABLE_NAME,
+                        EXPORT_JOB_ID_SELECTION,
+                        new String[] {uri.getLastPathSegment()});
+                break;
+            }
+
+            case IMAGE_METADATA: {
+                //Removes the metadata matching the selection
+                rowsDeleted = mOpenHelper.getWritableDatabase().delete(
+                        DocInfoContract.ImageMetadataEntry.TABLE_NAME,
+                        selection,
+                        selectionArgs);
+                break;
+            }
+
+            case IMAGE_STORE: {
+                //Removes the stored images matching the selection, the files are deleted by
+                //the ImageStore
+                rowsDeleted = mOpenHelper.getWritableDatabase().delete(
+                        DocInfoContract.ImageStoreEntry.TABLE_NAME,
+                        selection,
+                        selectionArgs);
+                break;
+            }
+
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -197,26 +652,103 @@ public class DocInfoProvider extends ContentProvider {
 
         switch (sUriMatcher.match(uri)) {
             case DOC_INFO: {
-                //Inserts an entirely new row into the Doc Info table
+                //Updates the doc rows matching the selection, bumping their versions first
+                //while the selection still matches the same rows
+                SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+                db.beginTransaction();
+                try {
+                    if (changesDocContent(values)) {
+                        String where = selection != null ? selection : "1";
+                        if (selectionArgs != null) {
+                            db.execSQL(BUMP_DOC_VERSION_SQL + where, selectionArgs);
+                        } else {
+                            db.execSQL(BUMP_DOC_VERSION_SQL + where);
+                        }
+                    }
+                    rowsUpdated = db.update(
+                            DocInfoContract.DocInfoListEntry.TABLE_NAME,
+                            values,
+                            selection,
+                            selectionArgs);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                break;
+            }
+
+            case DOC_INFO_WITH_NAME: {
+                //The last path segment has been confirmed as a string type, and assumed to be
+                //the doc name. Its id is looked up first, as the update may rename the doc
+                rowsUpdated = updateDoc(uri.getLastPathSegment(), -1, values);
+                break;
+            }
+
+            case DOC_INFO_WITH_ID: {
+                //Updates the doc with the id in the last path segment
+                rowsUpdated = updateDoc(null, Long.parseLong(uri.getLastPathSegment()), values);
+                break;
+            }
+
+            case DOC_PAGES: {
+                //Updates the pages of the doc matching the selection
+                rowsUpdated = updatePages(uri, values, selection, selectionArgs);
+                break;
+            }
+
+            case DOC_PAGE_WITH_POSITION: {
+                //Updates only the row of the page being edited
+                rowsUpdated = updatePage(uri, values);
+                break;
+            }
+
+            case ALL_PAGES: {
+                //Updates the pages of any doc matching the selection, bumping the versions of
+                //their docs first while the selection still matches the same pages
+                SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+                db.beginTransaction();
+                try {
+                    String where = DocInfoContract.DocInfoListEntry._ID + " IN (SELECT " +
+                            DocInfoContract.PageEntry.COLUMN_DOC_ID + " FROM " +
+                            DocInfoContract.PageEntry.TABLE_NAME + " WHERE " +
+                            (selection != null ? selection : "1") + ")";
+                    if (selectionArgs != null) {
+                        db.execSQL(BUMP_DOC_VERSION_SQL + where, selectionArgs);
+                    } else {
+                        db.execSQL(BUMP_DOC_VERSION_SQL + where);
+                    }
+                    rowsUpdated = db.update(
+                            DocInfoContract.PageEntry.TABLE_NAME,
+                            values,
+                            selection,
+                            selectionArgs);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                break;
+            }
+
+            case EXPORT_JOBS: {
+                //Updates the jobs matching the selection
                 rowsUpdated = mOpenHelper.getWritableDatabase().update(
-                        DocInfoContract.DocInfoListEntry.TABLE_NAME,
+                        DocInfoContract.ExportJobEntry.TABLE_NAME,
                         values,
                         selection,
                         selectionArgs);
                 break;
             }
 
-            case DOC_INFO_WITH_NAME: {
-                //The last path segment has been confirmed as a string type, and assumed to be
-                //the doc name. This can be used to return a cursor that contains the row
-                //from the table containing doc info.
-                String[] docNameSelectionArg = {uri.getLastPathSegment()};
-
-                rowsUpdated = mOpenHelper.getReadableDatabase().update(
-                        DocInfoContract.DocInfoListEntry.TABLE_NAME,
+            case EXPORT_JOB_WITH_ID: {
+                //Updates a single job. A selection is added to the id, so a job can be claimed
+                //only while it is still in the state it was read in
+                rowsUpdated = mOpenHelper.getWritableDatabase().update(
+                        DocInfoContract.ExportJobEntry.TABLE_NAME,
                         values,
-                        DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME + " = ?",
-                        docNameSelectionArg);
+                        selection != null
+                                ? EXPORT_JOB_ID_SELECTION + " AND (" + selection + ")"
+                                : EXPORT_JOB_ID_SELECTION,
+                        prependArg(uri.getLastPathSegment(), selectionArgs));
                 break;
             }
 
@@ -228,4 +760,343 @@ public class DocInfoProvider extends ContentProvider {
 
     }
 
+
+    /**
+     * Finds the pages with a word starting with each word of the query in their title or text
+     * @param uri - search uri, with the query and limit parameters
+     * @return SEARCH_COLUMNS of each matching page, ranked by the number of matches
+     */
+    private Cursor search(Uri uri) {
+        String matchExpression = buildMatchExpression(
+                uri.getQueryParameter(DocInfoContract.SearchEntry.PARAM_QUERY));
+        if (matchExpression.isEmpty()) {
+            return new MatrixCursor(SEARCH_COLUMNS, 0);
+        }
+
+        int limit = DEFAULT_SEARCH_LIMIT;
+        String limitParameter = uri.getQueryParameter(DocInfoContract.SearchEntry.PARAM_LIMIT);
+        if (limitParameter != null) {
+            try {
+                limit = Integer.parseInt(limitParameter);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid search limit: " + uri, e);
+            }
+        }
+
+        return mOpenHelper.getReadableDatabase().rawQuery(SEARCH_SQL,
+                new String[] {matchExpression, matchExpression, String.valueOf(limit)});
+    }
+
+
+    /**
+     * Turns the typed words into a prefix query, each word matching the start of a word.
+     * Everything other than letters and digits is dropped, so the users text can't form FTS
+     * operators or a malformed query
+     * @param query - words typed by the user, may be null
+     * @return match expression, empty if the query has no words
+     */
+    private static String buildMatchExpression(String query) {
+        if (query == null) {
+            return "";
+        }
+
+        StringBuilder matchExpression = new StringBuilder();
+        for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                if (matchExpression.length() > 0) {
+                    matchExpression.append(' ');
+                }
+                matchExpression.append(word).append('*');
+            }
+        }
+        return matchExpression.toString();
+    }
+
+
+    /**
+     * offsets() gives four space separated numbers for each matched word, so its spaces count
+     * the matches. Its length doesn't, longer offsets have more digits
+     * @param offsets - SQL expression of an offsets() string
+     * @return SQL expression of the number of matches
+     */
+    private static String buildHitCount(String offsets) {
+        return "(length(" + offsets + ") - length(replace(" + offsets + ", ' ', '')) + 1) / 4";
+    }
+
+
+    /**
+     * Page uris have the format docInfoTable/docname/pages(/position)
+     * @param uri - page uri
+     * @return the doc name path segment
+     */
+    private static String getDocName(Uri uri) {
+        return uri.getPathSegments().get(1);
+    }
+
+
+    /**
+     * Notifies the observers of the uri and every uri below it
+     * @param uri - changed uri
+     */
+    private void notifyChange(Uri uri) {
+        if (getContext() != null) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+
+    /**
+     * @param arg - argument for the first ? of the selection
+     * @param selectionArgs - arguments for the rest of the selection, may be null
+     * @return combined selection arguments
+     */
+    private static String[] prependArg(String arg, String[] selectionArgs) {
+        if (selectionArgs == null) {
+            return new String[] {arg};
+        }
+        String[] args = new String[selectionArgs.length + 1];
+        args[0] = arg;
+        System.arraycopy(selectionArgs, 0, args, 1, selectionArgs.length);
+        return args;
+    }
+
+
+    /**
+     * Inserts a page at the end of the doc in the uri. The position is worked out in the same
+     * transaction so two inserts can't be given the same position
+     * @param uri - doc pages uri
+     * @param values - page values
+     * @return uri of the new page, null if the doc doesn't exist
+     */
+    private Uri insertPage(Uri uri, ContentValues values) {
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        String docName = getDocName(uri);
+        Uri pageUri = null;
+
+        db.beginTransaction();
+        try {
+            DocInfoStatements statements = getStatements();
+            long docId = statements.findDocId(docName);
+
+            if (docId != -1) {
+                long position = statements.countPages(docId);
+
+                ContentValues pageCV = values != null ? new ContentValues(values) : new ContentValues();
+                pageCV.put(DocInfoContract.PageEntry.COLUMN_DOC_ID, docId);
+                pageCV.put(DocInfoContract.PageEntry.COLUMN_PAGE_POSITION, position);
+
+                if (db.insert(DocInfoContract.PageEntry.TABLE_NAME, null, pageCV) != -1) {
+                    pageUri = uri.buildUpon().appendPath(String.valueOf(position)).build();
+                    statements.bumpDocVersion(docId);
+                }
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return pageUri;
+    }
+
+
+    /**
+     * Updates a single doc. Renaming a doc to a name in use updates nothing, rather than
+     * checking the name in a separate query first
+     * @param docName - doc name, or null to use the doc id
+     * @param docId - doc row id, used when the doc name is null
+     * @param values - doc values
+     * @return number of docs updated
+     */
+    private int updateDoc(String docName, long docId, ContentValues values) {
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int rowsUpdated = 0;
+
+        db.beginTransaction();
+        try {
+            if (docName != null) {
+                docId = getStatements().findDocId(docName);
+            }
+
+            if (docId != -1) {
+                rowsUpdated = db.updateWithOnConflict(
+                        DocInfoContract.DocInfoListEntry.TABLE_NAME,
+                        values,
+                        DOC_ID_SELECTION,
+                        new String[] {String.valueOf(docId)},
+                        SQLiteDatabase.CONFLICT_IGNORE);
+                if (rowsUpdated > 0 && changesDocContent(values)) {
+                    getStatements().bumpDocVersion(docId);
+                }
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return rowsUpdated;
+    }
+
+
+    /**
+     * Updates a single page. A single page column, the edit made from the page screens, is
+     * written with a precompiled statement
+     * @param uri - page uri
+     * @param values - page values
+     * @return number of pages updated
+     */
+    private int updatePage(Uri uri, ContentValues values) {
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        long position = Long.parseLong(uri.getLastPathSegment());
+        int rowsUpdated = 0;
+
+        db.beginTransaction();
+        try {
+            DocInfoStatements statements = getStatements();
+            long docId = statements.findDocId(getDocName(uri));
+
+            if (docId != -1 && values != null && values.size() > 0) {
+                String column = values.keySet().iterator().next();
+                if (values.size() == 1 && DocInfoStatements.hasPageUpdate(column)) {
+                    rowsUpdated = statements.updatePageColumn(docId, position, column,
+                            values.getAsString(column));
+                } else {
+                    rowsUpdated = db.update(DocInfoContract.PageEntry.TABLE_NAME, values,
+                            PAGE_ID_POSITION_SELECTION,
+                            new String[] {String.valueOf(docId), String.valueOf(position)});
+                }
+                if (rowsUpdated > 0) {
+                    statements.bumpDocVersion(docId);
+                }
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return rowsUpdated;
+    }
+
+
+    /**
+     * Updates the pages of a doc matching the selection, then bumps the doc version if any
+     * were updated
+     * @param uri - doc pages uri
+     * @param values - new values
+     * @param selection - selection within the docs pages, may be null for every page
+     * @param selectionArgs - selection arguments
+     * @return number of pages updated
+     */
+    private int updatePages(Uri uri, ContentValues values, String selection,
+                            String[] selectionArgs) {
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int rowsUpdated = 0;
+
+        db.beginTransaction();
+        try {
+            DocInfoStatements statements = getStatements();
+            long docId = statements.findDocId(getDocName(uri));
+
+            if (docId != -1 && values != null && values.size() > 0) {
+                rowsUpdated = db.update(DocInfoContract.PageEntry.TABLE_NAME, values,
+                        selection != null
+                                ? PAGE_DOC_ID_SELECTION + " AND (" + selection + ")"
+                                : PAGE_DOC_ID_SELECTION,
+                        prependArg(String.valueOf(docId), selectionArgs));
+                if (rowsUpdated > 0) {
+                    statements.bumpDocVersion(docId);
+                }
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return rowsUpdated;
+    }
+
+
+    /**
+     * Deletes a single page and moves every following page up by one position
+     * @param uri - page uri
+     * @return number of pages deleted
+     */
+    private int deletePage(Uri uri) {
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        String[] pageSelectionArgs = {getDocName(uri), uri.getLastPathSegment()};
+        int rowsDeleted;
+
+        db.beginTransaction();
+        try {
+            rowsDeleted = db.delete(DocInfoContract.PageEntry.TABLE_NAME,
+                    DOC_PAGE_WITH_POSITION_SELECTION,
+                    pageSelectionArgs);
+
+            if (rowsDeleted > 0) {
+                db.execSQL("UPDATE " + DocInfoContract.PageEntry.TABLE_NAME + " SET " +
+                                DocInfoContract.PageEntry.COLUMN_PAGE_POSITION + " = " +
+                                DocInfoContract.PageEntry.COLUMN_PAGE_POSITION + " - 1 WHERE " +
+                                DOC_PAGES_SELECTION + " AND " +
+                                DocInfoContract.PageEntry.COLUMN_PAGE_POSITION + " > ?",
+                        pageSelectionArgs);
+                bumpDocVersion(pageSelectionArgs[0]);
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return rowsDeleted;
+    }
+
+
+    /**
+     * Increments the version of a doc, so an export made before this write isn't reused
+     * @param docName - doc name, called in the transaction of the write
+     */
+    private void bumpDocVersion(String docName) {
+        DocInfoStatements statements = getStatements();
+        long docId = statements.findDocId(docName);
+        if (docId != -1) {
+            statements.bumpDocVersion(docId);
+        }
+    }
+
+
+    /**
+     * Statements are compiled on first use rather than in onCreate, which mustn't open the
+     * database
+     * @return precompiled statements of the writable database
+     */
+    private synchronized DocInfoStatements getStatements() {
+        if (mStatements == null) {
+            mStatements = new DocInfoStatements(mOpenHelper.getWritableDatabase());
+        }
+        return mStatements;
+    }
+
+
+    /**
+     * Recording an export only writes the export columns, which mustn't make the export it
+     * records out of date
+     * @param values - values of a doc update
+     * @return true if the values change anything other than the export columns
+     */
+    private static boolean changesDocContent(ContentValues values) {
+        if (values == null) {
+            return false;
+        }
+        for (String column : values.keySet()) {
+            if (!column.equals(DocInfoContract.DocInfoListEntry.COLUMN_EXPORT_PATH) &&
+                    !column.equals(DocInfoContract.DocInfoListEntry.COLUMN_EXPORT_VERSION) &&
+                    !column.equals(DocInfoContract.DocInfoListEntry.COLUMN_EXPORT_SIZE)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
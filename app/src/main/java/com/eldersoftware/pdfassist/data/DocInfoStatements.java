@@ -0,0 +1,142 @@
+package com.eldersoftware.pdfassist.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Precompiled statements for the writes made on every page edit, so their SQL is only parsed
+ * once. The statements belong to the writable database and are shared by every provider call,
+ * each method holds the lock while it binds and runs its statement. Only used inside a
+ * transaction of the writable database, so the lock is never held while waiting for the
+ * connection
+ */
+class DocInfoStatements {
+
+    private final SQLiteStatement mDocIdByName;
+    private final SQLiteStatement mPageCount;
+    private final SQLiteStatement mBumpDocVersion;
+    private final SQLiteStatement mUpdatePageName;
+    private final SQLiteStatement mUpdatePageImage;
+    private final SQLiteStatement mUpdatePageText;
+
+
+    /**
+     * Constructor
+     * @param db - writable database
+     */
+    DocInfoStatements(SQLiteDatabase db) {
+        mDocIdByName = db.compileStatement("SELECT " + DocInfoContract.DocInfoListEntry._ID +
+                " FROM " + DocInfoContract.DocInfoListEntry.TABLE_NAME + " WHERE " +
+                DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME + " = ?");
+        mPageCount = db.compileStatement("SELECT COUNT(*) FROM " +
+                DocInfoContract.PageEntry.TABLE_NAME + " WHERE " +
+                DocInfoContract.PageEntry.COLUMN_DOC_ID + " = ?");
+        mBumpDocVersion = db.compileStatement("UPDATE " +
+                DocInfoContract.DocInfoListEntry.TABLE_NAME + " SET " +
+                DocInfoContract.DocInfoListEntry.COLUMN_DOC_VERSION + " = " +
+                DocInfoContract.DocInfoListEntry.COLUMN_DOC_VERSION + " + 1 WHERE " +
+                DocInfoContract.DocInfoListEntry._ID + " = ?");
+        mUpdatePageName = compilePageUpdate(db, DocInfoContract.PageEntry.COLUMN_PAGE_NAME);
+        mUpdatePageImage = compilePageUpdate(db, DocInfoContract.PageEntry.COLUMN_PAGE_IMAGE);
+        mUpdatePageText = compilePageUpdate(db, DocInfoContract.PageEntry.COLUMN_PAGE_TEXT);
+    }
+
+
+    /**
+     * @param docName - doc name
+     * @return row id of the doc, -1 if there isn't a doc with the name
+     */
+    synchronized long findDocId(String docName) {
+        mDocIdByName.bindString(1, docName);
+        try {
+            return mDocIdByName.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            return -1;
+        } finally {
+            mDocIdByName.clearBindings();
+        }
+    }
+
+
+    /**
+     * @param docId - doc row id
+     * @return number of pages in the doc
+     */
+    synchronized long countPages(long docId) {
+        mPageCount.bindLong(1, docId);
+        try {
+            return mPageCount.simpleQueryForLong();
+        } finally {
+            mPageCount.clearBindings();
+        }
+    }
+
+
+    /**
+     * Increments the version of a doc, so an export made before this write isn't reused
+     * @param docId - doc row id
+     */
+    synchronized void bumpDocVersion(long docId) {
+        mBumpDocVersion.bindLong(1, docId);
+        try {
+            mBumpDocVersion.executeUpdateDelete();
+        } finally {
+            mBumpDocVersion.clearBindings();
+        }
+    }
+
+
+    /**
+     * @param column - DocInfoContract.PageEntry column
+     * @return true if a single value of the column can be written with updatePageColumn
+     */
+    static boolean hasPageUpdate(String column) {
+        return DocInfoContract.PageEntry.COLUMN_PAGE_NAME.equals(column) ||
+                DocInfoContract.PageEntry.COLUMN_PAGE_IMAGE.equals(column) ||
+                DocInfoContract.PageEntry.COLUMN_PAGE_TEXT.equals(column);
+    }
+
+
+    /**
+     * Writes one column of a page, the edit every page screen makes
+     * @param docId - doc row id
+     * @param position - page position
+     * @param column - COLUMN_PAGE_NAME, COLUMN_PAGE_IMAGE or COLUMN_PAGE_TEXT
+     * @param value - new value, may be null
+     * @return number of pages updated
+     */
+    synchronized int updatePageColumn(long docId, long position, String column, String value) {
+        SQLiteStatement statement;
+        if (DocInfoContract.PageEntry.COLUMN_PAGE_NAME.equals(column)) {
+            statement = mUpdatePageName;
+        } else if (DocInfoContract.PageEntry.COLUMN_PAGE_IMAGE.equals(column)) {
+            statement = mUpdatePageImage;
+        } else if (DocInfoContract.PageEntry.COLUMN_PAGE_TEXT.equals(column)) {
+            statement = mUpdatePageText;
+        } else {
+            throw new IllegalArgumentException("No page update for column: " + column);
+        }
+
+        if (value != null) {
+            statement.bindString(1, value);
+        } else {
+            statement.bindNull(1);
+        }
+        statement.bindLong(2, docId);
+        statement.bindLong(3, position);
+        try {
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.clearBindings();
+        }
+    }
+
+
+    private static SQLiteStatement compilePageUpdate(SQLiteDatabase db, String column) {
+        return db.compileStatement("UPDATE " + DocInfoContract.PageEntry.TABLE_NAME + " SET " +
+                column + " = ? WHERE " +
+                DocInfoContract.PageEntry.COLUMN_DOC_ID + " = ? AND " +
+                DocInfoContract.PageEntry.COLUMN_PAGE_POSITION + " = ?");
+    }
+}
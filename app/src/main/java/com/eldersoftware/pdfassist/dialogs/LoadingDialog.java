@@ -3,9 +3,11 @@ package com.eldersoftware.pdfassist.dialogs;
 import android.app.Dialog;
 import android.content.Context;
 import android.os.Bundle;
+import android.view.View;
 import android.view.ViewGroup;
 import android.view.Window;
 import android.widget.Button;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
@@ -14,7 +16,8 @@ import androidx.annotation.Nullable;
 import com.eldersoftware.pdfassist.R;
 
 /**
- * Dialog used to show a progress spinner with a message
+ * Dialog used to show a progress spinner with a message, and optionally a progress bar and a
+ * cancel button
  */
 public class LoadingDialog extends Dialog {
     private TextView mLoadingMessageTV;
@@ -22,6 +25,8 @@ public class LoadingDialog extends Dialog {
     private Context mContext;
     private String mLoadingMessage;
     private TextView mTitle;
+    private ProgressBar mProgressBar;
+    private boolean mShowCancelButton;
 
 
     /**
@@ -59,6 +64,41 @@ public class LoadingDialog extends Dialog {
         if (mLoadingMessage != null && !mLoadingMessage.isEmpty()) {
             mLoadingMessageTV.setText(mLoadingMessage);
         }
+
+        mProgressBar = findViewById(R.id.pb_loading_dialog_progress);
+
+        //Cancel button cancels the dialog the same way as pressing back
+        mCloseButton = findViewById(R.id.btn_loading_dialog_cancel);
+        mCloseButton.setVisibility(mShowCancelButton ? View.VISIBLE : View.GONE);
+        mCloseButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                cancel();
+            }
+        });
+    }
+
+
+    /**
+     * Shows a cancel button, the listener is called when it is tapped or back is pressed.
+     * Must be called before the dialog is shown
+     * @param cancelListener - called when the dialog is cancelled
+     */
+    public void setCancelButton(OnCancelListener cancelListener) {
+        mShowCancelButton = true;
+        setOnCancelListener(cancelListener);
+    }
+
+
+    /**
+     * Shows the progress bar and sets its progress
+     * @param progress - progress
+     * @param max - progress when complete
+     */
+    public void updateProgress(int progress, int max) {
+        mProgressBar.setVisibility(View.VISIBLE);
+        mProgressBar.setMax(max);
+        mProgressBar.setProgress(progress);
     }
 
 
@@ -0,0 +1,305 @@
+package com.eldersoftware.pdfassist.export;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.eldersoftware.pdfassist.data.DocInfoContract;
+import com.eldersoftware.pdfassist.data.DocInfoContract.ExportJobEntry;
+
+import java.io.File;
+import java.util.Collection;
+
+
+/**
+ * Helper methods for the export job queue kept in the content provider. Jobs are rows, so the
+ * queue survives the activity and the process being killed, and a job is only taken by one
+ * worker as it is claimed with an update that only matches while the job is still queued.
+ */
+public class ExportJobQueue {
+
+    // A job that fails or is interrupted this many times is marked as failed, so a doc that
+    // can't be exported doesn't keep the service running
+    public static final int MAX_ATTEMPTS = 3;
+
+    private static final String[] JOB_PROJECTION = {
+            ExportJobEntry._ID,
+            ExportJobEntry.COLUMN_DOC_ID,
+            ExportJobEntry.COLUMN_ATTEMPTS
+    };
+    private static final int JOB_ID_INDEX = 0;
+    private static final int JOB_DOC_ID_INDEX = 1;
+    private static final int JOB_ATTEMPTS_INDEX = 2;
+
+    private static final String STATE_SELECTION = ExportJobEntry.COLUMN_STATE + " = ?";
+    // Queued jobs whose doc isn't being exported, so one doc is never exported by two workers
+    private static final String CLAIMABLE_SELECTION = STATE_SELECTION + " AND " +
+            ExportJobEntry.COLUMN_DOC_ID + " NOT IN (SELECT " + ExportJobEntry.COLUMN_DOC_ID +
+            " FROM " + ExportJobEntry.TABLE_NAME + " WHERE " + STATE_SELECTION + ")";
+
+    // Highest priority first, then the oldest job
+    private static final String NEXT_JOB_SORT_ORDER = ExportJobEntry.COLUMN_PRIORITY + " DESC, " +
+            ExportJobEntry._ID + " ASC";
+
+
+    /**
+     * Queues an export for each doc. A doc that already has a job waiting or finished has it
+     * replaced, so it is only exported once and its old result is cleared. A doc that is being
+     * exported keeps its running job, the new job waits for it to finish and exports the doc
+     * again with the changes made since
+     * @param context - context
+     * @param docNames - names of the docs to export
+     * @param priority - ExportJobEntry.PRIORITY_NORMAL or PRIORITY_HIGH
+     * @return number of jobs queued
+     */
+    public static int enqueue(Context context, Collection<String> docNames, int priority) {
+        int queued = 0;
+        for (String docName : docNames) {
+            long docId = getDocId(context, docName);
+            if (docId == -1) {
+                continue;
+            }
+
+            context.getContentResolver().delete(ExportJobEntry.EXPORT_JOBS_URI,
+                    ExportJobEntry.COLUMN_DOC_ID + " = ? AND " +
+                            ExportJobEntry.COLUMN_STATE + " != ?",
+                    new String[] {String.valueOf(docId),
+                            String.valueOf(ExportJobEntry.STATE_RUNNING)});
+
+            long now = System.currentTimeMillis();
+            ContentValues jobCV = new ContentValues();
+            jobCV.put(ExportJobEntry.COLUMN_DOC_ID, docId);
+            jobCV.put(ExportJobEntry.COLUMN_PRIORITY, priority);
+            jobCV.put(ExportJobEntry.COLUMN_STATE, ExportJobEntry.STATE_QUEUED);
+            jobCV.put(ExportJobEntry.COLUMN_CREATED_TIME, now);
+            jobCV.put(ExportJobEntry.COLUMN_UPDATED_TIME, now);
+            if (context.getContentResolver().insert(ExportJobEntry.EXPORT_JOBS_URI, jobCV) != null) {
+                queued++;
+            }
+        }
+        return queued;
+    }
+
+
+    /**
+     * Takes the next queued job and marks it as running. The attempt is counted when the job is
+     * claimed, so a job that kills the process is still given up on. Jobs of a doc that another
+     * worker is exporting are skipped until that export finishes
+     * @param context - context
+     * @return claimed job, or null if the queue is empty
+     */
+    public static ExportJob claimNextJob(Context context) {
+        String[] claimableArgs = {String.valueOf(ExportJobEntry.STATE_QUEUED),
+                String.valueOf(ExportJobEntry.STATE_RUNNING)};
+
+        // Another worker may claim the job, or a job of the same doc, between the query and the
+        // update, in which case the update matches no rows and the next job is tried
+        while (true) {
+            Cursor cursor = context.getContentResolver().query(ExportJobEntry.EXPORT_JOBS_URI,
+                    JOB_PROJECTION, CLAIMABLE_SELECTION, claimableArgs,
+                    NEXT_JOB_SORT_ORDER + " LIMIT 1");
+            if (cursor == null) {
+                return null;
+            }
+
+            ExportJob job = null;
+            if (cursor.moveToFirst()) {
+                job = new ExportJob(cursor.getLong(JOB_ID_INDEX),
+                        cursor.getLong(JOB_DOC_ID_INDEX),
+                        cursor.getInt(JOB_ATTEMPTS_INDEX) + 1);
+            }
+            cursor.close();
+            if (job == null) {
+                return null;
+            }
+
+            ContentValues runningCV = new ContentValues();
+            runningCV.put(ExportJobEntry.COLUMN_STATE, ExportJobEntry.STATE_RUNNING);
+            runningCV.put(ExportJobEntry.COLUMN_ATTEMPTS, job.getAttempts());
+            runningCV.put(ExportJobEntry.COLUMN_UPDATED_TIME, System.currentTimeMillis());
+            int claimed = context.getContentResolver().update(
+                    ExportJobEntry.buildExportJobUri(job.getId()), runningCV, CLAIMABLE_SELECTION,
+                    claimableArgs);
+            if (claimed == 1) {
+                return job;
+            }
+        }
+    }
+
+
+    /**
+     * Marks a job as done
+     * @param context - context
+     * @param job - finished job
+     * @param pdfFile - exported file
+     */
+    public static void markDone(Context context, ExportJob job, File pdfFile) {
+        ContentValues doneCV = new ContentValues();
+        doneCV.put(ExportJobEntry.COLUMN_STATE, ExportJobEntry.STATE_DONE);
+        doneCV.put(ExportJobEntry.COLUMN_EXPORT_PATH, pdfFile.getAbsolutePath());
+        doneCV.putNull(ExportJobEntry.COLUMN_ERROR);
+        doneCV.put(ExportJobEntry.COLUMN_UPDATED_TIME, System.currentTimeMillis());
+        context.getContentResolver().update(ExportJobEntry.buildExportJobUri(job.getId()),
+                doneCV, null, null);
+    }
+
+
+    /**
+     * Puts a failed job back in the queue, or marks it as failed once it is out of attempts
+     * @param context - context
+     * @param job - failed job
+     * @param error - error message shown to the user
+     * @return true if the job will be tried again
+     */
+    public static boolean markFailed(Context context, ExportJob job, String error) {
+        boolean retry = job.getAttempts() < MAX_ATTEMPTS;
+        ContentValues failedCV = new ContentValues();
+        failedCV.put(ExportJobEntry.COLUMN_STATE,
+                retry ? ExportJobEntry.STATE_QUEUED : ExportJobEntry.STATE_FAILED);
+        failedCV.put(ExportJobEntry.COLUMN_ERROR, error);
+        failedCV.put(ExportJobEntry.COLUMN_UPDATED_TIME, System.currentTimeMillis());
+        context.getContentResolver().update(ExportJobEntry.buildExportJobUri(job.getId()),
+                failedCV, null, null);
+        return retry;
+    }
+
+
+    /**
+     * Jobs left running when the process died are queued again, or failed if they are out of
+     * attempts. Only called before the service starts any workers
+     * @param context - context
+     */
+    public static void requeueInterruptedJobs(Context context) {
+        String[] runningArgs = {String.valueOf(ExportJobEntry.STATE_RUNNING),
+                String.valueOf(MAX_ATTEMPTS)};
+        long now = System.currentTimeMillis();
+
+        ContentValues failedCV = new ContentValues();
+        failedCV.put(ExportJobEntry.COLUMN_STATE, ExportJobEntry.STATE_FAILED);
+        failedCV.put(ExportJobEntry.COLUMN_ERROR, "Export was interrupted");
+        failedCV.put(ExportJobEntry.COLUMN_UPDATED_TIME, now);
+        context.getContentResolver().update(ExportJobEntry.EXPORT_JOBS_URI, failedCV,
+                STATE_SELECTION + " AND " + ExportJobEntry.COLUMN_ATTEMPTS + " >= ?",
+                runningArgs);
+
+        ContentValues queuedCV = new ContentValues();
+        queuedCV.put(ExportJobEntry.COLUMN_STATE, ExportJobEntry.STATE_QUEUED);
+        queuedCV.put(ExportJobEntry.COLUMN_UPDATED_TIME, now);
+        context.getContentResolver().update(ExportJobEntry.EXPORT_JOBS_URI, queuedCV,
+                STATE_SELECTION + " AND " + ExportJobEntry.COLUMN_ATTEMPTS + " < ?",
+                runningArgs);
+    }
+
+
+    /**
+     * Removes the finished jobs of an earlier batch, failed jobs are kept until their doc is
+     * queued again
+     * @param context - context
+     */
+    public static void deleteDoneJobs(Context context) {
+        context.getContentResolver().delete(ExportJobEntry.EXPORT_JOBS_URI, STATE_SELECTION,
+                new String[] {String.valueOf(ExportJobEntry.STATE_DONE)});
+    }
+
+
+    /**
+     * @param context - context
+     * @param state - ExportJobEntry state
+     * @return number of jobs in the state
+     */
+    public static int countJobs(Context context, int state) {
+        Cursor cursor = context.getContentResolver().query(ExportJobEntry.EXPORT_JOBS_URI,
+                new String[] {ExportJobEntry._ID}, STATE_SELECTION,
+                new String[] {String.valueOf(state)}, null);
+        if (cursor == null) {
+            return 0;
+        }
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+
+    /**
+     * @param context - context
+     * @return true if there are jobs waiting to be run, or left running by a killed process
+     */
+    public static boolean hasPendingJobs(Context context) {
+        return countJobs(context, ExportJobEntry.STATE_QUEUED) > 0 ||
+                countJobs(context, ExportJobEntry.STATE_RUNNING) > 0;
+    }
+
+
+    /**
+     * Looks up the docs current name, jobs keep the doc id so a renamed doc is still exported
+     * @param context - context
+     * @param job - job
+     * @return doc name uri, or null if the doc has been deleted
+     */
+    public static Uri getDocNameUri(Context context, ExportJob job) {
+        Cursor cursor = context.getContentResolver().query(
+                DocInfoContract.DocInfoListEntry.buildDocUri(job.getDocId()),
+                new String[] {DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME},
+                null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+
+        Uri docNameUri = null;
+        if (cursor.moveToFirst()) {
+            docNameUri = DocInfoContract.DocInfoListEntry.buildDocNameUri(cursor.getString(0));
+        }
+        cursor.close();
+        return docNameUri;
+    }
+
+
+    private static long getDocId(Context context, String docName) {
+        Uri docNameUri = DocInfoContract.DocInfoListEntry.DOC_INFO_URI.buildUpon()
+                .appendPath(docName).build();
+        Cursor cursor = context.getContentResolver().query(docNameUri,
+                new String[] {DocInfoContract.DocInfoListEntry._ID}, null, null, null);
+        if (cursor == null) {
+            return -1;
+        }
+
+        long docId = -1;
+        if (cursor.moveToFirst()) {
+            docId = cursor.getLong(0);
+        }
+        cursor.close();
+        return docId;
+    }
+
+
+    /**
+     * A claimed job
+     */
+    public static class ExportJob {
+        private long mId;
+        private long mDocId;
+        private int mAttempts;
+
+        ExportJob(long id, long docId, int attempts) {
+            mId = id;
+            mDocId = docId;
+            mAttempts = attempts;
+        }
+
+        public long getId() {
+            return mId;
+        }
+
+        public long getDocId() {
+            return mDocId;
+        }
+
+        /**
+         * @return number of times the job has been started, including this one
+         */
+        public int getAttempts() {
+            return mAttempts;
+        }
+    }
+}
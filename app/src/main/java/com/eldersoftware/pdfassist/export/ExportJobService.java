@@ -0,0 +1,334 @@
+package com.eldersoftware.pdfassist.export;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.content.ContextCompat;
+import androidx.core.content.FileProvider;
+
+import com.eldersoftware.pdfassist.BuildConfig;
+import com.eldersoftware.pdfassist.data.DocInfoContract.ExportJobEntry;
+import com.eldersoftware.pdfassist.pdf.DocExporter;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Foreground service that works through the export job queue. A fixed number of workers each
+ * claim jobs until the queue is empty, then the service stops itself. The service is sticky,
+ * so after the process is killed it is restarted and the interrupted jobs are run again.
+ */
+public class ExportJobService extends Service {
+    private static final String LOG_TAG = ExportJobService.class.getSimpleName();
+
+    private static final String NOTIFICATION_CHANNEL_ID = "exportJobs";
+    private static final int PROGRESS_NOTIFICATION_ID = 1;
+    // Finished exports are notified with the job id added to this, one notification per doc
+    private static final int RESULT_NOTIFICATION_ID_BASE = 1000;
+
+    private static final String PREFS_NAME = "exportJobs";
+    private static final String PREF_CONCURRENCY_LIMIT = "concurrencyLimit";
+    // Exports are mostly image decoding and file writing, two workers keep the disk busy
+    // without holding too many decoded pages in memory at once
+    public static final int DEFAULT_CONCURRENCY_LIMIT = 2;
+    public static final int MAX_CONCURRENCY_LIMIT = 4;
+
+    private ExecutorService mExecutor;
+    private NotificationManagerCompat mNotificationManager;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Guarded by this
+    private int mRunningWorkers;
+    private int mLastStartId;
+    private int mFinishedJobs;
+    // Set once the jobs left by a killed process have been requeued, workers start after it
+    private boolean mPrepared;
+
+
+    /**
+     * Starts the service, or wakes it if it is already running, to run the queued jobs
+     * @param context - context
+     */
+    public static void start(Context context) {
+        ContextCompat.startForegroundService(context, new Intent(context, ExportJobService.class));
+    }
+
+
+    /**
+     * @param context - context
+     * @return number of docs exported at the same time
+     */
+    public static int getConcurrencyLimit(Context context) {
+        int limit = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .getInt(PREF_CONCURRENCY_LIMIT, DEFAULT_CONCURRENCY_LIMIT);
+        return Math.max(1, Math.min(limit, MAX_CONCURRENCY_LIMIT));
+    }
+
+
+    /**
+     * Sets the number of docs exported at the same time, used from the next time the service
+     * starts
+     * @param context - context
+     * @param limit - 1 to MAX_CONCURRENCY_LIMIT
+     */
+    public static void setConcurrencyLimit(Context context, int limit) {
+        SharedPreferences.Editor editor =
+                context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit();
+        editor.putInt(PREF_CONCURRENCY_LIMIT, limit);
+        editor.apply();
+    }
+
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mNotificationManager = NotificationManagerCompat.from(this);
+        createNotificationChannel();
+
+        mExecutor = Executors.newFixedThreadPool(getConcurrencyLimit(this));
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // No workers are running yet, so any running jobs were left by a killed process
+                ExportJobQueue.requeueInterruptedJobs(ExportJobService.this);
+                ExportJobQueue.deleteDoneJobs(ExportJobService.this);
+                synchronized (ExportJobService.this) {
+                    mPrepared = true;
+                }
+                startWorkers();
+            }
+        });
+    }
+
+
+    /**
+     * Every start goes back to the foreground, the last batch may have left it just before
+     * this start arrived
+     */
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        startForeground(PROGRESS_NOTIFICATION_ID, buildProgressNotification(0, 0));
+        synchronized (this) {
+            mLastStartId = startId;
+        }
+        startWorkers();
+        return START_STICKY;
+    }
+
+
+    @Override
+    public void onDestroy() {
+        mMainHandler.removeCallbacksAndMessages(null);
+        mExecutor.shutdownNow();
+        super.onDestroy();
+    }
+
+
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+
+    /**
+     * Starts workers up to the concurrency limit, each runs jobs until the queue is empty.
+     * Does nothing until the interrupted jobs have been requeued, which then starts them
+     */
+    private synchronized void startWorkers() {
+        if (!mPrepared) {
+            return;
+        }
+        int limit = getConcurrencyLimit(this);
+        while (mRunningWorkers < limit) {
+            mRunningWorkers++;
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runJobs();
+                    } finally {
+                        onWorkerFinished();
+                    }
+                }
+            });
+        }
+    }
+
+
+    private void runJobs() {
+        ExportJobQueue.ExportJob job;
+        while ((job = ExportJobQueue.claimNextJob(this)) != null) {
+            updateProgressNotification();
+            runJob(job);
+            synchronized (this) {
+                mFinishedJobs++;
+            }
+        }
+    }
+
+
+    private void runJob(ExportJobQueue.ExportJob job) {
+        Uri docNameUri = ExportJobQueue.getDocNameUri(this, job);
+        if (docNameUri == null) {
+            // The doc was deleted after being queued, its job is removed along with it
+            return;
+        }
+
+        try {
+            File pdfFile = new DocExporter(this).export(docNameUri, DocExporter.EXPORT_MODE_AUTO);
+            ExportJobQueue.markDone(this, job, pdfFile);
+            notifyExportFinished(job, docNameUri.getLastPathSegment(), pdfFile);
+        } catch (Exception e) {
+            // Any failure is recorded against the job, so one bad doc doesn't stop the others
+            Log.e(LOG_TAG, "Export failed: " + docNameUri, e);
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            if (!ExportJobQueue.markFailed(this, job, error)) {
+                notifyExportFailed(job, docNameUri.getLastPathSegment(), error);
+            }
+        }
+    }
+
+
+    /**
+     * The last worker to finish checks for jobs queued after it ran out, then stops the
+     * service. The queue is read without the lock, so a start on the main thread never waits
+     * on the provider
+     */
+    private void onWorkerFinished() {
+        synchronized (this) {
+            mRunningWorkers--;
+            if (mRunningWorkers > 0) {
+                return;
+            }
+        }
+
+        if (ExportJobQueue.countJobs(this, ExportJobEntry.STATE_QUEUED) > 0) {
+            startWorkers();
+            return;
+        }
+        final int startId;
+        synchronized (this) {
+            startId = mLastStartId;
+        }
+        // Stopped on the main thread, where onStartCommand runs, so no start can come between
+        // the check and stopForeground
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                stopIfIdle(startId);
+            }
+        });
+    }
+
+
+    /**
+     * Stops the service unless it was started again since the last worker finished, the
+     * workers of that start stop it instead
+     * @param startId - last start id seen by the last worker
+     */
+    private void stopIfIdle(int startId) {
+        synchronized (this) {
+            if (mRunningWorkers > 0 || mLastStartId != startId) {
+                return;
+            }
+            // The batch is over, the next start begins a new count
+            mFinishedJobs = 0;
+        }
+        stopForeground(true);
+        stopSelf(startId);
+    }
+
+
+    private void updateProgressNotification() {
+        int finished;
+        synchronized (this) {
+            finished = mFinishedJobs;
+        }
+        int remaining = ExportJobQueue.countJobs(this, ExportJobEntry.STATE_QUEUED) +
+                ExportJobQueue.countJobs(this, ExportJobEntry.STATE_RUNNING);
+        mNotificationManager.notify(PROGRESS_NOTIFICATION_ID,
+                buildProgressNotification(finished, finished + remaining));
+    }
+
+
+    private Notification buildProgressNotification(int finished, int total) {
+        NotificationCompat.Builder builder =
+                new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL_ID)
+                        .setSmallIcon(android.R.drawable.stat_sys_upload)
+                        .setContentTitle("Exporting PDFs")
+                        .setOnlyAlertOnce(true)
+                        .setOngoing(true);
+        if (total > 0) {
+            builder.setContentText(String.format(Locale.getDefault(),
+                    "Exporting %d of %d", Math.min(finished + 1, total), total))
+                    .setProgress(total, finished, false);
+        } else {
+            builder.setProgress(0, 0, true);
+        }
+        return builder.build();
+    }
+
+
+    private void notifyExportFinished(ExportJobQueue.ExportJob job, String docName, File pdfFile) {
+        Intent target = new Intent(Intent.ACTION_VIEW);
+        Uri uri = FileProvider.getUriForFile(this,
+                BuildConfig.APPLICATION_ID + ".fileprovider", pdfFile);
+        target.setDataAndType(uri, "application/pdf");
+        target.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_ACTIVITY_NO_HISTORY);
+
+        Intent chooser = Intent.createChooser(target, "Open File");
+        chooser.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        PendingIntent openIntent = PendingIntent.getActivity(this, (int) job.getId(), chooser,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+
+        mNotificationManager.notify(RESULT_NOTIFICATION_ID_BASE + (int) job.getId(),
+                new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL_ID)
+                        .setSmallIcon(android.R.drawable.stat_sys_upload_done)
+                        .setContentTitle(docName)
+                        .setContentText("PDF exported, tap to open")
+                        .setContentIntent(openIntent)
+                        .setAutoCancel(true)
+                        .build());
+    }
+
+
+    private void notifyExportFailed(ExportJobQueue.ExportJob job, String docName, String error) {
+        mNotificationManager.notify(RESULT_NOTIFICATION_ID_BASE + (int) job.getId(),
+                new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL_ID)
+                        .setSmallIcon(android.R.drawable.stat_notify_error)
+                        .setContentTitle(docName)
+                        .setContentText("Export failed: " + error)
+                        .build());
+    }
+
+
+    private void createNotificationChannel() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(NOTIFICATION_CHANNEL_ID,
+                    "PDF exports", NotificationManager.IMPORTANCE_LOW);
+            NotificationManager notificationManager = getSystemService(NotificationManager.class);
+            if (notificationManager != null) {
+                notificationManager.createNotificationChannel(channel);
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.eldersoftware.pdfassist.images;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import com.eldersoftware.pdfassist.R;
+import com.eldersoftware.pdfassist.pdf.CreateDocLayout;
+import com.eldersoftware.pdfassist.utils.ProviderUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+
+/**
+ * Shrinks camera captures after they are taken, the camera app saves photos far larger than a
+ * page needs. The image is scaled down to the profile in res/values/integers.xml. A JPEG
+ * replaces the original at the same path and keeps its EXIF orientation. A WebP image is
+ * written next to the original with a .webp name and has the rotation applied to its pixels,
+ * the pages are moved onto it as it is moved into the ImageStore.
+ */
+public class CaptureRecompressor {
+    private static final String LOG_TAG = CaptureRecompressor.class.getSimpleName();
+
+    // Values of the capture_format resource
+    public static final int FORMAT_JPEG = 0;
+    public static final int FORMAT_WEBP = 1;
+
+    // Copied from the original to a recompressed JPEG, along with the orientation
+    private static final String[] COPIED_EXIF_TAGS = {
+            ExifInterface.TAG_DATETIME,
+            ExifInterface.TAG_DATETIME_ORIGINAL,
+            ExifInterface.TAG_MAKE,
+            ExifInterface.TAG_MODEL,
+            ExifInterface.TAG_GPS_LATITUDE,
+            ExifInterface.TAG_GPS_LATITUDE_REF,
+            ExifInterface.TAG_GPS_LONGITUDE,
+            ExifInterface.TAG_GPS_LONGITUDE_REF
+    };
+
+    private static final String WEBP_EXTENSION = ".webp";
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+
+    private CaptureRecompressor() {
+    }
+
+
+    /**
+     * Recompresses a capture in the background and moves it into the ImageStore, then stores
+     * its metadata and makes its thumbnails from the smaller image. Captures are processed in
+     * the order they are taken, on the image store's thread so the migration never moves a
+     * capture while it is being recompressed
+     * @param context - context
+     * @param docNameUri - doc name uri of the page showing the capture
+     * @param imagePath - captured image
+     * @param onProcessed - run on the main thread once the page shows the stored image, may be
+     *                    null
+     */
+    public static void processAsync(Context context, final Uri docNameUri,
+                                    final String imagePath, final Runnable onProcessed) {
+        final Context appContext = context.getApplicationContext();
+        ImageStore.execute(new Runnable() {
+            @Override
+            public void run() {
+                String recompressedPath = recompress(appContext, imagePath);
+                String storedPath;
+                if (recompressedPath != null && !recompressedPath.equals(imagePath)) {
+                    storedPath = importConverted(appContext, recompressedPath, imagePath);
+                } else {
+                    storedPath = ImageStore.importImage(appContext, imagePath);
+                    if (recompressedPath != null && storedPath.equals(imagePath)) {
+                        // The doc now exports differently, so its last export can't be reused.
+                        // Moving into the store has already done this
+                        ProviderUtils.markPageImageChanged(docNameUri, imagePath, appContext);
+                    }
+                }
+                // Moving into the store keeps the metadata, with the hash the image is stored
+                // by. An image left outside it is read here, so exports don't need to open it
+                if (!ImageStore.isStored(storedPath)) {
+                    ImageMetadataStore.update(appContext, storedPath);
+                }
+                ThumbnailStore.create(appContext, storedPath);
+
+                if (onProcessed != null) {
+                    sMainHandler.post(onProcessed);
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Moves a converted image into the store in place of the original the pages show, then
+     * deletes the original. If the pages can't be moved onto it, the converted image is
+     * deleted and the pages keep the original
+     * @return path the pages show now
+     */
+    private static String importConverted(Context context, String convertedPath,
+                                          String imagePath) {
+        String storedPath = ImageStore.importImage(context, convertedPath, imagePath);
+        File unusedFile = new File(storedPath.equals(convertedPath) ? convertedPath : imagePath);
+        if (!unusedFile.delete()) {
+            Log.w(LOG_TAG, "Couldn't delete: " + unusedFile);
+        }
+        return storedPath.equals(convertedPath) ? imagePath : storedPath;
+    }
+
+
+    /**
+     * Writes a copy of an image scaled down to the capture profile, on the calling thread. A
+     * JPEG copy replaces the original, a WebP copy is written next to it with a .webp name and
+     * the original is left for the caller to replace on its pages. No copy is made if the image
+     * is already within the profile, or if the copy isn't smaller
+     * @param context - context
+     * @param imagePath - image to recompress
+     * @return path of the recompressed image, null if the original is kept
+     */
+    public static String recompress(Context context, String imagePath) {
+        Resources resources = context.getResources();
+        int maxEdge = resources.getInteger(R.integer.capture_max_edge_pixels);
+        int quality = resources.getInteger(R.integer.capture_quality);
+        boolean webp = resources.getInteger(R.integer.capture_format) == FORMAT_WEBP;
+
+        File imageFile = new File(imagePath);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(imagePath, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        // Another JPEG pass over an image already within the size would only lose quality
+        if (!webp && Math.max(options.outWidth, options.outHeight) <= maxEdge) {
+            return null;
+        }
+
+        ExifInterface sourceExif = null;
+        try {
+            sourceExif = new ExifInterface(imagePath);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't read EXIF of: " + imagePath, e);
+        }
+        // The original is read before it is replaced
+        int rotation = webp
+                ? Math.max(0, CreateDocLayout.getCameraPhotoOrientation(context, imagePath)) : 0;
+
+        Bitmap bitmap = ImageUtils.decodeScaled(imagePath, options, maxEdge, rotation);
+        if (bitmap == null) {
+            return null;
+        }
+
+        // WebP bytes are never left under a .jpg name, the type is read from the extension
+        File outputFile = webp ? new File(imageFile.getParentFile(),
+                removeExtension(imageFile.getName()) + WEBP_EXTENSION) : imageFile;
+        File tempFile = new File(imageFile.getParentFile(), "." + outputFile.getName() + ".tmp");
+        try {
+            writeImage(bitmap, tempFile, webp ? Bitmap.CompressFormat.WEBP
+                    : Bitmap.CompressFormat.JPEG, quality);
+            if (!webp && sourceExif != null) {
+                copyExif(sourceExif, tempFile);
+            }
+            if (tempFile.length() >= imageFile.length()) {
+                return null;
+            }
+
+            // Flushed to disk before the rename, so a crash leaves either image whole
+            syncFile(tempFile);
+            if (!tempFile.renameTo(outputFile)) {
+                Log.w(LOG_TAG, "Couldn't replace: " + imagePath);
+                return null;
+            }
+            return outputFile.getPath();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't recompress: " + imagePath, e);
+            return null;
+        } finally {
+            bitmap.recycle();
+            tempFile.delete();
+        }
+    }
+
+
+    private static void writeImage(Bitmap bitmap, File file, Bitmap.CompressFormat format,
+                                   int quality) throws IOException {
+        OutputStream output = null;
+        try {
+            output = new BufferedOutputStream(new FileOutputStream(file));
+            if (!bitmap.compress(format, quality, output)) {
+                throw new IOException("Couldn't compress: " + file);
+            }
+        } finally {
+            ImageUtils.closeQuietly(output);
+        }
+    }
+
+
+    /**
+     * Bitmap.compress writes no EXIF, so the orientation and capture details are copied over
+     */
+    private static void copyExif(ExifInterface sourceExif, File file) throws IOException {
+        ExifInterface exif = new ExifInterface(file.getAbsolutePath());
+        exif.setAttribute(ExifInterface.TAG_ORIENTATION,
+                String.valueOf(sourceExif.getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                        ExifInterface.ORIENTATION_NORMAL)));
+        for (String tag : COPIED_EXIF_TAGS) {
+            String value = sourceExif.getAttribute(tag);
+            if (value != null) {
+                exif.setAttribute(tag, value);
+            }
+        }
+        exif.saveAttributes();
+    }
+
+
+    private static void syncFile(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.getFD().sync();
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+
+    private static String removeExtension(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
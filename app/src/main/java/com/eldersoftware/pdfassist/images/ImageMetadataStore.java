@@ -0,0 +1,342 @@
+package com.eldersoftware.pdfassist.images;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import com.eldersoftware.pdfassist.data.DocInfoContract.ImageMetadataEntry;
+import com.eldersoftware.pdfassist.pdf.CreateDocLayout;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Reads and stores the size, rotation and hash of the page images in the provider. An image is
+ * read when it is attached to a page, so exports can look up how to place it rather than
+ * opening the file. A stored row is only used while the file has the size and modified time it
+ * was read with, otherwise the image is read again. Only the bounds and EXIF are read then, the
+ * hash is left unset unless the caller has one, as hashing reads the whole file.
+ */
+public class ImageMetadataStore {
+    private static final String LOG_TAG = ImageMetadataStore.class.getSimpleName();
+
+    // Paths looked up in each query, SQLite allows up to 999 arguments
+    private static final int QUERY_BATCH_SIZE = 500;
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    private static final String[] METADATA_PROJECTION = {
+            ImageMetadataEntry.COLUMN_IMAGE_PATH,
+            ImageMetadataEntry.COLUMN_WIDTH,
+            ImageMetadataEntry.COLUMN_HEIGHT,
+            ImageMetadataEntry.COLUMN_ROTATION,
+            ImageMetadataEntry.COLUMN_BYTE_SIZE,
+            ImageMetadataEntry.COLUMN_MODIFIED_TIME,
+            ImageMetadataEntry.COLUMN_CONTENT_HASH
+    };
+    private static final int INDEX_IMAGE_PATH = 0;
+    private static final int INDEX_WIDTH = 1;
+    private static final int INDEX_HEIGHT = 2;
+    private static final int INDEX_ROTATION = 3;
+    private static final int INDEX_BYTE_SIZE = 4;
+    private static final int INDEX_MODIFIED_TIME = 5;
+    private static final int INDEX_CONTENT_HASH = 6;
+
+
+    private ImageMetadataStore() {
+    }
+
+
+    /**
+     * Reads and hashes an image and stores its metadata, on the calling thread
+     * @param context - context
+     * @param imagePath - page image
+     * @return metadata of the image, null if it can't be decoded
+     */
+    public static ImageMetadata update(Context context, String imagePath) {
+        ImageMetadata metadata = read(context, imagePath, hashFile(new File(imagePath)));
+        if (metadata != null) {
+            context.getContentResolver().insert(ImageMetadataEntry.IMAGE_METADATA_URI,
+                    metadata.toContentValues());
+        }
+        return metadata;
+    }
+
+
+    /**
+     * Looks up the metadata of many images at once, images without current metadata are read
+     * and stored. Call off the main thread
+     * @param context - context
+     * @param imagePaths - page images, may contain nulls and repeats
+     * @return metadata by image path, images that can't be decoded are left out
+     */
+    public static Map<String, ImageMetadata> getAll(Context context,
+                                                    Collection<String> imagePaths) {
+        List<String> paths = new ArrayList<>(new LinkedHashSet<>(imagePaths));
+        paths.remove(null);
+
+        Map<String, ImageMetadata> metadataByPath = new HashMap<>(paths.size() * 2);
+        for (int start = 0; start < paths.size(); start += QUERY_BATCH_SIZE) {
+            queryBatch(context, paths.subList(start,
+                    Math.min(paths.size(), start + QUERY_BATCH_SIZE)), metadataByPath);
+        }
+
+        // Read once here, any image missing was attached before its metadata was stored. Not
+        // hashed, this runs ahead of an export and hashing would read every image in full
+        List<ContentValues> newRows = new ArrayList<>();
+        for (String imagePath : paths) {
+            ImageMetadata metadata = metadataByPath.get(imagePath);
+            if (metadata == null || !metadata.isCurrent()) {
+                metadataByPath.remove(imagePath);
+                metadata = read(context, imagePath, null);
+                if (metadata != null) {
+                    metadataByPath.put(imagePath, metadata);
+                    newRows.add(metadata.toContentValues());
+                }
+            }
+        }
+        if (!newRows.isEmpty()) {
+            context.getContentResolver().bulkInsert(ImageMetadataEntry.IMAGE_METADATA_URI,
+                    newRows.toArray(new ContentValues[0]));
+        }
+
+        return metadataByPath;
+    }
+
+
+    /**
+     * Keys the metadata of an image moved into the ImageStore by its stored path. A move keeps
+     * the size and modified time of the file, so a row read at the old path is still current
+     * and is copied, otherwise the stored image is read. Call off the main thread
+     * @param context - context
+     * @param oldPath - path the image was moved from
+     * @param storedPath - path of the stored image
+     * @param contentHash - hex SHA-256 the image is stored by
+     */
+    public static void move(Context context, String oldPath, String storedPath,
+                            String contentHash) {
+        Map<String, ImageMetadata> metadataByPath = new HashMap<>();
+        queryBatch(context, Collections.singletonList(oldPath), metadataByPath);
+        ImageMetadata oldMetadata = metadataByPath.get(oldPath);
+
+        ImageMetadata metadata = null;
+        if (oldMetadata != null) {
+            metadata = new ImageMetadata(storedPath, oldMetadata.getWidth(),
+                    oldMetadata.getHeight(), oldMetadata.getRotation(),
+                    oldMetadata.getByteSize(), oldMetadata.getModifiedTime(), contentHash);
+        }
+        if (metadata == null || !metadata.isCurrent()) {
+            metadata = read(context, storedPath, contentHash);
+        }
+        if (metadata != null) {
+            context.getContentResolver().insert(ImageMetadataEntry.IMAGE_METADATA_URI,
+                    metadata.toContentValues());
+        }
+        delete(context, oldPath);
+    }
+
+
+    /**
+     * Removes the metadata of an image, for when the image is no longer used by a page
+     * @param context - context
+     * @param imagePath - page image
+     */
+    public static void delete(Context context, String imagePath) {
+        context.getContentResolver().delete(ImageMetadataEntry.IMAGE_METADATA_URI,
+                ImageMetadataEntry.COLUMN_IMAGE_PATH + " = ?", new String[] {imagePath});
+    }
+
+
+    private static void queryBatch(Context context, List<String> imagePaths,
+                                   Map<String, ImageMetadata> metadataByPath) {
+        StringBuilder selection = new StringBuilder(ImageMetadataEntry.COLUMN_IMAGE_PATH)
+                .append(" IN (");
+        for (int i = 0; i < imagePaths.size(); i++) {
+            selection.append(i == 0 ? "?" : ",?");
+        }
+        selection.append(")");
+
+        Cursor cursor = context.getContentResolver().query(
+                ImageMetadataEntry.IMAGE_METADATA_URI,
+                METADATA_PROJECTION,
+                selection.toString(),
+                imagePaths.toArray(new String[0]),
+                null);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                ImageMetadata metadata = new ImageMetadata(
+                        cursor.getString(INDEX_IMAGE_PATH),
+                        cursor.getInt(INDEX_WIDTH),
+                        cursor.getInt(INDEX_HEIGHT),
+                        cursor.getInt(INDEX_ROTATION),
+                        cursor.getLong(INDEX_BYTE_SIZE),
+                        cursor.getLong(INDEX_MODIFIED_TIME),
+                        cursor.getString(INDEX_CONTENT_HASH));
+                metadataByPath.put(metadata.getImagePath(), metadata);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+
+    /**
+     * Reads the metadata from the image file, only its bounds and EXIF are read
+     * @param context - context
+     * @param imagePath - page image
+     * @param contentHash - hex SHA-256 of the image, null if it hasn't been hashed
+     * @return metadata, null if the image can't be decoded
+     */
+    private static ImageMetadata read(Context context, String imagePath, String contentHash) {
+        File imageFile = new File(imagePath);
+        // Read before the file, so an image replaced while it is read is seen as stale
+        long byteSize = imageFile.length();
+        long modifiedTime = imageFile.lastModified();
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(imagePath, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int rotation = Math.max(0, CreateDocLayout.getCameraPhotoOrientation(context, imagePath));
+        return new ImageMetadata(imagePath, options.outWidth, options.outHeight, rotation,
+                byteSize, modifiedTime, contentHash);
+    }
+
+
+    /**
+     * @param file - file to hash
+     * @return hex SHA-256 of the file, null if it can't be read
+     */
+    static String hashFile(File file) {
+        InputStream input = null;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            input = new FileInputStream(file);
+            byte[] buffer = new byte[HASH_BUFFER_SIZE];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b & 0xff));
+            }
+            return hex.toString();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            Log.w(LOG_TAG, "Couldn't hash: " + file, e);
+            return null;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Metadata of a single image file
+     */
+    public static class ImageMetadata {
+        private final String mImagePath;
+        private final int mWidth, mHeight;
+        private final int mRotation;
+        private final long mByteSize;
+        private final long mModifiedTime;
+        private final String mContentHash;
+
+        ImageMetadata(String imagePath, int width, int height, int rotation, long byteSize,
+                      long modifiedTime, String contentHash) {
+            mImagePath = imagePath;
+            mWidth = width;
+            mHeight = height;
+            mRotation = rotation;
+            mByteSize = byteSize;
+            mModifiedTime = modifiedTime;
+            mContentHash = contentHash;
+        }
+
+        public String getImagePath() {
+            return mImagePath;
+        }
+
+        /**
+         * @return width of the stored pixels, before the rotation
+         */
+        public int getWidth() {
+            return mWidth;
+        }
+
+        /**
+         * @return height of the stored pixels, before the rotation
+         */
+        public int getHeight() {
+            return mHeight;
+        }
+
+        /**
+         * @return clockwise rotation from the EXIF orientation, 0, 90, 180 or 270
+         */
+        public int getRotation() {
+            return mRotation;
+        }
+
+        public long getByteSize() {
+            return mByteSize;
+        }
+
+        public long getModifiedTime() {
+            return mModifiedTime;
+        }
+
+        /**
+         * @return hex SHA-256 of the file, null if it wasn't hashed or couldn't be read
+         */
+        public String getContentHash() {
+            return mContentHash;
+        }
+
+        /**
+         * @return true if the file still has the size and modified time it was read with
+         */
+        public boolean isCurrent() {
+            File imageFile = new File(mImagePath);
+            return imageFile.length() == mByteSize && imageFile.lastModified() == mModifiedTime;
+        }
+
+        private ContentValues toContentValues() {
+            ContentValues cv = new ContentValues();
+            cv.put(ImageMetadataEntry.COLUMN_IMAGE_PATH, mImagePath);
+            cv.put(ImageMetadataEntry.COLUMN_WIDTH, mWidth);
+            cv.put(ImageMetadataEntry.COLUMN_HEIGHT, mHeight);
+            cv.put(ImageMetadataEntry.COLUMN_ROTATION, mRotation);
+            cv.put(ImageMetadataEntry.COLUMN_BYTE_SIZE, mByteSize);
+            cv.put(ImageMetadataEntry.COLUMN_MODIFIED_TIME, mModifiedTime);
+            cv.put(ImageMetadataEntry.COLUMN_CONTENT_HASH, mContentHash);
+            return cv;
+        }
+    }
+}
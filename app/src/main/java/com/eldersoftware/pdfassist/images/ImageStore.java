@@ -0,0 +1,222 @@
+package com.eldersoftware.pdfassist.images;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Environment;
+import android.util.Log;
+
+import com.eldersoftware.pdfassist.data.DocInfoContract.ImageStoreEntry;
+import com.eldersoftware.pdfassist.data.DocInfoContract.PageEntry;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Page images shared by every doc, each file is named by the hash of its content so the same
+ * image is only kept once. Pages still refer to their image by path, which is the path of the
+ * stored file, and the provider counts the pages showing each stored image. Copying a page or
+ * a doc only copies the path.
+ *
+ * A capture is taken into the doc's own Images directory, then moved into the store. Images
+ * taken before the store existed are moved in by migrateAsync. The metadata of an image moves
+ * with it, with the hash it was stored by.
+ */
+public class ImageStore {
+    private static final String LOG_TAG = ImageStore.class.getSimpleName();
+
+    // Images are kept in <store>/Images, so their thumbnails go in <store>/Thumbnails
+    private static final String STORE_DIR = "/Android Pdf Tools/Image Store";
+    private static final String IMAGE_DIR = "Images";
+
+    // Every move into the store is made on this thread, so an image is never moved twice at once
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+
+    private ImageStore() {
+    }
+
+
+    /**
+     * @return directory of the stored images
+     */
+    public static File getImageDirectory() {
+        return new File(Environment.getExternalStorageDirectory() + STORE_DIR, IMAGE_DIR);
+    }
+
+
+    /**
+     * @param imagePath - page image
+     * @return true if the image is in the store
+     */
+    public static boolean isStored(String imagePath) {
+        File parent = new File(imagePath).getAbsoluteFile().getParentFile();
+        return getImageDirectory().getAbsoluteFile().equals(parent);
+    }
+
+
+    /**
+     * Moves an image into the store and points every page showing it at the stored file. If
+     * the store already holds the same image, the file is deleted instead. Call off the main
+     * thread
+     * @param context - context
+     * @param imagePath - page image outside the store
+     * @return path of the stored image, or the path given if the image couldn't be moved
+     */
+    public static String importImage(Context context, String imagePath) {
+        return importImage(context, imagePath, imagePath);
+    }
+
+
+    /**
+     * Moves an image into the store and points the pages showing another path at it, for an
+     * image that was converted to a new file. The file at the page path is left for the caller
+     * to delete. Call off the main thread
+     * @param context - context
+     * @param imagePath - image outside the store
+     * @param pageImagePath - path the pages show now
+     * @return path of the stored image, or imagePath if the image couldn't be moved, in which
+     * case the pages are unchanged
+     */
+    public static String importImage(Context context, String imagePath, String pageImagePath) {
+        if (isStored(imagePath)) {
+            return imagePath;
+        }
+
+        File imageFile = new File(imagePath);
+        String contentHash = ImageMetadataStore.hashFile(imageFile);
+        if (contentHash == null) {
+            return imagePath;
+        }
+
+        File directory = getImageDirectory();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(LOG_TAG, "Couldn't create directory: " + directory);
+            return imagePath;
+        }
+
+        File storedFile = new File(directory, contentHash + getExtension(imageFile));
+        String storedPath = storedFile.getAbsolutePath();
+        boolean moved = false;
+        if (!storedFile.isFile()) {
+            if (!imageFile.renameTo(storedFile)) {
+                Log.w(LOG_TAG, "Couldn't move into the store: " + imagePath);
+                return imagePath;
+            }
+            moved = true;
+        }
+
+        // Added before the pages point at it, so the pages are counted by the triggers
+        ContentValues storeCV = new ContentValues();
+        storeCV.put(ImageStoreEntry.COLUMN_CONTENT_HASH, contentHash);
+        storeCV.put(ImageStoreEntry.COLUMN_IMAGE_PATH, storedPath);
+        storeCV.put(ImageStoreEntry.COLUMN_CREATED_TIME, System.currentTimeMillis());
+        context.getContentResolver().insert(ImageStoreEntry.IMAGE_STORE_URI, storeCV);
+
+        ContentValues pageCV = new ContentValues();
+        pageCV.put(PageEntry.COLUMN_PAGE_IMAGE, storedPath);
+        int pagesUpdated = context.getContentResolver().update(PageEntry.ALL_PAGES_URI, pageCV,
+                PageEntry.COLUMN_PAGE_IMAGE + " = ?", new String[] {pageImagePath});
+
+        // The page was deleted or changed while the image was moved, it is left where it was
+        if (pagesUpdated == 0) {
+            if (moved && !storedFile.renameTo(imageFile)) {
+                Log.w(LOG_TAG, "Couldn't move out of the store: " + storedPath);
+            }
+            return imagePath;
+        }
+
+        if (!moved && !imageFile.delete()) {
+            Log.w(LOG_TAG, "Couldn't delete duplicate image: " + imagePath);
+        }
+        // Thumbnails made from the old paths before the move are no longer used. The metadata
+        // still holds for a moved file, the duplicate of a stored image has none to keep
+        ThumbnailStore.delete(imagePath);
+        if (moved) {
+            ImageMetadataStore.move(context, imagePath, storedPath, contentHash);
+        } else {
+            ImageMetadataStore.delete(context, imagePath);
+        }
+        if (!pageImagePath.equals(imagePath)) {
+            ThumbnailStore.delete(pageImagePath);
+            ImageMetadataStore.delete(context, pageImagePath);
+        }
+        return storedPath;
+    }
+
+
+    /**
+     * Runs a task on the thread that moves images into the store, so the task never sees an
+     * image part way through being moved in
+     * @param task - task that may call importImage or delete stored images
+     */
+    public static void execute(Runnable task) {
+        sExecutor.execute(task);
+    }
+
+
+    /**
+     * Moves the page images taken before the store existed into it, in the background
+     * @param context - context
+     */
+    public static void migrateAsync(Context context) {
+        final Context appContext = context.getApplicationContext();
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int imported = 0;
+                for (String imagePath : queryUnstoredImages(appContext)) {
+                    if (new File(imagePath).isFile() &&
+                            !importImage(appContext, imagePath).equals(imagePath)) {
+                        imported++;
+                    }
+                }
+                if (imported > 0) {
+                    Log.d(LOG_TAG, "Moved " + imported + " images into the store");
+                }
+            }
+        });
+    }
+
+
+    /**
+     * @return the distinct images shown by pages that aren't in the store
+     */
+    private static List<String> queryUnstoredImages(Context context) {
+        List<String> imagePaths = new ArrayList<>();
+        Cursor cursor = context.getContentResolver().query(
+                PageEntry.ALL_PAGES_URI,
+                new String[] {"DISTINCT " + PageEntry.COLUMN_PAGE_IMAGE},
+                PageEntry.COLUMN_PAGE_IMAGE + " IS NOT NULL AND " +
+                        PageEntry.COLUMN_PAGE_IMAGE + " NOT IN (SELECT " +
+                        ImageStoreEntry.COLUMN_IMAGE_PATH + " FROM " +
+                        ImageStoreEntry.TABLE_NAME + ")",
+                null,
+                null);
+        if (cursor == null) {
+            return imagePaths;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                String imagePath = cursor.getString(0);
+                if (!imagePath.isEmpty() && !isStored(imagePath)) {
+                    imagePaths.add(imagePath);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return imagePaths;
+    }
+
+
+    private static String getExtension(File imageFile) {
+        String name = imageFile.getName();
+        int dot = name.lastIndexOf('.');
+        return dot != -1 ? name.substring(dot) : "";
+    }
+}
@@ -0,0 +1,69 @@
+package com.eldersoftware.pdfassist.images;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+
+/**
+ * Decoding and file helpers shared by the ThumbnailStore and the CaptureRecompressor
+ */
+class ImageUtils {
+
+    private ImageUtils() {
+    }
+
+
+    /**
+     * Decodes the image subsampled close to the size, then scales and rotates it to fit
+     * @param imagePath - image to decode
+     * @param options - options holding the bounds of the image
+     * @param maxEdge - longest edge of the result, in pixels
+     * @param rotation - clockwise degrees to rotate the pixels by
+     * @return scaled image, null if it can't be decoded
+     */
+    static Bitmap decodeScaled(String imagePath, BitmapFactory.Options options, int maxEdge,
+                               int rotation) {
+        // Largest power of two that keeps the image at least the size
+        int sampleSize = 1;
+        while (Math.max(options.outWidth, options.outHeight) / (sampleSize * 2) >= maxEdge) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap decoded = BitmapFactory.decodeFile(imagePath, options);
+        if (decoded == null) {
+            return null;
+        }
+
+        float scale = Math.min(1f,
+                (float) maxEdge / Math.max(decoded.getWidth(), decoded.getHeight()));
+        if (rotation == 0 && scale == 1f) {
+            return decoded;
+        }
+
+        Matrix matrix = new Matrix();
+        matrix.postScale(scale, scale);
+        matrix.postRotate(rotation);
+        Bitmap scaled = Bitmap.createBitmap(decoded, 0, 0, decoded.getWidth(),
+                decoded.getHeight(), matrix, true);
+        if (scaled != decoded) {
+            decoded.recycle();
+        }
+        return scaled;
+    }
+
+
+    static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.eldersoftware.pdfassist.images;
+
+import android.content.Context;
+import android.content.res.Resources;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.Registry;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.module.AppGlideModule;
+import com.bumptech.glide.request.RequestOptions;
+import com.eldersoftware.pdfassist.R;
+
+import java.io.InputStream;
+
+
+/**
+ * Glide configuration for the app, the cache budgets are read from res/values/integers.xml so
+ * they can be tuned without a code change. Also registers the loader for page thumbnails
+ */
+@GlideModule
+public class PageImageGlideModule extends AppGlideModule {
+    private static final String DISK_CACHE_DIR = "pageImageGlideCache";
+
+
+    @Override
+    public void applyOptions(@NonNull Context context, @NonNull GlideBuilder builder) {
+        Resources resources = context.getResources();
+
+        MemorySizeCalculator calculator = new MemorySizeCalculator.Builder(context)
+                .setMemoryCacheScreens(
+                        resources.getInteger(R.integer.page_image_memory_cache_screens))
+                .setBitmapPoolScreens(
+                        resources.getInteger(R.integer.page_image_bitmap_pool_screens))
+                .build();
+        builder.setMemoryCache(new LruResourceCache(calculator.getMemoryCacheSize()));
+        builder.setBitmapPool(new LruBitmapPool(calculator.getBitmapPoolSize()));
+
+        long diskCacheBytes =
+                resources.getInteger(R.integer.page_image_disk_cache_mb) * 1024L * 1024L;
+        builder.setDiskCache(new InternalCacheDiskCacheFactory(context, DISK_CACHE_DIR,
+                diskCacheBytes));
+
+        // Thumbnails are JPEGs of photos, they have no alpha and 565 halves their memory
+        builder.setDefaultRequestOptions(new RequestOptions()
+                .format(DecodeFormat.PREFER_RGB_565));
+    }
+
+
+    @Override
+    public void registerComponents(@NonNull Context context, @NonNull Glide glide,
+                                   @NonNull Registry registry) {
+        registry.prepend(PageThumbnail.class, InputStream.class,
+                new PageThumbnailLoader.Factory());
+    }
+
+
+    // Every module is declared here, so Glide doesn't need to read the manifest
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
+}
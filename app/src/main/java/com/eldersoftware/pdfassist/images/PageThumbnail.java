@@ -0,0 +1,68 @@
+package com.eldersoftware.pdfassist.images;
+
+import java.io.File;
+
+
+/**
+ * Glide model for the thumbnail of a page image. Only the image path and its modified time are
+ * held, the thumbnail file is looked up by the PageThumbnailLoader on Glide's own threads, so
+ * binding a row never touches the disk.
+ */
+public class PageThumbnail {
+    private final String mImagePath;
+    private final boolean mStored;
+    // 0 for a stored image, which never changes at its path
+    private final long mModifiedTime;
+
+
+    /**
+     * Constructor, reads the modified time of an image outside the store so call off the main
+     * thread
+     * @param imagePath - page image
+     */
+    public PageThumbnail(String imagePath) {
+        mImagePath = imagePath;
+        mStored = ImageStore.isStored(imagePath);
+        mModifiedTime = mStored ? 0 : new File(imagePath).lastModified();
+    }
+
+
+    public String getImagePath() {
+        return mImagePath;
+    }
+
+
+    /**
+     * @return true if the image is in the ImageStore, where an image never changes at its path
+     */
+    public boolean isStored() {
+        return mStored;
+    }
+
+
+    /**
+     * @return modified time of the image when the model was made, 0 if it is stored
+     */
+    public long getModifiedTime() {
+        return mModifiedTime;
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof PageThumbnail && mImagePath.equals(((PageThumbnail) o).mImagePath);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return mImagePath.hashCode();
+    }
+
+
+    // Used by Glide for the disk cache key
+    @Override
+    public String toString() {
+        return mImagePath;
+    }
+}
@@ -0,0 +1,116 @@
+package com.eldersoftware.pdfassist.images;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.bumptech.glide.signature.ObjectKey;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Loads a PageThumbnail from the ThumbnailStore. The thumbnail is looked up when Glide fetches
+ * it on its source executor, a page without a current thumbnail fails to load so the caller
+ * can make one.
+ */
+public class PageThumbnailLoader implements ModelLoader<PageThumbnail, InputStream> {
+
+    @Override
+    public LoadData<InputStream> buildLoadData(@NonNull PageThumbnail model, int width,
+                                               int height, @NonNull Options options) {
+        return new LoadData<>(new ObjectKey(model), new ThumbnailFetcher(model));
+    }
+
+
+    @Override
+    public boolean handles(@NonNull PageThumbnail model) {
+        return true;
+    }
+
+
+    /**
+     * Opens the thumbnail file, off the main thread
+     */
+    private static class ThumbnailFetcher implements DataFetcher<InputStream> {
+        private final PageThumbnail mModel;
+        private InputStream mInput;
+
+        ThumbnailFetcher(PageThumbnail model) {
+            mModel = model;
+        }
+
+        @Override
+        public void loadData(@NonNull Priority priority,
+                             @NonNull DataCallback<? super InputStream> callback) {
+            File thumbnail = ThumbnailStore.getThumbnail(mModel.getImagePath());
+            if (thumbnail == null) {
+                callback.onLoadFailed(new FileNotFoundException(
+                        "No current thumbnail for: " + mModel.getImagePath()));
+                return;
+            }
+            try {
+                mInput = new FileInputStream(thumbnail);
+                callback.onDataReady(mInput);
+            } catch (FileNotFoundException e) {
+                // Deleted since it was looked up
+                callback.onLoadFailed(e);
+            }
+        }
+
+        @Override
+        public void cleanup() {
+            if (mInput != null) {
+                try {
+                    mInput.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            // The lookup is a few small reads, there is nothing worth interrupting
+        }
+
+        @NonNull
+        @Override
+        public Class<InputStream> getDataClass() {
+            return InputStream.class;
+        }
+
+        @NonNull
+        @Override
+        public DataSource getDataSource() {
+            return DataSource.LOCAL;
+        }
+    }
+
+
+    /**
+     * Registered by the PageImageGlideModule
+     */
+    public static class Factory implements ModelLoaderFactory<PageThumbnail, InputStream> {
+
+        @NonNull
+        @Override
+        public ModelLoader<PageThumbnail, InputStream> build(
+                @NonNull MultiModelLoaderFactory multiFactory) {
+            return new PageThumbnailLoader();
+        }
+
+        @Override
+        public void teardown() {
+        }
+    }
+}
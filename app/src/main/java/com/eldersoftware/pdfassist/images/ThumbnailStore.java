@@ -0,0 +1,288 @@
+package com.eldersoftware.pdfassist.images;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.eldersoftware.pdfassist.pdf.CreateDocLayout;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Downscaled copies of the page images, so the page list never decodes a full camera image.
+ * Each image gets a thumbnail in a Thumbnails directory next to the images own directory, with
+ * a small stamp file beside it recording the size and modified time of the image it was made
+ * from, so a replaced image is made again. Each image only touches its own files, so making
+ * one thumbnail costs the same however many images share the directory. The rotation of the
+ * image is applied to the thumbnail, which has no EXIF data.
+ */
+public class ThumbnailStore {
+    private static final String LOG_TAG = ThumbnailStore.class.getSimpleName();
+
+    // Longest edge of a thumbnail in pixels, fills the 200dp page image at xxhdpi
+    private static final int MAX_EDGE_PIXELS = 600;
+    private static final String THUMBNAIL_SUFFIX = "_thumb.jpg";
+    private static final String STAMP_SUFFIX = "_thumb.stamp";
+    private static final int JPEG_QUALITY = 85;
+
+    private static final String THUMBNAIL_DIR = "Thumbnails";
+    // Directory of the images next to the thumbnail directory, in the docs and the ImageStore
+    private static final String IMAGE_DIR = "Images";
+
+    // One image is scaled at a time, they are only needed as fast as the user takes photos
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    // Images being scaled, guarded by the class
+    private static final Set<String> sPending = new HashSet<>();
+
+
+    private ThumbnailStore() {
+    }
+
+
+    /**
+     * Reads the image's stamp file, call off the main thread
+     * @param imagePath - page image
+     * @return the thumbnail, or null if it hasn't been made from the current image
+     */
+    public static File getThumbnail(String imagePath) {
+        File imageFile = new File(imagePath);
+        File thumbnailFile = getThumbnailFile(imageFile);
+        return isCurrent(imageFile) && thumbnailFile.isFile() ? thumbnailFile : null;
+    }
+
+
+    /**
+     * Makes the thumbnail of an image in the background, unless it is current or already being
+     * made
+     * @param context - context
+     * @param imagePath - page image
+     * @param onCreated - run on the main thread once the thumbnail is made, may be null
+     */
+    public static void createAsync(Context context, final String imagePath,
+                                   final Runnable onCreated) {
+        final Context appContext = context.getApplicationContext();
+        synchronized (ThumbnailStore.class) {
+            if (!sPending.add(imagePath)) {
+                return;
+            }
+        }
+
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean created;
+                try {
+                    created = create(appContext, imagePath);
+                } finally {
+                    synchronized (ThumbnailStore.class) {
+                        sPending.remove(imagePath);
+                    }
+                }
+                if (created && onCreated != null) {
+                    sMainHandler.post(onCreated);
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Makes the thumbnail of an image, on the calling thread
+     * @param context - context
+     * @param imagePath - page image
+     * @return true if the thumbnail is current
+     */
+    public static boolean create(Context context, String imagePath) {
+        File imageFile = new File(imagePath);
+        if (isCurrent(imageFile)) {
+            return true;
+        }
+
+        // Read before decoding, so an image replaced during the decode isn't marked current
+        long sourceLength = imageFile.length();
+        long sourceModified = imageFile.lastModified();
+
+        Bitmap thumbnail = decodeScaled(context, imagePath, MAX_EDGE_PIXELS);
+        if (thumbnail == null) {
+            return false;
+        }
+        try {
+            writeJpeg(thumbnail, getThumbnailFile(imageFile));
+            // Written after the thumbnail, so a stamp never vouches for an older thumbnail
+            writeStamp(getStampFile(imageFile), sourceLength, sourceModified);
+            return true;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't write thumbnail of: " + imagePath, e);
+            return false;
+        } finally {
+            thumbnail.recycle();
+        }
+    }
+
+
+    /**
+     * Deletes the thumbnail of an image, for when the image is no longer used by a page
+     * @param imagePath - page image
+     */
+    public static void delete(String imagePath) {
+        File imageFile = new File(imagePath);
+        // The stamp goes first, so a thumbnail without one is never taken as current
+        getStampFile(imageFile).delete();
+        getThumbnailFile(imageFile).delete();
+    }
+
+
+    /**
+     * @param file - file in a thumbnail directory
+     * @return path of the image the thumbnail or stamp was made from, null if the file is
+     * neither
+     */
+    public static String getSourceImagePath(File file) {
+        String name = file.getName();
+        for (String suffix : new String[] {THUMBNAIL_SUFFIX, STAMP_SUFFIX}) {
+            if (name.endsWith(suffix)) {
+                File baseDirectory = file.getAbsoluteFile().getParentFile().getParentFile();
+                return new File(new File(baseDirectory, IMAGE_DIR),
+                        name.substring(0, name.length() - suffix.length())).getPath();
+            }
+        }
+        return null;
+    }
+
+
+    private static File getThumbnailDirectory(File imageFile) {
+        // Images are kept in <doc>/Images, so thumbnails go in <doc>/Thumbnails
+        File docDirectory = imageFile.getAbsoluteFile().getParentFile().getParentFile();
+        return new File(docDirectory != null ? docDirectory : imageFile.getParentFile(),
+                THUMBNAIL_DIR);
+    }
+
+
+    private static File getThumbnailFile(File imageFile) {
+        return new File(getThumbnailDirectory(imageFile), imageFile.getName() + THUMBNAIL_SUFFIX);
+    }
+
+
+    private static File getStampFile(File imageFile) {
+        return new File(getThumbnailDirectory(imageFile), imageFile.getName() + STAMP_SUFFIX);
+    }
+
+
+    /**
+     * @param imageFile - page image
+     * @return true if the stamp matches the image as it is now
+     */
+    private static boolean isCurrent(File imageFile) {
+        long[] stamp = readStamp(getStampFile(imageFile));
+        return stamp != null && imageFile.isFile() &&
+                stamp[0] == imageFile.length() && stamp[1] == imageFile.lastModified();
+    }
+
+
+    /**
+     * @param stampFile - stamp file
+     * @return the source length and modified time, null if there is no readable stamp
+     */
+    private static long[] readStamp(File stampFile) {
+        if (!stampFile.isFile()) {
+            return null;
+        }
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new FileInputStream(stampFile));
+            return new long[] {input.readLong(), input.readLong()};
+        } catch (IOException e) {
+            // A damaged stamp only means the thumbnail is made again
+            return null;
+        } finally {
+            ImageUtils.closeQuietly(input);
+        }
+    }
+
+
+    /**
+     * Writes the stamp to a temporary file and renames it, so a partly written stamp is never
+     * read
+     */
+    private static void writeStamp(File stampFile, long sourceLength, long sourceModified)
+            throws IOException {
+        File tempFile = new File(stampFile.getParentFile(), stampFile.getName() + ".tmp");
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new FileOutputStream(tempFile));
+            output.writeLong(sourceLength);
+            output.writeLong(sourceModified);
+            output.close();
+            output = null;
+            if (!tempFile.renameTo(stampFile)) {
+                throw new IOException("Couldn't rename: " + tempFile);
+            }
+        } finally {
+            ImageUtils.closeQuietly(output);
+            tempFile.delete();
+        }
+    }
+
+
+    /**
+     * @param maxEdge - longest edge of the result, in pixels
+     * @return upright image, null if it can't be decoded
+     */
+    private static Bitmap decodeScaled(Context context, String imagePath, int maxEdge) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(imagePath, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int rotation = Math.max(0, CreateDocLayout.getCameraPhotoOrientation(context, imagePath));
+        return ImageUtils.decodeScaled(imagePath, options, maxEdge, rotation);
+    }
+
+
+    /**
+     * Writes to a temporary file and renames it, so the page list never loads a partly
+     * written thumbnail
+     */
+    private static void writeJpeg(Bitmap bitmap, File file) throws IOException {
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Couldn't create directory: " + directory);
+        }
+
+        File tempFile = new File(directory, file.getName() + ".tmp");
+        OutputStream output = null;
+        try {
+            output = new BufferedOutputStream(new FileOutputStream(tempFile));
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, output)) {
+                throw new IOException("Couldn't compress: " + file);
+            }
+            output.close();
+            output = null;
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Couldn't rename: " + tempFile);
+            }
+        } finally {
+            ImageUtils.closeQuietly(output);
+            tempFile.delete();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.eldersoftware.pdfassist.pdf;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+
+
+/**
+ * Holds mutable bitmaps once their page has been drawn so the next decode can reuse their
+ * memory through BitmapFactory.Options.inBitmap. Shared between the prefetch workers. The pool
+ * also counts the bytes of the bitmaps allocated by the decoder until they are recycled, to
+ * report the most bitmap memory an export held at once.
+ */
+class BitmapPool {
+    private ArrayList<Bitmap> mBitmaps = new ArrayList<>();
+    private int mMaxSize;
+
+    private long mAllocatedBytes;
+    private long mPeakAllocatedBytes;
+
+
+    /**
+     * Constructor
+     * @param maxSize - most bitmaps kept, extra bitmaps are recycled when released
+     */
+    BitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+
+    /**
+     * Removes the smallest pooled bitmap that can hold the given number of bytes
+     * @param byteCount - bytes needed by the decoded image
+     * @return bitmap to decode into, or null if none are large enough
+     */
+    synchronized Bitmap acquire(long byteCount) {
+        Bitmap best = null;
+        for (Bitmap bitmap : mBitmaps) {
+            if (bitmap.getAllocationByteCount() >= byteCount &&
+                    (best == null || bitmap.getAllocationByteCount() < best.getAllocationByteCount())) {
+                best = bitmap;
+            }
+        }
+
+        if (best != null) {
+            mBitmaps.remove(best);
+        }
+        return best;
+    }
+
+
+    /**
+     * Returns a bitmap to the pool once it is no longer drawn
+     * @param bitmap - bitmap to reuse
+     */
+    synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+
+        if (bitmap.isMutable() && mBitmaps.size() < mMaxSize) {
+            mBitmaps.add(bitmap);
+        } else {
+            discard(bitmap);
+        }
+    }
+
+
+    /**
+     * Counts a bitmap the decoder allocated rather than took from the pool
+     * @param bitmap - newly decoded bitmap
+     */
+    synchronized void trackAllocation(Bitmap bitmap) {
+        mAllocatedBytes += bitmap.getAllocationByteCount();
+        mPeakAllocatedBytes = Math.max(mPeakAllocatedBytes, mAllocatedBytes);
+    }
+
+
+    /**
+     * Recycles a bitmap that won't be pooled or reused
+     * @param bitmap - allocated bitmap
+     */
+    synchronized void discard(Bitmap bitmap) {
+        mAllocatedBytes -= bitmap.getAllocationByteCount();
+        bitmap.recycle();
+    }
+
+
+    /**
+     * @return most bytes held at once by the bitmaps allocated from this pool
+     */
+    synchronized long getPeakAllocatedBytes() {
+        return mPeakAllocatedBytes;
+    }
+
+
+    /**
+     * Recycles every pooled bitmap
+     */
+    synchronized void clear() {
+        for (Bitmap bitmap : mBitmaps) {
+            discard(bitmap);
+        }
+        mBitmaps.clear();
+    }
+}
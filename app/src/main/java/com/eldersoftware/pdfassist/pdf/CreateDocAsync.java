@@ -1,73 +1,113 @@
 package com.eldersoftware.pdfassist.pdf;
 
 import android.content.Context;
-import android.database.Cursor;
-import android.database.DatabaseUtils;
 import android.net.Uri;
 import android.os.AsyncTask;
-import android.os.Environment;
+import android.os.Trace;
 import android.util.Log;
 
-import com.eldersoftware.pdfassist.utils.ProviderUtils;
+import com.eldersoftware.pdfassist.pdfcore.ExportCancelledException;
+import com.eldersoftware.pdfassist.pdfcore.ExportMonitor;
 
 import java.io.File;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.Locale;
 
 
 /**
- * Asyncronous class used to create a PDF
+ * Asyncronous class used to create a PDF. Progress is published after each page and the export
+ * can be cancelled with cancelExport, which stops it between pages and deletes the partial file
  */
-public class CreateDocAsync extends AsyncTask<Uri, Void, Void> {
+public class CreateDocAsync extends AsyncTask<Uri, Long, Void> {
+    private static final String LOG_TAG = CreateDocAsync.class.getSimpleName();
+
     private WeakReference<Context> mContext;
     private CreateDocAsyncCallback mCallback;
     private File mPdfFile;
+    private int mExportMode;
+    private ExportMonitor mMonitor;
 
     /**
-     * Constructor
+     * Constructor, uses the in memory export mode
      * @param context - context, weak reference used in case the apps context changes during execution
      * @param callback - CreateDocAsyncCallback
      */
     public CreateDocAsync(Context context, CreateDocAsyncCallback callback) {
+        this(context, DocExporter.EXPORT_MODE_IN_MEMORY, callback);
+    }
+
+    /**
+     * Constructor
+     * @param context - context, weak reference used in case the apps context changes during execution
+     * @param exportMode - DocExporter export mode
+     * @param callback - CreateDocAsyncCallback
+     */
+    public CreateDocAsync(Context context, int exportMode, CreateDocAsyncCallback callback) {
         mContext = new WeakReference<>(context);
+        mExportMode = exportMode;
         mCallback = callback;
+
+        // Progress is passed on to the UI thread as pageIndex, totalPages, bytes and millis
+        mMonitor = new ExportMonitor(new ExportMonitor.ExportListener() {
+            @Override
+            public void onPageExported(int pageIndex, int totalPages, long bytesWritten,
+                                       long elapsedMillis) {
+                publishProgress((long) pageIndex, (long) totalPages, bytesWritten, elapsedMillis);
+            }
+        });
     }
 
 
     /**
-     * Callback containing onComplete and onUpdate for PDF creation.
+     * Callback containing onComplete, onUpdate and onCancelled for PDF creation.
      */
     public interface CreateDocAsyncCallback {
+        /**
+         * @param pdfFile - exported file, null if the export failed
+         */
         void onComplete(File pdfFile);
-        void onUpdate();
+
+        /**
+         * Called after each page is finished
+         * @param pageIndex - index of the finished page, 0 is the title page
+         * @param totalPages - number of pages, including the title page
+         * @param bytesWritten - bytes written so far, 0 until an in memory export is written
+         * @param elapsedMillis - time since the export started
+         */
+        void onUpdate(int pageIndex, int totalPages, long bytesWritten, long elapsedMillis);
+
+        /**
+         * Called instead of onComplete once a cancelled export has stopped
+         */
+        void onCancelled();
     }
 
-    @Override
-    protected Void doInBackground(Uri... uris) {
-        Uri docNameUri = uris[0];
 
-        // Cursor used to gather all the page data from the content provider
-        Cursor pageInfoCursor = mContext.get().getContentResolver()
-                .query(docNameUri, ProviderUtils.PAGE_PROJECTION,
-                null, null ,null);
+    /**
+     * Stops the export before its next page, the partly written file is deleted
+     */
+    public void cancelExport() {
+        mMonitor.cancel();
+        cancel(false);
+    }
 
-        // Page info then split into array to be used by the CreateDocLayout class
-        ArrayList<String[]> pageInfo = new ArrayList<>();
-        if (pageInfoCursor != null && pageInfoCursor.moveToFirst()) {
-            pageInfo = ProviderUtils.splitPageData(pageInfoCursor);
+
+    @Override
+    protected Void doInBackground(Uri... uris) {
+        Context context = mContext.get();
+        if (context == null) {
+            return null;
         }
 
-        CreateDocLayout docLayout = new CreateDocLayout(mContext.get(), pageInfo,
-                docNameUri.getLastPathSegment());
+        Trace.beginSection("CreateDocAsync.export");
         try {
-            mPdfFile = createPdfFile(docNameUri.getLastPathSegment());
-            docLayout.saveToFile(mPdfFile);
+            mPdfFile = new DocExporter(context).export(uris[0], mExportMode, mMonitor);
+        } catch (ExportCancelledException e) {
+            Log.d(LOG_TAG, "Export cancelled: " + uris[0]);
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            Trace.endSection();
         }
 
         return null;
@@ -75,38 +115,19 @@ public class CreateDocAsync extends AsyncTask<Uri, Void, Void> {
 
 
     @Override
-    protected void onPostExecute(Void aVoid) {
-        mCallback.onComplete(mPdfFile);
+    protected void onProgressUpdate(Long... values) {
+        mCallback.onUpdate(values[0].intValue(), values[1].intValue(), values[2], values[3]);
     }
 
 
-    /**
-     * Uses the doc name to create a directory and file for saving the PDF into
-     * @param docName - doc name
-     * @return File with the correct directory and file name
-     * @throws IOException thrown when errors occur creating/saving the file
-     */
-    private static File createPdfFile(String docName) throws IOException {
-        // Creates the directory and ensures it exists
-        String externalDirectory = Environment.getExternalStorageDirectory().toString() +
-                "/Android Pdf Tools/" + docName + "/PDFs";
-        File directory = new File(externalDirectory);
-        boolean bool = false;
-        if (!directory.exists()) {
-            bool = directory.mkdirs(); // Creates directory if it doesn't exist
-        }
+    @Override
+    protected void onPostExecute(Void aVoid) {
+        mCallback.onComplete(mPdfFile);
+    }
 
-        // Creates file with directory path, adds a suffix, (#), if the file already exists
-        String docNameWithExt = docName + ".pdf";
-        File pdfFile = new File(directory, docNameWithExt);
-        int i = 1;
-        while (pdfFile.exists()) {
-            docNameWithExt = docName + " (" + i + ").pdf";
-            pdfFile = new File(directory, docNameWithExt);
-            i++;
-        }
 
-        return pdfFile;
+    @Override
+    protected void onCancelled(Void aVoid) {
+        mCallback.onCancelled();
     }
-
 }
@@ -2,58 +2,74 @@ package com.eldersoftware.pdfassist.pdf;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Matrix;
 import android.graphics.Paint;
-import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.pdf.PdfDocument;
 import android.net.Uri;
-import android.text.Layout;
-import android.text.StaticLayout;
+import android.os.Trace;
 import android.text.TextPaint;
 import android.util.Log;
 
 import androidx.exifinterface.media.ExifInterface;
 
+import com.eldersoftware.pdfassist.images.ImageMetadataStore;
+import com.eldersoftware.pdfassist.images.ImageMetadataStore.ImageMetadata;
+import com.eldersoftware.pdfassist.pdfcore.Box;
+import com.eldersoftware.pdfassist.pdfcore.DocModel;
+import com.eldersoftware.pdfassist.pdfcore.DocPage;
+import com.eldersoftware.pdfassist.pdfcore.EmbeddedImage;
+import com.eldersoftware.pdfassist.pdfcore.ExportMonitor;
+import com.eldersoftware.pdfassist.pdfcore.ExportTimings;
+import com.eldersoftware.pdfassist.pdfcore.JpegInfo;
+import com.eldersoftware.pdfassist.pdfcore.PageImageSource;
+import com.eldersoftware.pdfassist.pdfcore.PageLayout;
+import com.eldersoftware.pdfassist.pdfcore.PageLayoutEngine;
+import com.eldersoftware.pdfassist.pdfcore.PageRenderCache;
+import com.eldersoftware.pdfassist.pdfcore.StreamingPdfRenderer;
+import com.eldersoftware.pdfassist.pdfcore.TextLayout;
+import com.eldersoftware.pdfassist.pdfcore.TextLayoutCache;
 import com.eldersoftware.pdfassist.utils.ProviderUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 
 /**
- * Class containing code executed to create a pdf and save to a file.
+ * Class containing code executed to create a pdf and save to a file. The page layout and PDF
+ * writing are done by the pdfcore module, this class draws the layouts on a PdfDocument and
+ * supplies the decoded page images.
  */
 public class CreateDocLayout {
-    String[] mPageTitles, mPageImages, mPageText;
+    private static final String LOG_TAG = CreateDocLayout.class.getSimpleName();
+
     Context mContext;
-    String mTitleText;
+    DocModel mDocModel;
 
-    private PdfDocument mDocument = new PdfDocument();
+    private PdfDocument mDocument;
 
-    // Margin and dimension constants
-    private static final int PAGE_WIDTH = 595;
-    private static final int PAGE_HEIGHT = 842;
+    // Streaming export re-encodes decoded page images that can't be copied as JPEGs
+    private static final int STREAMING_JPEG_QUALITY = 90;
 
-    private static final int MARGIN_LEFT = 60;
-    private static final int MARGIN_RIGHT = PAGE_WIDTH - 60;
-    private static final int MARGIN_HALF = PAGE_WIDTH / 2;
-    private static final int MARGIN_QUARTER = PAGE_WIDTH / 4;
-    private static final int MARGIN_THREE_QUARTER = MARGIN_HALF + MARGIN_QUARTER;
+    // Rendered pages kept for re-exports, in the app cache directory
+    private static final String PAGE_RENDER_CACHE_DIR = "pageRenderCache";
+    private static final long PAGE_RENDER_CACHE_BYTES = 64 * 1024 * 1024;
+    private static PageRenderCache sPageRenderCache;
 
-    private static final int MARGIN_TOP = 60;
 
-    private static final int IMAGE_HEIGHT = 300;
-    private static final int IMAGE_PADDING = 40;
+    private Paint mWhitePaint, mBlackPaint, mImagePaint;
+    private TextPaint mTitleTextPaint, mStandardTextPaint;
 
+    private PageLayoutEngine mLayoutEngine;
 
-    private Paint mWhitePaint, mBlackPaint;
-    private TextPaint mTitleTextPaint, mStandardTextPaint;
+    // Decoded page images are returned here once drawn, so the next decode can reuse them
+    private BitmapPool mBitmapPool = new BitmapPool(ImagePrefetcher.MAX_PREFETCH_DEPTH + 1);
+    private PageImageDecoder mImageDecoder;
 
 
     /**
@@ -64,144 +80,347 @@ public class CreateDocLayout {
      * @param titleText - title text
      */
     public CreateDocLayout(Context context, ArrayList<String[]> allPageData, String titleText) {
-        mPageTitles = allPageData.get(ProviderUtils.PAGE_NAMES_INDEX);
-        mPageImages = allPageData.get(ProviderUtils.PAGE_IMAGES_INDEX);
-        mPageText = allPageData.get(ProviderUtils.PAGE_TEXT_INDEX);
+        String[] pageTitles = allPageData.get(ProviderUtils.PAGE_NAMES_INDEX);
+        String[] pageImages = allPageData.get(ProviderUtils.PAGE_IMAGES_INDEX);
+        String[] pageText = allPageData.get(ProviderUtils.PAGE_TEXT_INDEX);
+
+        List<DocPage> pages = new ArrayList<>(pageTitles.length);
+        List<String> imagePaths = new ArrayList<>(pageTitles.length);
+        for (int i = 0; i < pageTitles.length; i++) {
+            DocPage page = new DocPage(fromProviderValue(pageTitles[i]),
+                    fromProviderValue(pageImages[i]), fromProviderValue(pageText[i]));
+            pages.add(page);
+            if (page.hasImage()) {
+                imagePaths.add(page.getImagePath());
+            }
+        }
+        mDocModel = new DocModel(titleText, pages);
+
         mContext = context;
-        mTitleText = titleText;
+        // Sizes and rotations are looked up once, so the decodes don't open each file to read them
+        mImageDecoder = new PageImageDecoder(context,
+                PageLayoutEngine.MARGIN_RIGHT - PageLayoutEngine.MARGIN_LEFT,
+                PageLayoutEngine.IMAGE_HEIGHT, mBitmapPool,
+                ImageMetadataStore.getAll(context, imagePaths));
 
         mWhitePaint = new Paint();
         mWhitePaint.setColor(Color.parseColor("#FFFFFF"));
         mBlackPaint = new Paint();
         mBlackPaint.setColor(Color.BLACK);
         mBlackPaint.setStyle(Paint.Style.STROKE);
+        mImagePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
 
         mTitleTextPaint = new TextPaint(mBlackPaint);
-        mTitleTextPaint.setTextSize(30);
+        mTitleTextPaint.setTextSize(PageLayoutEngine.TITLE_FONT_SIZE);
         mTitleTextPaint.setTextAlign(TextPaint.Align.LEFT);
         mTitleTextPaint.setStyle(Paint.Style.FILL);
 
         mStandardTextPaint = new TextPaint(mBlackPaint);
         mStandardTextPaint.setStyle(Paint.Style.FILL);
-        mStandardTextPaint.setTextSize(12);
+        mStandardTextPaint.setTextSize(PageLayoutEngine.TEXT_FONT_SIZE);
         mStandardTextPaint.setTextAlign(TextPaint.Align.LEFT);
+
+        // Both paints use the default typeface, so one measurer covers the titles and text
+        mLayoutEngine = new PageLayoutEngine(new PaintTextMeasurer(mStandardTextPaint));
     }
 
 
     /**
      * Executes the functions that create the pages and creates a FileOutputStream
-     * to save the file to the given destination
+     * to save the file to the given destination. Every page is held in memory until the
+     * document is written
      * @param file File path for the PDF
+     * @param monitor - export monitor, started with the number of output pages
+     * @throws IOException thrown when the file can't be written or the export is cancelled
      */
-    public void saveToFile(File file) {
-        createTitlePage();
-        createContentPages();
+    public void saveToFile(File file, ExportMonitor monitor) throws IOException {
+        Trace.beginSection("CreateDocLayout.saveToFile");
+        mDocument = new PdfDocument();
+        FileOutputStream outputStream = null;
+        try {
+            createTitlePage(monitor);
+            createContentPages(monitor);
+            logTextLayoutCacheStats();
+
+            Trace.beginSection("CreateDocLayout.writeDocument");
+            try {
+                long start = System.nanoTime();
+                outputStream = new FileOutputStream(file);
+                mDocument.writeTo(outputStream);
+                monitor.getTimings().addFinishNanos(System.nanoTime() - start);
+            } finally {
+                Trace.endSection();
+            }
+        } finally {
+            Trace.endSection();
+            mDocument.close();
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
 
+    /**
+     * Creates the same pages as saveToFile, but each page is written to the file as soon as
+     * it is finished so memory use stays flat no matter how many pages the doc has. JPEGs are
+     * copied into the PDF as they are, only the other images are decoded
+     * @param file File path for the PDF
+     * @param monitor - export monitor, started with the number of output pages
+     * @throws IOException thrown when the file can't be written or the export is cancelled
+     */
+    public void streamToFile(File file, ExportMonitor monitor) throws IOException {
+        Trace.beginSection("CreateDocLayout.streamToFile");
         try {
-            mDocument.writeTo(new FileOutputStream(file));
-        } catch (IOException e) {
-            e.printStackTrace();
+            streamPages(file, monitor);
+        } finally {
+            Trace.endSection();
         }
+        logTextLayoutCacheStats();
+    }
+
+
+    /**
+     * @return true if streamToFile can draw all of the doc's text, otherwise use saveToFile
+     */
+    public boolean canStream() {
+        return StreamingPdfRenderer.canRender(mDocModel);
+    }
+
+
+    /**
+     * @return most bitmap memory held at once by the last export
+     */
+    public long getPeakBitmapBytes() {
+        return mBitmapPool.getPeakAllocatedBytes();
+    }
+
+
+    private void streamPages(File file, ExportMonitor monitor) throws IOException {
+        StreamingPdfRenderer renderer = new StreamingPdfRenderer(getPageRenderCache(mContext));
+
+        // Cached pages are spliced in with their image, so only the other images are prepared
+        List<DocPage> pages = mDocModel.getPages();
+        boolean[] cachedPages = renderer.findCachedPages(mDocModel);
+        JpegInfo[] jpegInfos = new JpegInfo[pages.size()];
+        String[] decodeImages = new String[pages.size()];
+        for (int i = 0; i < pages.size(); i++) {
+            DocPage page = pages.get(i);
+            if (page.hasImage() && !cachedPages[i]) {
+                jpegInfos[i] = JpegInfo.read(new File(page.getImagePath()));
+                if (jpegInfos[i] == null) {
+                    decodeImages[i] = page.getImagePath();
+                }
+            }
+        }
+
+        ImagePrefetcher prefetcher = createImagePrefetcher(decodeImages);
+        try {
+            renderer.render(mDocModel,
+                    new StreamingImageSource(prefetcher, jpegInfos, decodeImages), file, monitor);
+        } finally {
+            prefetcher.shutdown();
+            mBitmapPool.clear();
+        }
+    }
+
+
+    /**
+     * @param context - context used to find the cache directory
+     * @return cache of rendered pages, shared by every streamed export
+     */
+    private static synchronized PageRenderCache getPageRenderCache(Context context) {
+        if (sPageRenderCache == null) {
+            sPageRenderCache = new PageRenderCache(
+                    new File(context.getApplicationContext().getCacheDir(), PAGE_RENDER_CACHE_DIR),
+                    PAGE_RENDER_CACHE_BYTES);
+        }
+        return sPageRenderCache;
     }
 
 
     /**
      * Creates the Title page with the doc name on it
+     * @param monitor - export monitor
      */
-    private void createTitlePage() {
+    private void createTitlePage(ExportMonitor monitor) {
+        ExportTimings timings = monitor.getTimings();
+
+        long start = System.nanoTime();
+        PageLayout layout = mLayoutEngine.layoutTitlePage(mDocModel.getTitle());
+        long laidOut = System.nanoTime();
+
         // Start page and get page canvas
-        PdfDocument.PageInfo titlePageInfo =
-                new PdfDocument.PageInfo.Builder(PAGE_WIDTH, PAGE_HEIGHT, 1).create();
+        PdfDocument.PageInfo titlePageInfo = new PdfDocument.PageInfo.Builder(
+                PageLayoutEngine.PAGE_WIDTH, PageLayoutEngine.PAGE_HEIGHT, 1).create();
         PdfDocument.Page titlePage = mDocument.startPage(titlePageInfo);
         Canvas canvas = titlePage.getCanvas();
         canvas.drawPaint(mWhitePaint);
-
-        StaticLayout title = createMultilineTextStaticLayout(mTitleText, mTitleTextPaint,
-                MARGIN_LEFT, MARGIN_RIGHT, Layout.Alignment.ALIGN_CENTER);
-        drawMultilineText(title, MARGIN_LEFT, MARGIN_TOP, canvas);
+        drawTextLayout(layout.getTitle(), layout.getTitleLeft(), layout.getTitleTop(),
+                mTitleTextPaint, canvas);
+        long drawn = System.nanoTime();
 
         mDocument.finishPage(titlePage);
+
+        timings.add(0, ExportTimings.PHASE_LAYOUT, laidOut - start);
+        timings.add(0, ExportTimings.PHASE_DRAW, drawn - laidOut);
+        timings.add(0, ExportTimings.PHASE_WRITE, System.nanoTime() - drawn);
+        monitor.pageExported(0, 0);
     }
 
 
     /**
-     * Loops through the page data and creates the respective pages
+     * Creates the content pages, with the page images decoded on the prefetch workers
+     * @param monitor - export monitor, checked for cancellation before each page
+     * @throws IOException thrown when the export is cancelled
      */
-    private void createContentPages() {
-        int currentPageYPos = 0; // Stores where the bottom of each page info finishes
-        for (int i = 0; i < mPageTitles.length; i++) {
-            // Start page and get page canvas
-            PdfDocument.PageInfo imageTextPageInfo =
-                    new PdfDocument.PageInfo.Builder(PAGE_WIDTH, PAGE_HEIGHT, i + 2)
-                            .create();
-            PdfDocument.Page contentPage = mDocument.startPage(imageTextPageInfo);
-            Canvas canvas = contentPage.getCanvas();
-
-            // Draws the title text and moves the currentPageYPos to the bottom of it
-            StaticLayout pageTitle = createMultilineTextStaticLayout(mPageTitles[i], mTitleTextPaint,
-                    MARGIN_LEFT, MARGIN_RIGHT, Layout.Alignment.ALIGN_CENTER);
-            drawMultilineText(pageTitle, MARGIN_LEFT, MARGIN_TOP, canvas);
-            currentPageYPos = MARGIN_TOP + pageTitle.getHeight() + IMAGE_PADDING;
-
-            // Checks if there is an image to draw on the page and draws it if exists
-            if (!mPageImages[i].equals(ProviderUtils.PROVIDER_NULL)) {
-                RectF imageBoundsRect = new RectF(MARGIN_LEFT, currentPageYPos, MARGIN_RIGHT,
-                        currentPageYPos + IMAGE_HEIGHT);
-                Bitmap pageImage = retrieveAndScaleImageFromFile(mPageImages[i]);
-                RectF imageRect = createBitmapContainer(imageBoundsRect, pageImage);
-                canvas.drawBitmap(pageImage, null, imageRect, null);
-                currentPageYPos += IMAGE_HEIGHT + IMAGE_PADDING;
-            }
+    private void createContentPages(ExportMonitor monitor) throws IOException {
+        List<DocPage> pages = mDocModel.getPages();
+        String[] imagePaths = new String[pages.size()];
+        for (int i = 0; i < pages.size(); i++) {
+            imagePaths[i] = pages.get(i).getImagePath();
+        }
 
-            // Checks if there is text to draw on the page and draws it if exists
-            if (!mPageText[i].equals(ProviderUtils.PROVIDER_NULL)) {
-                StaticLayout pageText = createMultilineTextStaticLayout(mPageText[i], mStandardTextPaint,
-                        MARGIN_LEFT, MARGIN_RIGHT, Layout.Alignment.ALIGN_NORMAL);
-                drawMultilineText(pageText, MARGIN_LEFT, currentPageYPos, canvas);
+        ImagePrefetcher prefetcher = createImagePrefetcher(imagePaths);
+        try {
+            createContentPages(prefetcher, monitor);
+        } finally {
+            prefetcher.shutdown();
+            mBitmapPool.clear();
+        }
+    }
+
+
+    /**
+     * Loops through the page data and draws each page layout, the page images are decoded
+     * ahead by the prefetcher while the current page is drawn. Pages are only written to the
+     * file once they are all drawn, so no bytes are reported until then
+     * @param prefetcher - image prefetcher, images are taken in page order
+     * @param monitor - export monitor, checked for cancellation before each page
+     * @throws IOException thrown when the export is cancelled
+     */
+    private void createContentPages(ImagePrefetcher prefetcher, ExportMonitor monitor)
+            throws IOException {
+        ExportTimings timings = monitor.getTimings();
+        List<DocPage> pages = mDocModel.getPages();
+        for (int i = 0; i < pages.size(); i++) {
+            monitor.throwIfCancelled();
+            Trace.beginSection("CreateDocLayout.createContentPage");
+            try {
+                createContentPage(prefetcher, i, timings);
+            } finally {
+                Trace.endSection();
             }
+            monitor.pageExported(i + 1, 0);
+        }
+    }
+
+
+    /**
+     * Draws a single content page into the document
+     * @param prefetcher - image prefetcher
+     * @param pageIndex - page index
+     * @param timings - phase timings
+     */
+    private void createContentPage(ImagePrefetcher prefetcher, int pageIndex, ExportTimings timings) {
+        List<DocPage> pages = mDocModel.getPages();
+        int outputPage = pageIndex + 1;
+
+        // Missing or unreadable images leave the space blank
+        long start = System.nanoTime();
+        PageImage pageImage = prefetcher.take(pageIndex);
+        long decoded = System.nanoTime();
+
+        PageLayout layout = pageImage != null
+                ? mLayoutEngine.layoutContentPage(pages.get(pageIndex), pageImage.getDisplayWidth(),
+                        pageImage.getDisplayHeight())
+                : mLayoutEngine.layoutContentPage(pages.get(pageIndex), 0, 0);
+        long laidOut = System.nanoTime();
 
-            mDocument.finishPage(contentPage);
+        // Start page and get page canvas
+        PdfDocument.PageInfo imageTextPageInfo = new PdfDocument.PageInfo.Builder(
+                PageLayoutEngine.PAGE_WIDTH, PageLayoutEngine.PAGE_HEIGHT, outputPage + 1).create();
+        PdfDocument.Page contentPage = mDocument.startPage(imageTextPageInfo);
+        Canvas canvas = contentPage.getCanvas();
+
+        drawTextLayout(layout.getTitle(), layout.getTitleLeft(), layout.getTitleTop(),
+                mTitleTextPaint, canvas);
+        if (pageImage != null) {
+            drawPageImage(pageImage, toRectF(layout.getImageRect()), canvas);
+        }
+        if (layout.getText() != null) {
+            drawTextLayout(layout.getText(), layout.getTextLeft(), layout.getTextTop(),
+                    mStandardTextPaint, canvas);
         }
+        long drawn = System.nanoTime();
+
+        mDocument.finishPage(contentPage);
+
+        // The page has been written into the document, its bitmap can be reused
+        if (pageImage != null) {
+            mBitmapPool.release(pageImage.getBitmap());
+        }
+
+        timings.add(outputPage, ExportTimings.PHASE_DECODE, decoded - start);
+        timings.add(outputPage, ExportTimings.PHASE_LAYOUT, laidOut - decoded);
+        timings.add(outputPage, ExportTimings.PHASE_DRAW, drawn - laidOut);
+        timings.add(outputPage, ExportTimings.PHASE_WRITE, System.nanoTime() - drawn);
     }
 
 
     /**
-     * Uses a RectF as a container for the inputBitmap to create a rectangle that fits into
-     * the container rectangle and doesn't stretch or distort the image
-     * @param container - container for bitmap bounds
-     * @param inputBitmap - bitmap to be contained
-     * @return RectF with an aspect ratio that matches the inputBitmap without being larger than
-     * the rectangle container
+     * Creates the prefetcher used to decode the page images ahead of the page being drawn
+     * @param imagePaths - image path for each page, null for pages without an image to decode
+     * @return ImagePrefetcher for the page images
      */
-    private RectF createBitmapContainer(RectF container, Bitmap inputBitmap) {
-        // Retrieve the bitmap and container dimensions
-        float bWidth = inputBitmap.getWidth();
-        float bHeight = inputBitmap.getHeight();
-        float containerRectWidth = container.width();
-        float containerRectHeight = container.height();
-
-        // Ratio of the container against the bitmap width
-        float widthRatio = containerRectWidth / bWidth;
-
-        // Get the final image container size
-        float imageContainerX = bWidth * widthRatio;
-        float imageContainerY = bHeight * (widthRatio);
-
-        // In case the image is in a portrait orientation that is larger the container
-        if (imageContainerY > containerRectHeight) {
-            float heightRatio = containerRectHeight / imageContainerY;
-
-            imageContainerX = imageContainerX * heightRatio;
-            imageContainerY = imageContainerY * heightRatio;
+    private ImagePrefetcher createImagePrefetcher(String[] imagePaths) {
+        return new ImagePrefetcher(imagePaths, mImageDecoder, estimateImageDecodeBytes(imagePaths));
+    }
+
+
+    /**
+     * Reads the bounds of the first page image to estimate the memory needed to decode
+     * each image
+     * @param imagePaths - image path for each page, null for pages without an image to decode
+     * @return estimated bytes, 0 if there are no readable images
+     */
+    private long estimateImageDecodeBytes(String[] imagePaths) {
+        for (String imagePath : imagePaths) {
+            if (imagePath != null) {
+                long decodeBytes = mImageDecoder.estimateDecodeBytes(imagePath);
+                if (decodeBytes > 0) {
+                    return decodeBytes;
+                }
+            }
         }
 
-        // Creates the parameters used by the RectF constructor
-        float left = container.centerX() - (imageContainerX / 2);
-        float right = left + imageContainerX;
-        float top = container.centerY() - (imageContainerY / 2);
-        float bottom = top + imageContainerY;
+        return 0;
+    }
+
+
+    /**
+     * Line breaking is cached across exports, the hit rate shows how much of it was skipped
+     */
+    private static void logTextLayoutCacheStats() {
+        Log.d(LOG_TAG, "Text layout cache: " + TextLayoutCache.getShared().getStats());
+    }
+
+
+    /**
+     * @param value - value read from the provider
+     * @return the value, or null if the provider had no value
+     */
+    private static String fromProviderValue(String value) {
+        return value == null || value.equals(ProviderUtils.PROVIDER_NULL) ? null : value;
+    }
+
 
-        return new RectF(left, top, right, bottom);
+    private static RectF toRectF(Box box) {
+        return new RectF(box.left, box.top, box.right, box.bottom);
     }
 
 
@@ -230,76 +449,104 @@ public class CreateDocLayout {
 
 
     /**
-     * Uses image file to store the image as a Bitmap
-     * @param file image file
-     * @return Bitmap of the image to be used
+     * Draws the image into the rectangle, rotating the canvas by the images EXIF rotation
+     * rather than creating a rotated copy of the bitmap
+     * @param pageImage - decoded page image
+     * @param imageRect - placement of the rotated image
+     * @param canvas - page canvas
      */
-    private Bitmap retrieveAndScaleImageFromFile(String file) {
-        try {
-            int rotation = getCameraPhotoOrientation(mContext, file); // Gets Exif orientation
-
-            // Bitmap options used for decoding file
-            BitmapFactory.Options bmOptions = new BitmapFactory.Options();
-            bmOptions.inSampleSize = 1;
-            bmOptions.inJustDecodeBounds = false;
-            bmOptions.inDither = false;
-            bmOptions.inScaled = false;
-            bmOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;
-
-            Bitmap outputBitmap = BitmapFactory.decodeFile(file, bmOptions);
-
-            // Scales bitmap to ensure that there is enough memory to avoid the app crashing
-            int width = outputBitmap.getWidth();
-            int height = outputBitmap.getHeight();
-            float scale = 1f;
-            scale = 400f / width;
-
-            Matrix matrix = new Matrix();
-            matrix.setScale(scale, scale);
-            matrix.postRotate(rotation);
-            return Bitmap.createBitmap(outputBitmap, 0, 0, outputBitmap.getWidth(),
-                    outputBitmap.getHeight(), matrix, false);
-        } catch (NullPointerException e) {
-            // Returns empty white Bitmap if no file is found
-            return Bitmap.createBitmap(100, 100, Bitmap.Config.ALPHA_8);
+    private void drawPageImage(PageImage pageImage, RectF imageRect, Canvas canvas) {
+        RectF bitmapRect = imageRect;
+        if (PageImage.isSideways(pageImage.getRotation())) {
+            // Unrotated bitmap has the width and height of the placement swapped
+            float halfWidth = imageRect.height() / 2;
+            float halfHeight = imageRect.width() / 2;
+            bitmapRect = new RectF(imageRect.centerX() - halfWidth, imageRect.centerY() - halfHeight,
+                    imageRect.centerX() + halfWidth, imageRect.centerY() + halfHeight);
         }
+
+        canvas.save();
+        canvas.rotate(pageImage.getRotation(), imageRect.centerX(), imageRect.centerY());
+        canvas.drawBitmap(pageImage.getBitmap(), null, bitmapRect, mImagePaint);
+        canvas.restore();
     }
 
 
     /**
-     * Static layouts are the best way to create a multiline text on the page canvas. This
-     * function returns a static layout with the text
-     * @param text - text
-     * @param textPaint - text colour/size/font etc
-     * @param left - left bound for static layout
-     * @param right - right bound for static layout
-     * @param alignment - text alignment
-     * @return - StaticLayout with the multiline text
+     * Draws each line of a text layout on the canvas
+     * @param layout - text layout, measured with the paint
+     * @param left - left start point for the text layout
+     * @param top - top start point for the text layout
+     * @param paint - text colour/size/font etc
+     * @param canvas - page canvas
      */
-    private StaticLayout createMultilineTextStaticLayout(String text,
-                                                         TextPaint textPaint,
-                                                         int left, int right, Layout.Alignment alignment) {
-        int width = right - left;
-        float spacingMultiplier = 1;
-        float spacingAddition = 0;
-        boolean includePadding = false;
-
-        return new StaticLayout(text, textPaint, width, alignment, spacingMultiplier,
-                spacingAddition, includePadding);
+    private void drawTextLayout(TextLayout layout, float left, float top, TextPaint paint,
+                                Canvas canvas) {
+        String text = layout.getText();
+        for (int i = 0; i < layout.getLineCount(); i++) {
+            canvas.drawText(text, layout.getLineStart(i), layout.getLineEnd(i),
+                    left + layout.getLineLeft(i), top + layout.getLineBaseline(i), paint);
+        }
     }
 
 
     /**
-     * Uses canvas to draw a static layout for text
-     * @param text - text
-     * @param left - left start point for static layout
-     * @param top - top start point for static layout
-     * @param canvas - page canvas
+     * Supplies the streamed page images. JPEGs are copied from their file with the EXIF
+     * rotation applied by the placement matrix, other images are taken from the prefetcher
+     * and re-encoded. Pages expected in the page cache weren't prepared, if their entry has
+     * gone they are read when asked for
      */
-    private void drawMultilineText(StaticLayout text, int left, int top, Canvas canvas) {
-        canvas.save();
-        canvas.translate(left, top);
-        text.draw(canvas);
-        canvas.restore();
+    private class StreamingImageSource implements PageImageSource {
+        private ImagePrefetcher mPrefetcher;
+        private JpegInfo[] mJpegInfos;
+        private String[] mDecodeImages;
+
+        StreamingImageSource(ImagePrefetcher prefetcher, JpegInfo[] jpegInfos,
+                             String[] decodeImages) {
+            mPrefetcher = prefetcher;
+            mJpegInfos = jpegInfos;
+            mDecodeImages = decodeImages;
+        }
+
+        @Override
+        public EmbeddedImage getImage(int pageIndex, String imagePath) {
+            Trace.beginSection("CreateDocLayout.getStreamingImage");
+            try {
+                return prepareImage(pageIndex, imagePath);
+            } finally {
+                Trace.endSection();
+            }
+        }
+
+        private EmbeddedImage prepareImage(int pageIndex, String imagePath) {
+            JpegInfo jpegInfo = mJpegInfos[pageIndex];
+            boolean prepared = jpegInfo != null || mDecodeImages[pageIndex] != null;
+            if (!prepared) {
+                jpegInfo = JpegInfo.read(new File(imagePath));
+            }
+
+            if (jpegInfo != null) {
+                ImageMetadata metadata = mImageDecoder.getMetadata(imagePath);
+                int rotation = metadata != null ? metadata.getRotation()
+                        : Math.max(0, getCameraPhotoOrientation(mContext, imagePath));
+                return EmbeddedImage.fromJpegFile(new File(imagePath), jpegInfo, rotation);
+            }
+
+            PageImage pageImage = prepared
+                    ? mPrefetcher.take(pageIndex)
+                    : mImageDecoder.decode(imagePath);
+            if (pageImage == null) {
+                return null;
+            }
+
+            Bitmap bitmap = pageImage.getBitmap();
+            ByteArrayOutputStream jpegData = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.JPEG, STREAMING_JPEG_QUALITY, jpegData);
+            EmbeddedImage image = EmbeddedImage.fromJpegData(jpegData.toByteArray(),
+                    bitmap.getWidth(), bitmap.getHeight(), pageImage.getRotation());
+            mBitmapPool.release(bitmap);
+
+            return image;
+        }
     }
 }
@@ -0,0 +1,250 @@
+package com.eldersoftware.pdfassist.pdf;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Environment;
+import android.os.Trace;
+import android.util.Log;
+
+import com.eldersoftware.pdfassist.data.DocInfoContract;
+import com.eldersoftware.pdfassist.pdfcore.ExportCancelledException;
+import com.eldersoftware.pdfassist.pdfcore.ExportMonitor;
+import com.eldersoftware.pdfassist.pdfcore.PdfFileCheck;
+import com.eldersoftware.pdfassist.utils.ProviderUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+
+/**
+ * Exports a doc to a PDF on the calling thread. Shared by CreateDocAsync for exports started
+ * from the doc screen and the ExportJobService for queued exports.
+ */
+public class DocExporter {
+    private static final String LOG_TAG = DocExporter.class.getSimpleName();
+
+    // Export modes, in memory builds the whole PdfDocument before writing it, streaming writes
+    // each page to the file as soon as it is finished. Auto picks one from the page count
+    public static final int EXPORT_MODE_IN_MEMORY = 0;
+    public static final int EXPORT_MODE_STREAMING = 1;
+    public static final int EXPORT_MODE_AUTO = 2;
+
+    // Docs with more pages than this are streamed to keep the memory use flat
+    private static final int STREAMING_PAGE_THRESHOLD = 50;
+
+    // Doc version and the record of its last export, to reuse an export of an unchanged doc
+    private static final String[] EXPORT_RECORD_PROJECTION = {
+            DocInfoContract.DocInfoListEntry.COLUMN_DOC_VERSION,
+            DocInfoContract.DocInfoListEntry.COLUMN_EXPORT_PATH,
+            DocInfoContract.DocInfoListEntry.COLUMN_EXPORT_VERSION,
+            DocInfoContract.DocInfoListEntry.COLUMN_EXPORT_SIZE
+    };
+    private static final int DOC_VERSION_INDEX = 0;
+    private static final int EXPORT_PATH_INDEX = 1;
+    private static final int EXPORT_VERSION_INDEX = 2;
+    private static final int EXPORT_SIZE_INDEX = 3;
+
+    private Context mContext;
+
+
+    /**
+     * Constructor
+     * @param context - context, the application context is kept so exports can outlive
+     *                activities
+     */
+    public DocExporter(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+
+    /**
+     * Picks the export mode for a doc, small docs keep the in memory PdfDocument output. A doc
+     * whose text the streamed PDF's font can't show is still exported in memory by export
+     * @param pageCount - number of pages in the doc
+     * @return EXPORT_MODE_IN_MEMORY or EXPORT_MODE_STREAMING
+     */
+    public static int chooseExportMode(int pageCount) {
+        return pageCount > STREAMING_PAGE_THRESHOLD ? EXPORT_MODE_STREAMING : EXPORT_MODE_IN_MEMORY;
+    }
+
+
+    /**
+     * Exports the doc, or returns its last export if the doc hasn't changed since
+     * @param docNameUri - doc name uri
+     * @param exportMode - EXPORT_MODE_IN_MEMORY, EXPORT_MODE_STREAMING or EXPORT_MODE_AUTO
+     * @return exported PDF file
+     * @throws IOException thrown when the file can't be created or written
+     */
+    public File export(Uri docNameUri, int exportMode) throws IOException {
+        return export(docNameUri, exportMode, new ExportMonitor());
+    }
+
+
+    /**
+     * Exports the doc, or returns its last export if the doc hasn't changed since. The monitor
+     * is started once the pages have been read, and the partly written file is deleted if the
+     * export fails or is cancelled
+     * @param docNameUri - doc name uri
+     * @param exportMode - EXPORT_MODE_IN_MEMORY, EXPORT_MODE_STREAMING or EXPORT_MODE_AUTO
+     * @param monitor - reports progress and phase timings, and can cancel the export
+     * @return exported PDF file
+     * @throws IOException thrown when the file can't be created or written
+     * @throws com.eldersoftware.pdfassist.pdfcore.ExportCancelledException thrown when the
+     * monitor is cancelled
+     */
+    public File export(Uri docNameUri, int exportMode, ExportMonitor monitor) throws IOException {
+        // An unchanged doc returns its last export, as long as the file is still complete.
+        // The version is read before the pages, so an edit made during the export makes the
+        // recorded export out of date rather than hiding the edit
+        long docVersion = -1;
+        File pdfFile = null;
+        Cursor docCursor = mContext.getContentResolver()
+                .query(docNameUri, EXPORT_RECORD_PROJECTION, null, null, null);
+        if (docCursor != null) {
+            if (docCursor.moveToFirst()) {
+                docVersion = docCursor.getLong(DOC_VERSION_INDEX);
+                pdfFile = findReusableExport(docCursor, docVersion);
+            }
+            docCursor.close();
+        }
+        if (pdfFile != null) {
+            Log.d(LOG_TAG, "Reusing export of unchanged doc: " + pdfFile);
+            ExportMetrics.increment(ExportMetrics.EXPORTS_REUSED);
+            return pdfFile;
+        }
+
+        // Cursor used to gather all the page data from the content provider
+        Trace.beginSection("DocExporter.queryPages");
+        long queryStart = System.nanoTime();
+        ArrayList<String[]> pageInfo = new ArrayList<>();
+        try {
+            Cursor pageInfoCursor = mContext.getContentResolver()
+                    .query(DocInfoContract.PageEntry.buildDocPagesUri(docNameUri),
+                            ProviderUtils.PAGE_PROJECTION, null, null ,null);
+
+            // Page info then collected into arrays to be used by the CreateDocLayout class
+            if (pageInfoCursor != null) {
+                pageInfo = ProviderUtils.collectPageData(pageInfoCursor);
+                pageInfoCursor.close();
+            }
+        } finally {
+            Trace.endSection();
+        }
+        long queryNanos = System.nanoTime() - queryStart;
+
+        int pageCount = pageInfo.isEmpty() ? 0 : pageInfo.get(ProviderUtils.PAGE_NAMES_INDEX).length;
+        if (exportMode == EXPORT_MODE_AUTO) {
+            exportMode = chooseExportMode(pageCount);
+        }
+
+        // Output pages include the title page
+        monitor.start(pageCount + 1);
+        monitor.getTimings().setQueryNanos(queryNanos);
+        monitor.throwIfCancelled();
+
+        CreateDocLayout docLayout = new CreateDocLayout(mContext, pageInfo,
+                docNameUri.getLastPathSegment());
+        // A bigger doc mustn't change what the PDF says, text outside WinAnsi needs PdfDocument
+        if (exportMode == EXPORT_MODE_STREAMING && !docLayout.canStream()) {
+            Log.d(LOG_TAG, "Doc has text the streamed font can't show, exporting in memory");
+            exportMode = EXPORT_MODE_IN_MEMORY;
+        }
+        pdfFile = createPdfFile(docNameUri.getLastPathSegment());
+        boolean exported = false;
+        try {
+            if (exportMode == EXPORT_MODE_STREAMING) {
+                docLayout.streamToFile(pdfFile, monitor);
+            } else {
+                docLayout.saveToFile(pdfFile, monitor);
+            }
+            exported = true;
+        } catch (ExportCancelledException e) {
+            ExportMetrics.increment(ExportMetrics.EXPORTS_CANCELLED);
+            ExportMetrics.dumpIfDebug(mContext);
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            ExportMetrics.increment(ExportMetrics.EXPORTS_FAILED);
+            ExportMetrics.dumpIfDebug(mContext);
+            throw e;
+        } finally {
+            if (!exported && !pdfFile.delete()) {
+                Log.w(LOG_TAG, "Couldn't delete partly written export: " + pdfFile);
+            }
+        }
+        Log.d(LOG_TAG, "Export timings: " + monitor.getTimings());
+        ExportMetrics.recordExport(monitor.getTimings(), pdfFile, docLayout.getPeakBitmapBytes());
+        ExportMetrics.dumpIfDebug(mContext);
+
+        if (docVersion != -1) {
+            recordExport(docNameUri, docVersion, pdfFile);
+        }
+        return pdfFile;
+    }
+
+
+    /**
+     * @param docCursor - doc row with the EXPORT_RECORD_PROJECTION
+     * @param docVersion - current doc version
+     * @return the last exported file if it was exported from this version and is intact,
+     * otherwise null
+     */
+    private static File findReusableExport(Cursor docCursor, long docVersion) {
+        if (docCursor.isNull(EXPORT_PATH_INDEX) || docCursor.isNull(EXPORT_VERSION_INDEX) ||
+                docCursor.getLong(EXPORT_VERSION_INDEX) != docVersion) {
+            return null;
+        }
+
+        File exportFile = new File(docCursor.getString(EXPORT_PATH_INDEX));
+        return PdfFileCheck.isIntact(exportFile, docCursor.getLong(EXPORT_SIZE_INDEX))
+                ? exportFile : null;
+    }
+
+
+    /**
+     * Records the exported file against the doc version it was exported from. Only the export
+     * columns are written, so the doc version isn't bumped
+     * @param docNameUri - doc name uri
+     * @param docVersion - doc version read before the export started
+     * @param pdfFile - exported file
+     */
+    private void recordExport(Uri docNameUri, long docVersion, File pdfFile) {
+        ContentValues exportCV = new ContentValues();
+        exportCV.put(DocInfoContract.DocInfoListEntry.COLUMN_EXPORT_PATH, pdfFile.getAbsolutePath());
+        exportCV.put(DocInfoContract.DocInfoListEntry.COLUMN_EXPORT_VERSION, docVersion);
+        exportCV.put(DocInfoContract.DocInfoListEntry.COLUMN_EXPORT_SIZE, pdfFile.length());
+        mContext.getContentResolver().update(docNameUri, exportCV, null, null);
+    }
+
+
+    /**
+     * Uses the doc name to create a directory and file for saving the PDF into. Synchronized
+     * so concurrent exports of the same doc are given different file names
+     * @param docName - doc name
+     * @return File with the correct directory and file name
+     * @throws IOException thrown when errors occur creating/saving the file
+     */
+    private static synchronized File createPdfFile(String docName) throws IOException {
+        // Creates the directory and ensures it exists
+        String externalDirectory = Environment.getExternalStorageDirectory().toString() +
+                "/Android Pdf Tools/" + docName + "/PDFs";
+        File directory = new File(externalDirectory);
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Couldn't create directory: " + directory);
+        }
+
+        // Creates file with directory path, adds a suffix, (#), if the file already exists
+        String docNameWithExt = docName + ".pdf";
+        File pdfFile = new File(directory, docNameWithExt);
+        int i = 1;
+        while (!pdfFile.createNewFile()) {
+            docNameWithExt = docName + " (" + i + ").pdf";
+            pdfFile = new File(directory, docNameWithExt);
+            i++;
+        }
+
+        return pdfFile;
+    }
+}
@@ -0,0 +1,153 @@
+package com.eldersoftware.pdfassist.pdf;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import com.eldersoftware.pdfassist.BuildConfig;
+import com.eldersoftware.pdfassist.pdfcore.ExportTimings;
+import com.eldersoftware.pdfassist.pdfcore.MetricsRegistry;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+
+/**
+ * Metrics of every export made since the app started, kept in a shared MetricsRegistry. Debug
+ * builds write the registry to a JSON file after each export, along with the device it was
+ * measured on, so exports on different devices and builds can be compared.
+ */
+public class ExportMetrics {
+    private static final String LOG_TAG = ExportMetrics.class.getSimpleName();
+
+    public static final String EXPORTS_COMPLETED = "exports.completed";
+    public static final String EXPORTS_REUSED = "exports.reused";
+    public static final String EXPORTS_CANCELLED = "exports.cancelled";
+    public static final String EXPORTS_FAILED = "exports.failed";
+    public static final String PAGES_RENDERED = "pages.rendered";
+
+    public static final String PAGE_RENDER_MILLIS = "page.renderMillis";
+    public static final String IMAGE_DECODE_MILLIS = "image.decodeMillis";
+    public static final String IMAGE_DECODE_BYTES = "image.decodeBytes";
+    public static final String EXPORT_PEAK_BITMAP_BYTES = "export.peakBitmapBytes";
+    public static final String EXPORT_OUTPUT_BYTES = "export.outputBytes";
+
+    private static final long[] MILLIS_BUCKETS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 5000};
+    private static final long[] BYTES_BUCKETS = {
+            64L << 10, 256L << 10, 1L << 20, 4L << 20, 16L << 20, 64L << 20, 256L << 20};
+
+    // Written to the apps external files directory, so it can be pulled without root
+    private static final String DUMP_DIR = "metrics";
+    private static final String DUMP_FILE = "export_metrics.json";
+
+    private static final MetricsRegistry sRegistry = new MetricsRegistry();
+
+
+    private ExportMetrics() {
+    }
+
+
+    public static MetricsRegistry getRegistry() {
+        return sRegistry;
+    }
+
+
+    public static void increment(String counterName) {
+        sRegistry.counter(counterName).increment();
+    }
+
+
+    /**
+     * Records a single image decode, called from the prefetch workers
+     * @param nanos - time taken to decode
+     * @param bytes - bytes of the decoded bitmap
+     */
+    public static void recordImageDecode(long nanos, long bytes) {
+        sRegistry.histogram(IMAGE_DECODE_MILLIS, MILLIS_BUCKETS).record(nanos / 1000000);
+        sRegistry.histogram(IMAGE_DECODE_BYTES, BYTES_BUCKETS).record(bytes);
+    }
+
+
+    /**
+     * Records a finished export
+     * @param timings - phase timings of each page
+     * @param pdfFile - exported file
+     * @param peakBitmapBytes - most bitmap memory held at once by the export
+     */
+    public static void recordExport(ExportTimings timings, File pdfFile, long peakBitmapBytes) {
+        MetricsRegistry.Histogram pageRender = sRegistry.histogram(PAGE_RENDER_MILLIS,
+                MILLIS_BUCKETS);
+        for (int page = 0; page < timings.getPageCount(); page++) {
+            // The shared query time isn't part of rendering a page
+            long renderNanos = 0;
+            for (int phase = ExportTimings.PHASE_DECODE; phase < ExportTimings.PHASE_COUNT;
+                 phase++) {
+                renderNanos += timings.getNanos(page, phase);
+            }
+            pageRender.record(renderNanos / 1000000);
+        }
+
+        sRegistry.counter(PAGES_RENDERED).add(timings.getPageCount());
+        sRegistry.counter(EXPORTS_COMPLETED).increment();
+        sRegistry.histogram(EXPORT_PEAK_BITMAP_BYTES, BYTES_BUCKETS).record(peakBitmapBytes);
+        sRegistry.histogram(EXPORT_OUTPUT_BYTES, BYTES_BUCKETS).record(pdfFile.length());
+    }
+
+
+    /**
+     * Writes the registry to the metrics file in debug builds, replacing the last dump
+     * @param context - context
+     */
+    public static void dumpIfDebug(Context context) {
+        if (!BuildConfig.DEBUG) {
+            return;
+        }
+
+        File directory = context.getExternalFilesDir(DUMP_DIR);
+        if (directory == null) {
+            directory = new File(context.getFilesDir(), DUMP_DIR);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+
+        File tempFile = new File(directory, DUMP_FILE + ".tmp");
+        Writer writer = null;
+        try {
+            JSONObject device = new JSONObject();
+            device.put("manufacturer", Build.MANUFACTURER);
+            device.put("model", Build.MODEL);
+            device.put("sdk", Build.VERSION.SDK_INT);
+            device.put("appVersion", BuildConfig.VERSION_NAME);
+
+            JSONObject dump = new JSONObject(sRegistry.toJson());
+            dump.put("device", device);
+            dump.put("time", System.currentTimeMillis());
+
+            writer = new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8");
+            writer.write(dump.toString(2));
+            writer.close();
+            writer = null;
+
+            if (!tempFile.renameTo(new File(directory, DUMP_FILE))) {
+                tempFile.delete();
+            }
+        } catch (IOException | JSONException e) {
+            Log.w(LOG_TAG, "Couldn't write export metrics", e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
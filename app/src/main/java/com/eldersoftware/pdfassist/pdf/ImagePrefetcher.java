@@ -0,0 +1,132 @@
+package com.eldersoftware.pdfassist.pdf;
+
+import android.util.Log;
+
+import com.eldersoftware.pdfassist.utils.ProviderUtils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Decodes the page images ahead of the page being drawn. A small pool of workers decodes up to
+ * the prefetch depth of images past the current page, while the images are still handed out
+ * in page order. The depth is capped by the free heap so the images waiting to be drawn can't
+ * run the app out of memory.
+ */
+class ImagePrefetcher {
+    private static final String LOG_TAG = ImagePrefetcher.class.getSimpleName();
+
+    static final int MAX_PREFETCH_DEPTH = 8;
+    private static final int MAX_WORKERS = 4;
+
+    // Only half of the free heap is given to prefetched images, the rest is left for drawing
+    private static final int HEAP_SHARE_DIVISOR = 2;
+
+    // Decodes a single image, may return null if the image can't be read
+    interface ImageDecoder {
+        PageImage decode(String imagePath);
+    }
+
+    private String[] mImagePaths;
+    private ImageDecoder mDecoder;
+    private Future<PageImage>[] mPending;
+    private ExecutorService mExecutor;
+    private int mDepth;
+    private int mNextToSubmit;
+
+
+    /**
+     * Constructor, starts decoding the first images straight away
+     * @param imagePaths - image path for each page, PROVIDER_NULL for pages without images
+     * @param decoder - decodes a single image
+     * @param bytesPerImage - estimated peak memory used to decode one image
+     */
+    @SuppressWarnings("unchecked")
+    ImagePrefetcher(String[] imagePaths, ImageDecoder decoder, long bytesPerImage) {
+        mImagePaths = imagePaths;
+        mDecoder = decoder;
+        mPending = new Future[imagePaths.length];
+        mDepth = calculatePrefetchDepth(bytesPerImage);
+
+        int workers = Math.min(mDepth,
+                Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors()));
+        mExecutor = Executors.newFixedThreadPool(Math.max(1, workers));
+
+        Log.d(LOG_TAG, "Prefetching " + mDepth + " images with " + workers + " workers");
+        fill(0);
+    }
+
+
+    /**
+     * Waits for the image of the given page, then queues the next image past the window.
+     * Pages must be taken in order
+     * @param pageIndex - page index
+     * @return decoded image, or null if the page has no image or it couldn't be decoded
+     */
+    PageImage take(int pageIndex) {
+        fill(pageIndex);
+        Future<PageImage> pending = mPending[pageIndex];
+        mPending[pageIndex] = null;
+        fill(pageIndex + 1);
+
+        if (pending == null) {
+            return null;
+        }
+
+        try {
+            return pending.get();
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Failed to decode page image " + pageIndex, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+
+    /**
+     * Stops the workers, any images that haven't been taken are dropped
+     */
+    void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+
+    /**
+     * Submits the images from the next unsubmitted page up to the end of the window
+     * @param windowStart - first page in the window
+     */
+    private void fill(int windowStart) {
+        int windowEnd = Math.min(mImagePaths.length, windowStart + mDepth);
+        while (mNextToSubmit < windowEnd) {
+            final String imagePath = mImagePaths[mNextToSubmit];
+            if (imagePath != null && !imagePath.equals(ProviderUtils.PROVIDER_NULL)) {
+                mPending[mNextToSubmit] = mExecutor.submit(new Callable<PageImage>() {
+                    @Override
+                    public PageImage call() {
+                        return mDecoder.decode(imagePath);
+                    }
+                });
+            }
+            mNextToSubmit++;
+        }
+    }
+
+
+    /**
+     * Works out how many images can be decoded ahead using the heap that is still free
+     * @param bytesPerImage - estimated peak memory used to decode one image
+     * @return prefetch depth, at least 1
+     */
+    static int calculatePrefetchDepth(long bytesPerImage) {
+        Runtime runtime = Runtime.getRuntime();
+        long freeHeap = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        long depth = (freeHeap / HEAP_SHARE_DIVISOR) / Math.max(1, bytesPerImage);
+
+        return (int) Math.max(1, Math.min(MAX_PREFETCH_DEPTH, depth));
+    }
+}
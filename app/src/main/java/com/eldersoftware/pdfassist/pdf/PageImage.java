@@ -0,0 +1,59 @@
+package com.eldersoftware.pdfassist.pdf;
+
+import android.graphics.Bitmap;
+
+
+/**
+ * A decoded page image and the EXIF rotation that is applied when it is drawn, so rotating the
+ * image doesn't need a second bitmap
+ */
+class PageImage {
+    private Bitmap mBitmap;
+    private int mRotation;
+
+
+    /**
+     * Constructor
+     * @param bitmap - decoded, unrotated image
+     * @param rotation - clockwise rotation in degrees, 0, 90, 180 or 270
+     */
+    PageImage(Bitmap bitmap, int rotation) {
+        mBitmap = bitmap;
+        mRotation = rotation;
+    }
+
+
+    Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+
+    int getRotation() {
+        return mRotation;
+    }
+
+
+    /**
+     * @return width of the image once it has been rotated
+     */
+    float getDisplayWidth() {
+        return isSideways(mRotation) ? mBitmap.getHeight() : mBitmap.getWidth();
+    }
+
+
+    /**
+     * @return height of the image once it has been rotated
+     */
+    float getDisplayHeight() {
+        return isSideways(mRotation) ? mBitmap.getWidth() : mBitmap.getHeight();
+    }
+
+
+    /**
+     * @param rotation - rotation in degrees
+     * @return true if the rotation swaps the width and height
+     */
+    static boolean isSideways(int rotation) {
+        return rotation == 90 || rotation == 270;
+    }
+}
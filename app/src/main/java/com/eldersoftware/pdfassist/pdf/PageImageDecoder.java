@@ -0,0 +1,190 @@
+package com.eldersoftware.pdfassist.pdf;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Trace;
+
+import com.eldersoftware.pdfassist.images.ImageMetadataStore.ImageMetadata;
+
+import java.util.Map;
+
+
+/**
+ * Decodes page images at the resolution they are placed at instead of their full camera size.
+ * The bounds are read first to pick the largest power of two sample size that still fills the
+ * placement at PIXELS_PER_POINT, and pooled bitmaps are reused for the decoded pixels. The EXIF
+ * rotation is returned with the image and applied when it is drawn. The bounds and rotation
+ * are taken from the stored image metadata when it is current.
+ */
+class PageImageDecoder implements ImagePrefetcher.ImageDecoder {
+    // Target resolution of the placed image, 2 pixels per point is 144 dpi
+    private static final float PIXELS_PER_POINT = 2f;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private Context mContext;
+    private float mBoxWidth, mBoxHeight;
+    private BitmapPool mBitmapPool;
+    private Map<String, ImageMetadata> mImageMetadata;
+
+
+    /**
+     * Constructor
+     * @param context - context
+     * @param boxWidth - width of the box the image is fitted into, in points
+     * @param boxHeight - height of the box the image is fitted into, in points
+     * @param bitmapPool - pool the decoded bitmaps are taken from
+     * @param imageMetadata - metadata of the page images by path, read when it is current
+     */
+    PageImageDecoder(Context context, float boxWidth, float boxHeight, BitmapPool bitmapPool,
+                     Map<String, ImageMetadata> imageMetadata) {
+        mContext = context;
+        mBoxWidth = boxWidth;
+        mBoxHeight = boxHeight;
+        mBitmapPool = bitmapPool;
+        mImageMetadata = imageMetadata;
+    }
+
+
+    /**
+     * Decodes the image subsampled to the placement resolution. Called from the prefetch workers
+     * @param imagePath - image file
+     * @return decoded image with its rotation, null if the file can't be decoded
+     */
+    @Override
+    public PageImage decode(String imagePath) {
+        Trace.beginSection("PageImageDecoder.decode");
+        try {
+            long start = System.nanoTime();
+            PageImage pageImage = decodeSampled(imagePath);
+            if (pageImage != null) {
+                ExportMetrics.recordImageDecode(System.nanoTime() - start,
+                        pageImage.getBitmap().getByteCount());
+            }
+            return pageImage;
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+
+    private PageImage decodeSampled(String imagePath) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        int sourceWidth, sourceHeight, rotation;
+        ImageMetadata metadata = getMetadata(imagePath);
+        if (metadata != null) {
+            sourceWidth = metadata.getWidth();
+            sourceHeight = metadata.getHeight();
+            rotation = metadata.getRotation();
+        } else {
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(imagePath, options);
+            sourceWidth = options.outWidth;
+            sourceHeight = options.outHeight;
+            if (sourceWidth <= 0 || sourceHeight <= 0) {
+                return null; // No file found, the page leaves the image space blank
+            }
+            rotation = Math.max(0, CreateDocLayout.getCameraPhotoOrientation(mContext, imagePath));
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(sourceWidth, sourceHeight, rotation);
+        options.inDither = false;
+        options.inScaled = false;
+        options.inMutable = true; // Required for the bitmap to be reused by a later decode
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inBitmap = mBitmapPool.acquire(
+                decodedByteCount(sourceWidth, sourceHeight, options.inSampleSize));
+
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeFile(imagePath, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap couldn't be reused for this image, decode into a new bitmap
+            mBitmapPool.discard(options.inBitmap);
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeFile(imagePath, options);
+        }
+
+        if (bitmap == null) {
+            mBitmapPool.release(options.inBitmap);
+            return null;
+        }
+        if (bitmap != options.inBitmap) {
+            mBitmapPool.trackAllocation(bitmap);
+        }
+        return new PageImage(bitmap, rotation);
+    }
+
+
+    /**
+     * Reads the bounds of an image to estimate the memory its decode will use
+     * @param imagePath - image file
+     * @return estimated bytes, 0 if the image can't be read
+     */
+    long estimateDecodeBytes(String imagePath) {
+        ImageMetadata metadata = getMetadata(imagePath);
+        if (metadata != null) {
+            return decodedByteCount(metadata.getWidth(), metadata.getHeight(),
+                    calculateInSampleSize(metadata.getWidth(), metadata.getHeight(),
+                            metadata.getRotation()));
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(imagePath, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return 0;
+        }
+
+        int rotation = Math.max(0, CreateDocLayout.getCameraPhotoOrientation(mContext, imagePath));
+        int sampleSize = calculateInSampleSize(options.outWidth, options.outHeight, rotation);
+        return decodedByteCount(options.outWidth, options.outHeight, sampleSize);
+    }
+
+
+    /**
+     * @param imagePath - image file
+     * @return stored metadata of the image, null if there is none or the file has changed
+     */
+    ImageMetadata getMetadata(String imagePath) {
+        ImageMetadata metadata = mImageMetadata.get(imagePath);
+        return metadata != null && metadata.isCurrent() ? metadata : null;
+    }
+
+
+    /**
+     * Finds the largest power of two sample size that keeps the image at or above the target
+     * resolution once it is fitted into the placement box
+     * @param sourceWidth - full image width
+     * @param sourceHeight - full image height
+     * @param rotation - EXIF rotation, 90 and 270 swap the displayed width and height
+     * @return sample size for BitmapFactory.Options.inSampleSize
+     */
+    private int calculateInSampleSize(int sourceWidth, int sourceHeight, int rotation) {
+        float displayWidth = PageImage.isSideways(rotation) ? sourceHeight : sourceWidth;
+        float displayHeight = PageImage.isSideways(rotation) ? sourceWidth : sourceHeight;
+
+        // Size of the placed image in points, then the pixels needed to fill it
+        float fitScale = Math.min(mBoxWidth / displayWidth, mBoxHeight / displayHeight);
+        float requiredWidth = displayWidth * fitScale * PIXELS_PER_POINT;
+        float requiredHeight = displayHeight * fitScale * PIXELS_PER_POINT;
+
+        int sampleSize = 1;
+        while (displayWidth / (sampleSize * 2) >= requiredWidth &&
+                displayHeight / (sampleSize * 2) >= requiredHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+
+    /**
+     * @return bytes used by an image decoded with the given sample size
+     */
+    private static long decodedByteCount(int sourceWidth, int sourceHeight, int sampleSize) {
+        long width = (sourceWidth + sampleSize - 1) / sampleSize;
+        long height = (sourceHeight + sampleSize - 1) / sampleSize;
+        return width * height * BYTES_PER_PIXEL;
+    }
+}
@@ -0,0 +1,72 @@
+package com.eldersoftware.pdfassist.pdf;
+
+import android.os.Build;
+import android.text.TextPaint;
+
+import com.eldersoftware.pdfassist.pdfcore.TextMeasurer;
+
+
+/**
+ * Measures text with a TextPaint, for pages drawn on a PdfDocument canvas. The paint is copied
+ * and its text size changed for each measurement, so a measurer must only be used by one thread.
+ */
+class PaintTextMeasurer implements TextMeasurer {
+    private TextPaint mPaint;
+    private String mFontKey;
+
+
+    /**
+     * Constructor
+     * @param paint - paint the text will be drawn with, only its typeface and style are used
+     */
+    PaintTextMeasurer(TextPaint paint) {
+        mPaint = new TextPaint(paint);
+        mFontKey = createFontKey(mPaint);
+    }
+
+
+    @Override
+    public float measureText(CharSequence text, int start, int end, float fontSize) {
+        mPaint.setTextSize(fontSize);
+        return mPaint.measureText(text, start, end);
+    }
+
+
+    @Override
+    public float getAscent(float fontSize) {
+        mPaint.setTextSize(fontSize);
+        return -mPaint.ascent();
+    }
+
+
+    @Override
+    public float getDescent(float fontSize) {
+        mPaint.setTextSize(fontSize);
+        return mPaint.descent();
+    }
+
+
+    @Override
+    public String getFontKey() {
+        return mFontKey;
+    }
+
+
+    /**
+     * Builds the key from the paint settings that change text widths, the text size isn't
+     * included as it is set for each measurement
+     * @param paint - measuring paint
+     * @return font key for the layout cache
+     */
+    private static String createFontKey(TextPaint paint) {
+        StringBuilder key = new StringBuilder("paint:")
+                .append(System.identityHashCode(paint.getTypeface()))
+                .append(':').append(paint.getFlags())
+                .append(':').append(paint.getTextScaleX())
+                .append(':').append(paint.getTextSkewX());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            key.append(':').append(paint.getLetterSpacing());
+        }
+        return key.toString();
+    }
+}
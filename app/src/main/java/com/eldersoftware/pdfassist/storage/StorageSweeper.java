@@ -0,0 +1,460 @@
+package com.eldersoftware.pdfassist.storage;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Environment;
+import android.os.Process;
+import android.util.Log;
+
+import com.eldersoftware.pdfassist.R;
+import com.eldersoftware.pdfassist.data.DocInfoContract.DocInfoListEntry;
+import com.eldersoftware.pdfassist.data.DocInfoContract.ExportJobEntry;
+import com.eldersoftware.pdfassist.data.DocInfoContract.ImageMetadataEntry;
+import com.eldersoftware.pdfassist.data.DocInfoContract.ImageStoreEntry;
+import com.eldersoftware.pdfassist.data.DocInfoContract.PageEntry;
+import com.eldersoftware.pdfassist.images.ImageMetadataStore;
+import com.eldersoftware.pdfassist.images.ImageStore;
+import com.eldersoftware.pdfassist.images.ThumbnailStore;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Deletes the files left behind under Android Pdf Tools once nothing refers to them. Images
+ * replaced on a page, removed with their page or doc, or released from the image store are
+ * kept for the image retention period from when they stopped being used, then deleted with
+ * their thumbnails and metadata. PDFs that aren't the last export of a doc or an export job's
+ * result are kept for the PDF retention period. Stored images are released at the time the
+ * provider records, other files from the first sweep that finds nothing refers to them. The
+ * retention periods also protect files still being written, such as a capture before its page
+ * row is updated.
+ *
+ * A sweep works through the directories in name order and stops after MAX_FILES_PER_RUN
+ * files, saving the directory it reached so the next run carries on from there. Files are read
+ * at background priority with a pause every few files, so a sweep doesn't compete with the
+ * page list or an export for the disk. Bytes reclaimed are logged and added to a running total.
+ */
+public class StorageSweeper {
+    private static final String LOG_TAG = StorageSweeper.class.getSimpleName();
+
+    private static final String ROOT_DIR = "/Android Pdf Tools";
+    private static final String IMAGE_DIR = "Images";
+    private static final String THUMBNAIL_DIR = "Thumbnails";
+    private static final String PDF_DIR = "PDFs";
+
+    private static final String PREFS_NAME = "storageSweeper";
+    // Directory to carry on from, unset between full sweeps
+    private static final String PREF_NEXT_DIRECTORY = "nextDirectory";
+    private static final String PREF_LAST_SWEEP_FINISHED = "lastSweepFinished";
+    private static final String PREF_RECLAIMED_BYTES = "reclaimedBytes";
+    // Time each unused file outside the image store was first found, keyed by path
+    private static final String ORPHANS_PREFS_NAME = "storageSweeperOrphans";
+
+    // Files looked at in each run, then the rest is left for the next run
+    private static final int MAX_FILES_PER_RUN = 1000;
+    // Pauses for PAUSE_MILLIS after every FILES_PER_PAUSE files looked at
+    private static final int FILES_PER_PAUSE = 25;
+    private static final long PAUSE_MILLIS = 50;
+
+    // Stored images released by every page. An image no page ever showed has no released time,
+    // it counts from when it was stored
+    private static final String RELEASED_TIME = "COALESCE(" +
+            ImageStoreEntry.COLUMN_RELEASED_TIME + ", " +
+            ImageStoreEntry.COLUMN_CREATED_TIME + ")";
+    private static final String RELEASED_IMAGES_SELECTION =
+            ImageStoreEntry.COLUMN_REF_COUNT + " <= 0 AND " + RELEASED_TIME + " < ?";
+    private static final String RELEASED_IMAGE_SELECTION =
+            ImageStoreEntry.COLUMN_IMAGE_PATH + " = ? AND " +
+                    ImageStoreEntry.COLUMN_REF_COUNT + " <= 0";
+
+    // Guarded by the class, a second request while a sweep is queued or running is dropped
+    private static boolean sQueued;
+
+    private final Context mContext;
+    private final long mNow;
+    private final long mImageCutoff;
+    private final long mPdfCutoff;
+    private final Set<String> mReferencedFiles = new HashSet<>();
+    private Map<String, ?> mOrphanedSince;
+    private SharedPreferences.Editor mOrphanEditor;
+
+    private int mFilesSeen;
+    private int mFilesDeleted;
+    private long mBytesReclaimed;
+
+
+    private StorageSweeper(Context context) {
+        mContext = context;
+        Resources resources = context.getResources();
+        mNow = System.currentTimeMillis();
+        mImageCutoff = mNow - TimeUnit.DAYS.toMillis(
+                resources.getInteger(R.integer.sweep_image_retention_days));
+        mPdfCutoff = mNow - TimeUnit.DAYS.toMillis(
+                resources.getInteger(R.integer.sweep_pdf_retention_days));
+    }
+
+
+    /**
+     * Runs the next part of the sweep in the background, unless a full sweep finished less
+     * than the sweep interval ago. Runs on the image store's thread, so no image is deleted
+     * while it is being moved into the store
+     * @param context - context
+     */
+    public static void sweepAsync(Context context) {
+        final Context appContext = context.getApplicationContext();
+        if (!isSweepDue(appContext)) {
+            return;
+        }
+        synchronized (StorageSweeper.class) {
+            if (sQueued) {
+                return;
+            }
+            sQueued = true;
+        }
+
+        ImageStore.execute(new Runnable() {
+            @Override
+            public void run() {
+                int priority = Process.getThreadPriority(Process.myTid());
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    new StorageSweeper(appContext).sweep();
+                } catch (RuntimeException e) {
+                    // The cursor hasn't moved, the next run starts the directory again
+                    Log.w(LOG_TAG, "Storage sweep failed", e);
+                } finally {
+                    Process.setThreadPriority(priority);
+                    synchronized (StorageSweeper.class) {
+                        sQueued = false;
+                    }
+                }
+            }
+        });
+    }
+
+
+    /**
+     * @param context - context
+     * @return bytes deleted by every sweep so far
+     */
+    public static long getReclaimedBytes(Context context) {
+        return getPrefs(context).getLong(PREF_RECLAIMED_BYTES, 0);
+    }
+
+
+    private static boolean isSweepDue(Context context) {
+        SharedPreferences prefs = getPrefs(context);
+        if (prefs.contains(PREF_NEXT_DIRECTORY)) {
+            return true; // The last sweep didn't finish
+        }
+        long interval = TimeUnit.HOURS.toMillis(
+                context.getResources().getInteger(R.integer.sweep_interval_hours));
+        return System.currentTimeMillis() - prefs.getLong(PREF_LAST_SWEEP_FINISHED, 0) >= interval;
+    }
+
+
+    private void sweep() {
+        File root = new File(Environment.getExternalStorageDirectory() + ROOT_DIR);
+        List<File> directories = listDirectories(root);
+        if (directories.isEmpty()) {
+            return; // Nothing written yet, or no permission to read it
+        }
+        loadReferencedFiles();
+        SharedPreferences orphanPrefs =
+                mContext.getSharedPreferences(ORPHANS_PREFS_NAME, Context.MODE_PRIVATE);
+        mOrphanedSince = orphanPrefs.getAll();
+        mOrphanEditor = orphanPrefs.edit();
+
+        SharedPreferences prefs = getPrefs(mContext);
+        String nextDirectory = prefs.getString(PREF_NEXT_DIRECTORY, null);
+        String stoppedAt = null;
+        for (File directory : directories) {
+            if (nextDirectory != null && directory.getPath().compareTo(nextDirectory) < 0) {
+                continue;
+            }
+            if (mFilesSeen >= MAX_FILES_PER_RUN) {
+                stoppedAt = directory.getPath();
+                break;
+            }
+            sweepDirectory(directory);
+        }
+        // Released store images only need the database, they are swept once per full sweep
+        if (stoppedAt == null) {
+            sweepReleasedImages();
+            sweepMetadata();
+            forgetMissingOrphans();
+        }
+        mOrphanEditor.apply();
+
+        SharedPreferences.Editor editor = prefs.edit();
+        if (stoppedAt != null) {
+            editor.putString(PREF_NEXT_DIRECTORY, stoppedAt);
+        } else {
+            editor.remove(PREF_NEXT_DIRECTORY);
+            editor.putLong(PREF_LAST_SWEEP_FINISHED, System.currentTimeMillis());
+        }
+        editor.putLong(PREF_RECLAIMED_BYTES,
+                prefs.getLong(PREF_RECLAIMED_BYTES, 0) + mBytesReclaimed);
+        editor.apply();
+
+        Log.i(LOG_TAG, String.format(Locale.ENGLISH,
+                "Storage sweep %s: %d files looked at, %d deleted, %d bytes reclaimed",
+                stoppedAt != null ? "paused" : "finished", mFilesSeen, mFilesDeleted,
+                mBytesReclaimed));
+    }
+
+
+    /**
+     * @param root - Android Pdf Tools directory
+     * @return the Images, Thumbnails and PDFs directories of each doc and of the image store,
+     * in path order so a paused sweep can carry on from where it stopped
+     */
+    private static List<File> listDirectories(File root) {
+        List<File> directories = new ArrayList<>();
+        File[] baseDirectories = root.listFiles();
+        if (baseDirectories == null) {
+            return directories;
+        }
+        for (File baseDirectory : baseDirectories) {
+            for (String name : new String[] {IMAGE_DIR, THUMBNAIL_DIR, PDF_DIR}) {
+                File directory = new File(baseDirectory, name);
+                if (directory.isDirectory()) {
+                    directories.add(directory);
+                }
+            }
+        }
+
+        File[] sorted = directories.toArray(new File[0]);
+        Arrays.sort(sorted);
+        return Arrays.asList(sorted);
+    }
+
+
+    /**
+     * Reads every file path the database refers to: page images, stored images, the last
+     * export of each doc and the result of each export job. Stored images no page shows are
+     * left to sweepReleasedImages, which uses their released time
+     */
+    private void loadReferencedFiles() {
+        addPaths(PageEntry.ALL_PAGES_URI, PageEntry.COLUMN_PAGE_IMAGE, null, null);
+        addPaths(ImageStoreEntry.IMAGE_STORE_URI, ImageStoreEntry.COLUMN_IMAGE_PATH, null, null);
+        addPaths(DocInfoListEntry.DOC_INFO_URI, DocInfoListEntry.COLUMN_EXPORT_PATH, null, null);
+        addPaths(ExportJobEntry.EXPORT_JOBS_URI, ExportJobEntry.COLUMN_EXPORT_PATH, null, null);
+    }
+
+
+    private void addPaths(Uri uri, String column, String selection, String[] selectionArgs) {
+        Cursor cursor = mContext.getContentResolver().query(uri, new String[] {column},
+                selection, selectionArgs, null);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                if (!cursor.isNull(0)) {
+                    mReferencedFiles.add(new File(cursor.getString(0)).getAbsolutePath());
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+
+    private void sweepDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        String type = directory.getName();
+        for (File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            throttle();
+
+            if (type.equals(THUMBNAIL_DIR)) {
+                sweepThumbnail(file);
+            } else if (type.equals(PDF_DIR)) {
+                if (isOrphanedBefore(file, mPdfCutoff)) {
+                    deleteFile(file);
+                }
+            } else if (isOrphanedBefore(file, mImageCutoff)) {
+                deleteImage(file);
+            }
+        }
+    }
+
+
+    /**
+     * Thumbnails and their stamps are only kept while their image is. Temporary files have no
+     * source image and are left alone
+     */
+    private void sweepThumbnail(File file) {
+        String imagePath = ThumbnailStore.getSourceImagePath(file);
+        if (imagePath != null && !new File(imagePath).exists()) {
+            deleteFile(file);
+        }
+    }
+
+
+    /**
+     * Deletes the stored images no page has shown for the image retention period. The row is
+     * removed first, only while no page shows the image, then the file
+     */
+    private void sweepReleasedImages() {
+        List<String> releasedPaths = new ArrayList<>();
+        Cursor cursor = mContext.getContentResolver().query(ImageStoreEntry.IMAGE_STORE_URI,
+                new String[] {ImageStoreEntry.COLUMN_IMAGE_PATH},
+                RELEASED_IMAGES_SELECTION,
+                new String[] {String.valueOf(mImageCutoff)},
+                RELEASED_TIME + " ASC");
+        if (cursor == null) {
+            return;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                releasedPaths.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        for (String imagePath : releasedPaths) {
+            throttle();
+            int rowsDeleted = mContext.getContentResolver().delete(
+                    ImageStoreEntry.IMAGE_STORE_URI, RELEASED_IMAGE_SELECTION,
+                    new String[] {imagePath});
+            if (rowsDeleted > 0) {
+                deleteImage(new File(imagePath));
+            }
+        }
+    }
+
+
+    /**
+     * Removes the metadata of images that are no longer on disk
+     */
+    private void sweepMetadata() {
+        List<String> missingPaths = new ArrayList<>();
+        Cursor cursor = mContext.getContentResolver().query(
+                ImageMetadataEntry.IMAGE_METADATA_URI,
+                new String[] {ImageMetadataEntry.COLUMN_IMAGE_PATH},
+                null,
+                null,
+                null);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                String imagePath = cursor.getString(0);
+                if (!new File(imagePath).exists()) {
+                    missingPaths.add(imagePath);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        for (String imagePath : missingPaths) {
+            ImageMetadataStore.delete(mContext, imagePath);
+        }
+    }
+
+
+    /**
+     * Records when a file was first found unused, a file used again is forgotten
+     * @param file - image or PDF outside the image store's rows
+     * @param cutoff - files unused since before this time are deleted
+     * @return true if nothing has referred to the file since before the cutoff
+     */
+    private boolean isOrphanedBefore(File file, long cutoff) {
+        String path = file.getAbsolutePath();
+        Object orphanedSince = mOrphanedSince.get(path);
+        if (mReferencedFiles.contains(path)) {
+            if (orphanedSince != null) {
+                mOrphanEditor.remove(path);
+            }
+            return false;
+        }
+        if (!(orphanedSince instanceof Long)) {
+            mOrphanEditor.putLong(path, mNow);
+            return false;
+        }
+        // A file written since it was found is still being used
+        return (Long) orphanedSince < cutoff && file.lastModified() < cutoff;
+    }
+
+
+    /**
+     * Forgets the unused files that have gone, deleted by the app or by the user
+     */
+    private void forgetMissingOrphans() {
+        for (String path : mOrphanedSince.keySet()) {
+            if (!new File(path).exists()) {
+                mOrphanEditor.remove(path);
+            }
+        }
+    }
+
+
+    /**
+     * Deletes an image along with its thumbnails and metadata
+     */
+    private void deleteImage(File imageFile) {
+        deleteFile(imageFile);
+        ThumbnailStore.delete(imageFile.getPath());
+        ImageMetadataStore.delete(mContext, imageFile.getPath());
+    }
+
+
+    private void deleteFile(File file) {
+        long length = file.length();
+        if (file.delete()) {
+            mOrphanEditor.remove(file.getAbsolutePath());
+            recordDeleted(length);
+        } else if (file.exists()) {
+            Log.w(LOG_TAG, "Couldn't delete: " + file);
+        }
+    }
+
+
+    private void recordDeleted(long length) {
+        mFilesDeleted++;
+        mBytesReclaimed += length;
+    }
+
+
+    /**
+     * Counts the file against the run and pauses now and then, so the disk is shared with the
+     * app in the foreground
+     */
+    private void throttle() {
+        mFilesSeen++;
+        if (mFilesSeen % FILES_PER_PAUSE == 0) {
+            try {
+                Thread.sleep(PAUSE_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -1,23 +1,32 @@
 package com.eldersoftware.pdfassist.utils;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.net.Uri;
-import android.text.TextUtils;
+import android.os.RemoteException;
+import android.util.Log;
 import android.widget.Toast;
 
 import com.eldersoftware.pdfassist.DocPagesActivity;
 import com.eldersoftware.pdfassist.data.DocInfoContract;
+import com.eldersoftware.pdfassist.pdfcore.PageDataCodec;
 
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * A list of helper methods for creating abstraction between the UI and the content provider
  */
 public class ProviderUtils {
+    private static final String LOG_TAG = ProviderUtils.class.getSimpleName();
 
     public static final String CREATE_DOC_SUCCESS = "Created new doc: ";
     public static final String CREATE_DOC_ERROR_EXISTS = "Doc already exists with that name";
@@ -34,8 +43,25 @@ public class ProviderUtils {
     public static final String DELETE_PAGE_SUCCESS = "Deleted page";
     public static final String DELETE_PAGE_ERROR = "Error deleting page";
 
-    //Projection for querying the database and returning columns related to page information
+    //Projection for querying the pages table and returning columns related to page information
     public static final String[] PAGE_PROJECTION = {
+            DocInfoContract.PageEntry.COLUMN_PAGE_NAME,
+            DocInfoContract.PageEntry.COLUMN_PAGE_IMAGE,
+            DocInfoContract.PageEntry.COLUMN_PAGE_TEXT
+    };
+
+    //Page projection with the page row id added after the page columns, for the page list
+    //which identifies rows by id. collectPageData only reads the page columns
+    public static final String[] PAGE_LIST_PROJECTION = {
+            DocInfoContract.PageEntry.COLUMN_PAGE_NAME,
+            DocInfoContract.PageEntry.COLUMN_PAGE_IMAGE,
+            DocInfoContract.PageEntry.COLUMN_PAGE_TEXT,
+            DocInfoContract.PageEntry._ID
+    };
+    public static final int PAGE_ID_INDEX = 3;
+
+    //Projection for the legacy "_split_" joined page columns of a version 1 database
+    public static final String[] LEGACY_PAGE_PROJECTION = {
             DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_NAMES,
             DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_IMAGES,
             DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_TEXT
@@ -46,10 +72,11 @@ public class ProviderUtils {
     public static final int PAGE_TEXT_INDEX = 2;
 
 
-    //Used by the pages columns, so there is no need to create a new table for each new page
-    private static final String PROVIDER_SPLIT = "_split_";
     public static final String PROVIDER_NULL = "null";
 
+    //Copy names tried by duplicateDoc before giving up
+    private static final int MAX_COPY_NAME_ATTEMPTS = 100;
+
 
     /**
      * Creates a new row in the database with the doc name entered
@@ -60,22 +87,96 @@ public class ProviderUtils {
     public static String createDoc(String docName, Context context) {
         docName = docName.trim(); //Removes leading/trailing whitespace
 
-        //Creates URI using the doc name to check if the doc name already exists
-        Uri uriDocName = DocInfoContract.DocInfoListEntry.DOC_INFO_URI
-                .buildUpon().appendPath(docName).build();
-        Cursor cursor = context.getContentResolver()
-                .query(uriDocName, null, null, null, null);
+        //Doc names are unique, the insert returns null if the name already exists
+        ContentValues newDocCV = new ContentValues();
+        newDocCV.put(DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME, docName);
+        Uri docUri = context.getContentResolver()
+                .insert(DocInfoContract.DocInfoListEntry.DOC_INFO_URI, newDocCV);
+        return docUri != null ? CREATE_DOC_SUCCESS : CREATE_DOC_ERROR_EXISTS;
+    }
+
+
+    /**
+     * Creates a doc for each name in a single transaction. Names that already exist, or are
+     * repeated, are skipped. No toast is shown, so it can be called off the main thread
+     * @param docNames - doc names
+     * @param context - context
+     * @return number of docs created
+     */
+    public static int createDocs(Collection<String> docNames, Context context) {
+        //Repeated names are removed here, names already in use are skipped by the provider
+        Set<String> newNames = new LinkedHashSet<>();
+        for (String docName : docNames) {
+            docName = docName.trim();
+            if (!docName.isEmpty()) {
+                newNames.add(docName);
+            }
+        }
+        if (newNames.isEmpty()) {
+            return 0;
+        }
+
+        ContentValues[] newDocs = new ContentValues[newNames.size()];
+        int i = 0;
+        for (String docName : newNames) {
+            newDocs[i] = new ContentValues();
+            newDocs[i].put(DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME, docName);
+            i++;
+        }
+
+        return context.getContentResolver().bulkInsert(
+                DocInfoContract.DocInfoListEntry.DOC_INFO_URI, newDocs);
+    }
+
+
+    /**
+     * Copies a doc and all of its pages under a new name. Page images are shared by path, so
+     * no image file is copied
+     * @param docName - doc to copy
+     * @param context - context
+     * @return name of the copy, null if the doc couldn't be copied
+     */
+    public static String duplicateDoc(String docName, Context context) {
+        //Finds a free name, the provider ignores a name in use
+        String copyName = null;
+        for (int copy = 1; copy <= MAX_COPY_NAME_ATTEMPTS && copyName == null; copy++) {
+            String name = docName + (copy == 1 ? " (copy)" : " (copy " + copy + ")");
+            if (createDoc(name, context).equals(CREATE_DOC_SUCCESS)) {
+                copyName = name.trim();
+            }
+        }
+        if (copyName == null) {
+            return null;
+        }
 
-        //If cursor contains data then doc name already exists
-        if (cursor != null && cursor.getCount() > 0) {
+        Uri docNameUri = DocInfoContract.DocInfoListEntry.buildDocNameUri(docName);
+        Cursor cursor = context.getContentResolver().query(
+                DocInfoContract.PageEntry.buildDocPagesUri(docNameUri),
+                PAGE_PROJECTION,
+                null,
+                null,
+                null);
+        if (cursor == null) {
+            return copyName;
+        }
+
+        ContentValues[] copiedPages;
+        try {
+            copiedPages = new ContentValues[cursor.getCount()];
+            int i = 0;
+            while (cursor.moveToNext()) {
+                copiedPages[i] = new ContentValues();
+                DatabaseUtils.cursorRowToContentValues(cursor, copiedPages[i]);
+                i++;
+            }
+        } finally {
             cursor.close();
-            return CREATE_DOC_ERROR_EXISTS;
-        } else {
-            ContentValues newDocCV = new ContentValues();
-            newDocCV.put(DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME, docName);
-            context.getContentResolver().insert(DocInfoContract.DocInfoListEntry.DOC_INFO_URI, newDocCV);
-            return CREATE_DOC_SUCCESS;
         }
+
+        //Pages are appended in order, the image store counts the new pages showing each image
+        context.getContentResolver().bulkInsert(DocInfoContract.PageEntry.buildDocPagesUri(
+                DocInfoContract.DocInfoListEntry.buildDocNameUri(copyName)), copiedPages);
+        return copyName;
     }
 
 
@@ -87,27 +188,16 @@ public class ProviderUtils {
      * @return String - contains success or error message
      */
     public static String updateDoc(String oldDocName, String newDocName, Context context) {
-        //Trims leading/trailing whitespace and creates URIs using the old/new doc names
+        //Trims leading/trailing whitespace and creates the URI using the old doc name
         oldDocName = oldDocName.trim();
         newDocName = newDocName.trim();
-        Uri uriOldDocName = DocInfoContract.DocInfoListEntry.DOC_INFO_URI.buildUpon()
-                .appendPath(oldDocName).build();
-        Uri uriNewDocName = DocInfoContract.DocInfoListEntry.DOC_INFO_URI.buildUpon()
-                .appendPath(newDocName).build();
-
-        Cursor cursor = context.getContentResolver()
-                .query(uriNewDocName, null, null, null, null);
+        Uri uriOldDocName = DocInfoContract.DocInfoListEntry.buildDocNameUri(oldDocName);
 
-        //If the cursor contains data the new doc name already exists
-        if (cursor != null && cursor.getCount() > 0) {
-            cursor.close();
-            return CREATE_DOC_ERROR_EXISTS;
-        } else {
-            ContentValues newDocCV = new ContentValues();
-            newDocCV.put(DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME, newDocName);
-            context.getContentResolver().update(uriOldDocName, newDocCV, null, null);
-            return CREATE_DOC_SUCCESS;
-        }
+        //Doc names are unique, nothing is updated if the new name already exists
+        ContentValues newDocCV = new ContentValues();
+        newDocCV.put(DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME, newDocName);
+        int rowsUpdated = context.getContentResolver().update(uriOldDocName, newDocCV, null, null);
+        return rowsUpdated > 0 ? CREATE_DOC_SUCCESS : CREATE_DOC_ERROR_EXISTS;
     }
 
 
@@ -126,54 +216,20 @@ public class ProviderUtils {
 
 
     /**
-     * Creates a new page using the pagename and updates database row with the new data
+     * Creates a new page using the pagename, appended to the end of the doc as its own row
      * @param docNameUri - doc name uri
      * @param pageName - page name
      * @param context - context
      */
     public static void createPage(Uri docNameUri, String pageName, Context context) {
-        //As we are not creating a new table or row we need the existing page data
-        Cursor cursor = context.getContentResolver()
-                .query(docNameUri, PAGE_PROJECTION, null, null, null);
         ContentValues newPageCV = new ContentValues();
+        newPageCV.put(DocInfoContract.PageEntry.COLUMN_PAGE_NAME, pageName);
 
-        //Loops through each column and appends new page information
-        for (int i = 0; i < PAGE_PROJECTION.length; i++) {
-            if (cursor != null && cursor.moveToFirst()) {
-                String currentColumnString = cursor.getString(i); //Gets existing data in column
-
-                //If its the page name index page name needs to be entered,
-                //else add empty item for other columns
-                if (i == PAGE_NAMES_INDEX) {
-                    //Adds the PROVIDER_SPLIT constant between page data if there is existing pages
-                    if (currentColumnString == null || currentColumnString.isEmpty()) {
-                        currentColumnString = pageName;
-                    } else {
-                        currentColumnString = currentColumnString + PROVIDER_SPLIT + pageName;
-                    }
-                } else {
-                    //Other columns add the PROViDER_NULL constant to ensure there is consistant
-                    //page information
-                    if (currentColumnString == null || currentColumnString.isEmpty()) {
-                        currentColumnString = PROVIDER_NULL;
-                    } else {
-                        currentColumnString = currentColumnString + PROVIDER_SPLIT + PROVIDER_NULL;
-                    }
-                }
-
-                //Puts the respective column information into the content values
-                newPageCV.put(PAGE_PROJECTION[i], currentColumnString);
-            }
-        }
-
-        int rowsUpdated = context.getContentResolver().update(docNameUri, newPageCV,
-                null, null);
-        if (cursor != null) {
-            cursor.close();
-        }
+        Uri pageUri = context.getContentResolver().insert(
+                DocInfoContract.PageEntry.buildDocPagesUri(docNameUri), newPageCV);
 
         //Makes success or error toast
-        if (rowsUpdated > 0) {
+        if (pageUri != null) {
             Toast.makeText(context, CREATE_PAGE_SUCCESS + pageName, Toast.LENGTH_SHORT).show();
         } else {
             Toast.makeText(context, CREATE_PAGE_ERROR, Toast.LENGTH_SHORT).show();
@@ -182,22 +238,46 @@ public class ProviderUtils {
 
 
     /**
-     * Updates the chosen column with the new data for a specific doc name row,
-     * used when changes are made to the page data
+     * Appends a page for each name to the end of the doc in a single transaction. No toast is
+     * shown, so it can be called off the main thread
+     * @param docNameUri - doc name uri
+     * @param pageNames - page names, in page order
+     * @param context - context
+     * @return number of pages created
+     */
+    public static int createPages(Uri docNameUri, Collection<String> pageNames, Context context) {
+        ContentValues[] newPages = new ContentValues[pageNames.size()];
+        int i = 0;
+        for (String pageName : pageNames) {
+            newPages[i] = new ContentValues();
+            newPages[i].put(DocInfoContract.PageEntry.COLUMN_PAGE_NAME, pageName);
+            i++;
+        }
+
+        return context.getContentResolver().bulkInsert(
+                DocInfoContract.PageEntry.buildDocPagesUri(docNameUri), newPages);
+    }
+
+
+    /**
+     * Updates the chosen column with the new data for a single page, only that pages row
+     * is written
      * @param docNameUri - doc name uri
-     * @param column - column name, taken from the DocInfoContract
+     * @param position - page position
+     * @param column - column name, taken from the DocInfoContract.PageEntry
      * @param newData - new data
      * @param context - context
      */
     public static void updatePageColumn(Uri docNameUri,
+                                        int position,
                                         String column,
                                         String newData,
                                         Context context) {
         ContentValues cv = new ContentValues();
         cv.put(column, newData);
 
-        int rowsUpdated = context.getContentResolver()
-                .update(docNameUri, cv, null, null);
+        int rowsUpdated = context.getContentResolver().update(
+                DocInfoContract.PageEntry.buildPageUri(docNameUri, position), cv, null, null);
 
         if (rowsUpdated > 0) {
             Toast.makeText(context, UPDATE_PAGE_SUCCESS, Toast.LENGTH_SHORT).show();
@@ -208,17 +288,81 @@ public class ProviderUtils {
 
 
     /**
-     * Splits the page data and adds it to an ArrayList of String arrays
+     * Marks the pages showing an image as changed, for when the image file has been rewritten
+     * at the same path. Bumps the doc version, so an export made from the old file isn't reused
+     * @param docNameUri - doc name uri
+     * @param imagePath - page image
+     * @param context - context
+     * @return number of pages showing the image
+     */
+    public static int markPageImageChanged(Uri docNameUri, String imagePath, Context context) {
+        ContentValues cv = new ContentValues();
+        cv.put(DocInfoContract.PageEntry.COLUMN_PAGE_IMAGE, imagePath);
+
+        return context.getContentResolver().update(
+                DocInfoContract.PageEntry.buildDocPagesUri(docNameUri),
+                cv,
+                DocInfoContract.PageEntry.COLUMN_PAGE_IMAGE + " = ?",
+                new String[] {imagePath});
+    }
+
+
+    /**
+     * Reads the page rows into an ArrayList of String arrays, one array each for the page
+     * names, images and text. Empty values are replaced with PROVIDER_NULL
+     * @param cursor - cursor queried from the pages uri using the PAGE_PROJECTION
+     * @return ArrayList<String[]> containing page names, images and text
+     */
+    public static ArrayList<String[]> collectPageData(Cursor cursor) {
+        ArrayList<String[]> pageData = new ArrayList<>();
+        int pageCount = cursor.getCount();
+
+        for (int i = 0; i < PAGE_PROJECTION.length; i++) {
+            pageData.add(new String[pageCount]);
+        }
+
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            for (int i = 0; i < PAGE_PROJECTION.length; i++) {
+                String value = cursor.getString(i);
+                pageData.get(i)[cursor.getPosition()] =
+                        value == null || value.isEmpty() ? PROVIDER_NULL : value;
+            }
+        }
+
+        return pageData;
+    }
+
+
+    /**
+     * Reads the page row ids, in the same order as collectPageData
+     * @param cursor - cursor queried from the pages uri using the PAGE_LIST_PROJECTION
+     * @return row id of each page
+     */
+    public static long[] collectPageIds(Cursor cursor) {
+        long[] pageIds = new long[cursor.getCount()];
+
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            pageIds[cursor.getPosition()] = cursor.getLong(PAGE_ID_INDEX);
+        }
+
+        return pageIds;
+    }
+
+
+    /**
+     * Splits the legacy page data and adds it to an ArrayList of String arrays
      * @param cursor - cursor
      * @return ArrayList<String[]> containing page names, images and text
      */
     public static ArrayList<String[]> splitPageData(Cursor cursor) {
         ArrayList<String[]> pageData = new ArrayList<>();
 
-        //Assumes that the data was queried using the PAGE_PROJECTION
-        for (int i = 0; i < PAGE_PROJECTION.length; i++) {
-            String[] splitColumnData = cursor.getString(i).split(PROVIDER_SPLIT);
-            pageData.add(splitColumnData);
+        //Assumes that the data was queried using the LEGACY_PAGE_PROJECTION,
+        //a doc without pages has empty columns
+        for (int i = 0; i < LEGACY_PAGE_PROJECTION.length; i++) {
+            pageData.add(PageDataCodec.split(cursor.getString(i)));
         }
 
         return pageData;
@@ -227,55 +371,39 @@ public class ProviderUtils {
 
     /**
      * Changes data for a specified index of page information and joins the array with the
-     * PROVIDER_SPLIT delimiter
+     * legacy "_split_" delimiter
      * @param pageData - page data array
      * @param newData - new data to replace with
      * @param index - index where the new data will be placed
      * @return String of the data joined
      */
     public static String replaceArrayElementAndJoin(String[] pageData, String newData, int index) {
-        pageData[index] = newData;
-        return TextUtils.join(PROVIDER_SPLIT, pageData);
+        return PageDataCodec.replaceAndJoin(pageData, newData, index);
     }
 
 
     /**
-     * Converts the array to an ArrayList, removes the given index and joins the array using
-     * the PROVIDER_SPLIT delimiter
+     * Joins the array without the given index using the legacy "_split_" delimiter
      * @param pageData - Array of page data
      * @param index - index to remove
      * @return String with chosen element removed and the array joined
      */
     public static String removeArrayElementAndJoin(String[] pageData, int index) {
-        ArrayList<String> pageDataArray = new ArrayList<>(Arrays.asList(pageData));
-        pageDataArray.remove(index);
-
-        return TextUtils.join(PROVIDER_SPLIT, pageDataArray);
+        return PageDataCodec.removeAndJoin(pageData, index);
     }
 
 
     /**
-     * Removes the given page index
+     * Removes the given page index, the following pages move up a position
      * @param context - context
-     * @param allPageData - all page data
      * @param index - page index
-     * @param docNameUri - uri for row update
+     * @param docNameUri - uri of the doc the page belongs to
      */
-    public static boolean deletePage(Context context, ArrayList<String[]> allPageData, int index, Uri docNameUri) {
-        // Creates the strings for the content provider with the given page index removed
-        String newPageNames = removeArrayElementAndJoin(allPageData.get(PAGE_NAMES_INDEX), index);
-        String newPageImages = removeArrayElementAndJoin(allPageData.get(PAGE_IMAGES_INDEX), index);
-        String newPageText = removeArrayElementAndJoin(allPageData.get(PAGE_TEXT_INDEX), index);
-
-        ContentValues newPagesCV = new ContentValues();
-        newPagesCV.put(DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_NAMES, newPageNames);
-        newPagesCV.put(DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_IMAGES, newPageImages);
-        newPagesCV.put(DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_TEXT, newPageText);
-
-        int rowsUpdated = context.getContentResolver()
-                .update(docNameUri, newPagesCV, null, null);
+    public static boolean deletePage(Context context, int index, Uri docNameUri) {
+        int rowsDeleted = context.getContentResolver().delete(
+                DocInfoContract.PageEntry.buildPageUri(docNameUri, index), null, null);
 
-        if (rowsUpdated > 0) {
+        if (rowsDeleted > 0) {
             Toast.makeText(context, DELETE_PAGE_SUCCESS, Toast.LENGTH_SHORT).show();
             return true;
         } else {
@@ -283,4 +411,41 @@ public class ProviderUtils {
             return false;
         }
     }
+
+
+    /**
+     * Removes the given page indexes in a single transaction, either all of them are removed
+     * or none are. No toast is shown, so it can be called off the main thread
+     * @param context - context
+     * @param indexes - page indexes, in any order
+     * @param docNameUri - uri of the doc the pages belong to
+     * @return true if every page was removed
+     */
+    public static boolean deletePages(Context context, int[] indexes, Uri docNameUri) {
+        //Highest index first, deleting a page moves the following pages up a position
+        int[] sortedIndexes = indexes.clone();
+        Arrays.sort(sortedIndexes);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (int i = sortedIndexes.length - 1; i >= 0; i--) {
+            if (i < sortedIndexes.length - 1 && sortedIndexes[i] == sortedIndexes[i + 1]) {
+                continue;
+            }
+            operations.add(ContentProviderOperation
+                    .newDelete(DocInfoContract.PageEntry.buildPageUri(docNameUri, sortedIndexes[i]))
+                    .withExpectedCount(1)
+                    .build());
+        }
+        if (operations.isEmpty()) {
+            return true;
+        }
+
+        try {
+            context.getContentResolver().applyBatch(DocInfoContract.AUTHORITY, operations);
+            return true;
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.w(LOG_TAG, "Couldn't delete pages of: " + docNameUri, e);
+            return false;
+        }
+    }
 }
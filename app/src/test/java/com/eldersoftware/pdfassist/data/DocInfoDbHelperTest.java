@@ -0,0 +1,234 @@
+package com.eldersoftware.pdfassist.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Upgrades a version 1 database, where every page of a doc was joined into "_split_" columns,
+ * and checks the pages and search index it leaves. Users lose pages if this goes wrong, so
+ * the legacy columns hold the ragged and "null" filled values old versions wrote.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class DocInfoDbHelperTest {
+
+    //Doc table of a version 1 database, as the first release created it
+    private static final String SQL_CREATE_VERSION_1_DOCLIST_TABLE = "CREATE TABLE " +
+            DocInfoContract.DocInfoListEntry.TABLE_NAME + " (" +
+            DocInfoContract.DocInfoListEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME + " TEXT NOT NULL, " +
+            DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_NAMES + " TEXT, " +
+            DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_IMAGES + " TEXT, " +
+            DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_TEXT + " TEXT" +
+            ");";
+
+    private Context mContext;
+    private DocInfoDbHelper mDbHelper;
+
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        File databaseFile = mContext.getDatabasePath(DocInfoDbHelper.DATABASE_NAME);
+        assertTrue(databaseFile.getParentFile().isDirectory() ||
+                databaseFile.getParentFile().mkdirs());
+
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(databaseFile, null);
+        try {
+            db.execSQL(SQL_CREATE_VERSION_1_DOCLIST_TABLE);
+            // Names, images and text for each page, image and text arrays cut short where
+            // String.split dropped the trailing empty pages
+            insertVersion1Doc(db, "Receipts",
+                    "Receipt one_split_Receipt two_split_Receipt three",
+                    "/images/one.jpg_split_null_split_/images/three.jpg",
+                    "Paid in cash_split_null");
+            insertVersion1Doc(db, "Notes",
+                    "First note_split_Second note",
+                    "/images/note.jpg",
+                    "_split_Call the plumber");
+            insertVersion1Doc(db, "Empty", null, null, null);
+            db.setVersion(1);
+        } finally {
+            db.close();
+        }
+
+        mDbHelper = new DocInfoDbHelper(mContext);
+    }
+
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mContext.deleteDatabase(DocInfoDbHelper.DATABASE_NAME);
+    }
+
+
+    @Test
+    public void upgradeFromVersion1_raggedColumns_movesEveryPage() {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        long receiptsId = queryDocId(db, "Receipts");
+        long notesId = queryDocId(db, "Notes");
+
+        List<String[]> receipts = queryPages(db, receiptsId);
+        assertEquals(3, receipts.size());
+        assertPage(receipts.get(0), "Receipt one", "/images/one.jpg", "Paid in cash");
+        // "null" placeholders and pages past the end of a short array are SQL NULL
+        assertPage(receipts.get(1), "Receipt two", null, null);
+        assertPage(receipts.get(2), "Receipt three", "/images/three.jpg", null);
+
+        List<String[]> notes = queryPages(db, notesId);
+        assertEquals(2, notes.size());
+        // An empty value between delimiters is SQL NULL too
+        assertPage(notes.get(0), "First note", "/images/note.jpg", null);
+        assertPage(notes.get(1), "Second note", null, "Call the plumber");
+
+        assertEquals(0, queryPages(db, queryDocId(db, "Empty")).size());
+    }
+
+
+    @Test
+    public void upgradeFromVersion1_clearsLegacyColumns() {
+        Cursor cursor = mDbHelper.getReadableDatabase().query(
+                DocInfoContract.DocInfoListEntry.TABLE_NAME,
+                new String[] {
+                        DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_NAMES,
+                        DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_IMAGES,
+                        DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_TEXT
+                },
+                null, null, null, null, null);
+        try {
+            assertEquals(3, cursor.getCount());
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    assertTrue(cursor.isNull(i));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+
+    @Test
+    public void upgradeFromVersion1_indexesMovedPages() {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        long receiptsId = queryDocId(db, "Receipts");
+        long notesId = queryDocId(db, "Notes");
+
+        List<Long> receiptPages = queryPageIds(db, receiptsId);
+        assertEquals(receiptPages, searchPageIds(db, "receipt"));
+        assertEquals(receiptPages.subList(0, 1), searchPageIds(db, "cash"));
+        assertEquals(queryPageIds(db, notesId).subList(1, 2), searchPageIds(db, "plumber"));
+        // Placeholders became SQL NULL, so they aren't indexed as text
+        assertEquals(0, searchPageIds(db, "null").size());
+    }
+
+
+    private static void insertVersion1Doc(SQLiteDatabase db, String docName, String pageNames,
+                                          String pageImages, String pageText) {
+        ContentValues cv = new ContentValues();
+        cv.put(DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME, docName);
+        cv.put(DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_NAMES, pageNames);
+        cv.put(DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_IMAGES, pageImages);
+        cv.put(DocInfoContract.DocInfoListEntry.COLUMN_DOC_PAGE_TEXT, pageText);
+        assertTrue(db.insert(DocInfoContract.DocInfoListEntry.TABLE_NAME, null, cv) != -1);
+    }
+
+
+    private static long queryDocId(SQLiteDatabase db, String docName) {
+        Cursor cursor = db.query(DocInfoContract.DocInfoListEntry.TABLE_NAME,
+                new String[] {DocInfoContract.DocInfoListEntry._ID},
+                DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME + " = ?",
+                new String[] {docName}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+
+    /**
+     * @return name, image and text of each page of the doc, in position order
+     */
+    private static List<String[]> queryPages(SQLiteDatabase db, long docId) {
+        Cursor cursor = db.query(DocInfoContract.PageEntry.TABLE_NAME,
+                new String[] {
+                        DocInfoContract.PageEntry.COLUMN_PAGE_NAME,
+                        DocInfoContract.PageEntry.COLUMN_PAGE_IMAGE,
+                        DocInfoContract.PageEntry.COLUMN_PAGE_TEXT,
+                        DocInfoContract.PageEntry.COLUMN_PAGE_POSITION
+                },
+                DocInfoContract.PageEntry.COLUMN_DOC_ID + " = ?",
+                new String[] {String.valueOf(docId)},
+                null, null, DocInfoContract.PageEntry.COLUMN_PAGE_POSITION);
+        List<String[]> pages = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                assertEquals(pages.size(), cursor.getInt(3));
+                pages.add(new String[] {
+                        cursor.getString(0), cursor.getString(1), cursor.getString(2)});
+            }
+        } finally {
+            cursor.close();
+        }
+        return pages;
+    }
+
+
+    private static List<Long> queryPageIds(SQLiteDatabase db, long docId) {
+        return readIds(db.query(DocInfoContract.PageEntry.TABLE_NAME,
+                new String[] {DocInfoContract.PageEntry._ID},
+                DocInfoContract.PageEntry.COLUMN_DOC_ID + " = ?",
+                new String[] {String.valueOf(docId)},
+                null, null, DocInfoContract.PageEntry.COLUMN_PAGE_POSITION));
+    }
+
+
+    private static List<Long> searchPageIds(SQLiteDatabase db, String word) {
+        return readIds(db.rawQuery("SELECT docid FROM " +
+                DocInfoContract.SearchEntry.TABLE_NAME + " WHERE " +
+                DocInfoContract.SearchEntry.TABLE_NAME + " MATCH ? ORDER BY docid",
+                new String[] {word}));
+    }
+
+
+    private static List<Long> readIds(Cursor cursor) {
+        List<Long> ids = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+
+    private static void assertPage(String[] page, String name, String image, String text) {
+        assertEquals(name, page[0]);
+        assertEquals(image, page[1]);
+        assertEquals(text, page[2]);
+    }
+}
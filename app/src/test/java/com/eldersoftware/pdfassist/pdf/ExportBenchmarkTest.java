@@ -0,0 +1,269 @@
+package com.eldersoftware.pdfassist.pdf;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.eldersoftware.pdfassist.data.DocInfoContract;
+import com.eldersoftware.pdfassist.data.DocInfoProvider;
+import com.eldersoftware.pdfassist.pdfcore.ExportMonitor;
+import com.eldersoftware.pdfassist.pdfcore.TextLayoutCache;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * End to end export benchmark, run on the JVM with Robolectric. Synthetic docs are added to the
+ * DocInfoProvider and exported with the DocExporter, the same path CreateDocAsync runs, and the
+ * pages per second, wall time, peak heap and output size of each run are appended to a CSV.
+ *
+ * Skipped unless asked for, as it takes minutes:
+ * ./gradlew :app:testDebugUnitTest --tests '*ExportBenchmarkTest' -PexportBenchmark=true
+ *
+ * Options, each passed as a -P property:
+ * exportBenchmark.pages - comma separated page counts, default 10,100
+ * exportBenchmark.textLength - characters of text on each page, default 500
+ * exportBenchmark.imageSize - WIDTHxHEIGHT of each page image, 0x0 for no images, default 1600x1200
+ * exportBenchmark.runs - timed runs of each page count, after one warm up run, default 3
+ * exportBenchmark.mode - streaming or inMemory, default streaming as Robolectric's PdfDocument
+ * doesn't write real page content
+ * exportBenchmark.output - CSV file, default build/reports/exportBenchmark/export_benchmark.csv
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ExportBenchmarkTest {
+
+    private static final String CSV_HEADER = "time,mode,pages,textLength,imageWidth," +
+            "imageHeight,run,wallMillis,pagesPerSecond,peakHeapBytes,outputBytes";
+
+    private Context mContext;
+    private File mImageDirectory;
+    private int mDocCount;
+
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("Run with -PexportBenchmark=true", Boolean.getBoolean("exportBenchmark"));
+
+        Robolectric.setupContentProvider(DocInfoProvider.class, DocInfoContract.AUTHORITY);
+        mContext = ApplicationProvider.getApplicationContext();
+        mImageDirectory = new File(mContext.getFilesDir(), "benchmarkImages");
+        assertTrue(mImageDirectory.isDirectory() || mImageDirectory.mkdirs());
+    }
+
+
+    @Test
+    public void exportThroughput() throws IOException {
+        int textLength = Integer.parseInt(System.getProperty("exportBenchmark.textLength", "500"));
+        int runs = Integer.parseInt(System.getProperty("exportBenchmark.runs", "3"));
+        String[] imageSize = System.getProperty("exportBenchmark.imageSize", "1600x1200")
+                .toLowerCase(Locale.ENGLISH).split("x");
+        int imageWidth = Integer.parseInt(imageSize[0]);
+        int imageHeight = Integer.parseInt(imageSize[1]);
+        boolean inMemory = "inMemory".equalsIgnoreCase(
+                System.getProperty("exportBenchmark.mode", "streaming"));
+        int exportMode = inMemory ? DocExporter.EXPORT_MODE_IN_MEMORY
+                : DocExporter.EXPORT_MODE_STREAMING;
+        File csvFile = new File(System.getProperty("exportBenchmark.output",
+                "build/reports/exportBenchmark/export_benchmark.csv"));
+
+        String text = createText(textLength);
+        File imageFile = imageWidth > 0 && imageHeight > 0
+                ? createImage(imageWidth, imageHeight) : null;
+
+        for (String pages : System.getProperty("exportBenchmark.pages", "10,100").split(",")) {
+            int pageCount = Integer.parseInt(pages.trim());
+
+            // The first run loads the classes and fills the JIT, it isn't recorded
+            exportOnce(seedDoc(pageCount, text, imageFile), exportMode);
+
+            for (int run = 1; run <= runs; run++) {
+                Uri docNameUri = seedDoc(pageCount, text, imageFile);
+                resetCaches();
+                resetPeakHeap();
+
+                long start = System.nanoTime();
+                File pdfFile = exportOnce(docNameUri, exportMode);
+                long wallNanos = System.nanoTime() - start;
+
+                long wallMillis = wallNanos / 1000000;
+                // Output pages include the title page
+                double pagesPerSecond = (pageCount + 1) / (wallNanos / 1e9);
+                appendRow(csvFile, String.format(Locale.ENGLISH,
+                        "%d,%s,%d,%d,%d,%d,%d,%d,%.2f,%d,%d", System.currentTimeMillis(),
+                        inMemory ? "inMemory" : "streaming", pageCount, textLength, imageWidth,
+                        imageHeight, run, wallMillis, pagesPerSecond, getPeakHeap(),
+                        pdfFile.length()));
+                System.out.println(String.format(Locale.ENGLISH,
+                        "Export benchmark: %d pages, run %d, %d ms, %.2f pages/s, %d bytes",
+                        pageCount, run, wallMillis, pagesPerSecond, pdfFile.length()));
+
+                pdfFile.delete();
+            }
+        }
+    }
+
+
+    private File exportOnce(Uri docNameUri, int exportMode) throws IOException {
+        File pdfFile = new DocExporter(mContext).export(docNameUri, exportMode, new ExportMonitor());
+        assertTrue(pdfFile.length() > 0);
+        return pdfFile;
+    }
+
+
+    /**
+     * Adds a new doc, every run exports a different doc so the last export is never reused
+     * @param pageCount - number of pages
+     * @param text - text of every page
+     * @param imageFile - image of every page, null for none
+     * @return doc name uri
+     */
+    private Uri seedDoc(int pageCount, String text, File imageFile) {
+        String docName = "Benchmark Doc " + (++mDocCount);
+        ContentValues docCV = new ContentValues();
+        docCV.put(DocInfoContract.DocInfoListEntry.COLUMN_DOC_NAME, docName);
+        mContext.getContentResolver().insert(DocInfoContract.DocInfoListEntry.DOC_INFO_URI, docCV);
+
+        Uri docNameUri = DocInfoContract.DocInfoListEntry.DOC_INFO_URI.buildUpon()
+                .appendPath(docName).build();
+        Uri pagesUri = DocInfoContract.PageEntry.buildDocPagesUri(docNameUri);
+        for (int i = 0; i < pageCount; i++) {
+            ContentValues pageCV = new ContentValues();
+            pageCV.put(DocInfoContract.PageEntry.COLUMN_PAGE_NAME, "Page " + (i + 1));
+            pageCV.put(DocInfoContract.PageEntry.COLUMN_PAGE_TEXT, text);
+            if (imageFile != null) {
+                pageCV.put(DocInfoContract.PageEntry.COLUMN_PAGE_IMAGE,
+                        imageFile.getAbsolutePath());
+            }
+            mContext.getContentResolver().insert(pagesUri, pageCV);
+        }
+        return docNameUri;
+    }
+
+
+    /**
+     * Cached pages and text layouts from the earlier runs would hide the cost being measured
+     */
+    private void resetCaches() {
+        File[] cachedPages = new File(mContext.getCacheDir(), "pageRenderCache").listFiles();
+        if (cachedPages != null) {
+            for (File cachedPage : cachedPages) {
+                cachedPage.delete();
+            }
+        }
+        TextLayoutCache.getShared().clear();
+    }
+
+
+    private static void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+
+    /**
+     * @return sum of the peak use of each heap pool since the last reset, the pools peak at
+     * different times so this is an upper bound
+     */
+    private static long getPeakHeap() {
+        long peakBytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakBytes += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peakBytes;
+    }
+
+
+    private static String createText(int length) {
+        String[] words = {"export", "page", "document", "layout", "image", "text", "the", "a",
+                "benchmark", "stream"};
+        Random random = new Random(length);
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            text.append(words[random.nextInt(words.length)]);
+            // Breaks up the text into paragraphs now and then
+            text.append(random.nextInt(20) == 0 ? "\n" : " ");
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+
+
+    /**
+     * Writes a noisy JPEG, so it compresses about as well as a photo of a page
+     */
+    private File createImage(int width, int height) throws IOException {
+        File imageFile = new File(mImageDirectory, width + "x" + height + ".jpg");
+        if (imageFile.isFile()) {
+            return imageFile;
+        }
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        Random random = new Random(width * 31 + height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int grey = 200 + random.nextInt(56);
+                image.setRGB(x, y, (grey << 16) | (grey << 8) | grey);
+            }
+        }
+
+        if (!ImageIO.write(image, "jpg", imageFile)) {
+            throw new IOException("No JPEG writer for: " + imageFile);
+        }
+        return imageFile;
+    }
+
+
+    private static void appendRow(File csvFile, String row) throws IOException {
+        File directory = csvFile.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Couldn't create directory: " + directory);
+        }
+
+        boolean newFile = !csvFile.isFile();
+        Writer writer = new FileWriter(csvFile, true);
+        try {
+            if (newFile) {
+                writer.write(CSV_HEADER + "\n");
+            }
+            writer.write(row + "\n");
+        } finally {
+            writer.close();
+        }
+    }
+}
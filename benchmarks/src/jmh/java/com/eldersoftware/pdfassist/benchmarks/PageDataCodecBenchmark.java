@@ -0,0 +1,64 @@
+package com.eldersoftware.pdfassist.benchmarks;
+
+import com.eldersoftware.pdfassist.pdfcore.PageDataCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The legacy "_split_" page columns, the cost of every page edit before pages had their own
+ * table grew with the page count as the whole column was split and joined again.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+public class PageDataCodecBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int pageCount;
+
+    private String mJoinedColumn;
+    private String[] mPageData;
+    private int mMiddlePage;
+
+
+    @Setup
+    public void setUp() {
+        mPageData = new String[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            // Typical image path column, the longest of the three
+            mPageData[i] = "/storage/emulated/0/Android Pdf Tools/Doc/Images/IMG_" + i + ".jpg";
+        }
+        mJoinedColumn = PageDataCodec.join(mPageData);
+        mMiddlePage = pageCount / 2;
+    }
+
+
+    @Benchmark
+    public String[] split() {
+        return PageDataCodec.split(mJoinedColumn);
+    }
+
+
+    @Benchmark
+    public String replaceAndJoin() {
+        // Replaces with the same value, so every invocation joins the same data
+        return PageDataCodec.replaceAndJoin(mPageData, mPageData[mMiddlePage], mMiddlePage);
+    }
+
+
+    @Benchmark
+    public String removeAndJoin() {
+        return PageDataCodec.removeAndJoin(mPageData, mMiddlePage);
+    }
+}
@@ -0,0 +1,86 @@
+package com.eldersoftware.pdfassist.benchmarks;
+
+import com.eldersoftware.pdfassist.pdfcore.Box;
+import com.eldersoftware.pdfassist.pdfcore.DocPage;
+import com.eldersoftware.pdfassist.pdfcore.HelveticaMetrics;
+import com.eldersoftware.pdfassist.pdfcore.PageLayout;
+import com.eldersoftware.pdfassist.pdfcore.PageLayoutEngine;
+import com.eldersoftware.pdfassist.pdfcore.TextLayoutCache;
+import com.eldersoftware.pdfassist.pdfcore.TextLayoutEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Image fit math and content page layout. Layout is measured with the text layout cache off,
+ * the cost of a page seen for the first time, and with a warm cache, the cost of a re-export.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+public class PageLayoutBenchmark {
+
+    // Characters of page text
+    @Param({"100", "1000", "10000"})
+    public int textLength;
+
+    private static final Box IMAGE_BOUNDS = new Box(PageLayoutEngine.MARGIN_LEFT, 150,
+            PageLayoutEngine.MARGIN_RIGHT, 150 + PageLayoutEngine.IMAGE_HEIGHT);
+
+    private PageLayoutEngine mUncachedEngine;
+    private PageLayoutEngine mCachedEngine;
+    private DocPage mPage;
+    private float mImageWidth;
+
+
+    @Setup
+    public void setUp() {
+        HelveticaMetrics metrics = new HelveticaMetrics();
+        mUncachedEngine = new PageLayoutEngine(new TextLayoutEngine(metrics, null));
+        mCachedEngine = new PageLayoutEngine(new TextLayoutEngine(metrics,
+                new TextLayoutCache(64, 1 << 20)));
+
+        String words = "The quick brown fox jumps over the lazy dog. ";
+        StringBuilder text = new StringBuilder(textLength);
+        while (text.length() < textLength) {
+            text.append(words);
+        }
+        text.setLength(textLength);
+        mPage = new DocPage("Benchmark page title", "/sdcard/image.jpg", text.toString());
+        mImageWidth = 4032;
+    }
+
+
+    @Benchmark
+    public Box fitLandscapeImage() {
+        return PageLayoutEngine.fitImage(IMAGE_BOUNDS, mImageWidth, 3024);
+    }
+
+
+    @Benchmark
+    public Box fitPortraitImage() {
+        return PageLayoutEngine.fitImage(IMAGE_BOUNDS, 3024, mImageWidth);
+    }
+
+
+    @Benchmark
+    public PageLayout layoutContentPageUncached() {
+        return mUncachedEngine.layoutContentPage(mPage, mImageWidth, 3024);
+    }
+
+
+    @Benchmark
+    public PageLayout layoutContentPageCached() {
+        return mCachedEngine.layoutContentPage(mPage, mImageWidth, 3024);
+    }
+}
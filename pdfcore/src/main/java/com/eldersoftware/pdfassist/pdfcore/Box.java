@@ -0,0 +1,70 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+
+/**
+ * Rectangle in page coordinates, with the origin at the top left of the page like the canvas.
+ * Stands in for RectF so the layout can be worked out off-device.
+ */
+public class Box {
+    public final float left;
+    public final float top;
+    public final float right;
+    public final float bottom;
+
+
+    public Box(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+
+    public float width() {
+        return right - left;
+    }
+
+
+    public float height() {
+        return bottom - top;
+    }
+
+
+    public float centerX() {
+        return (left + right) / 2;
+    }
+
+
+    public float centerY() {
+        return (top + bottom) / 2;
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Box)) {
+            return false;
+        }
+        Box box = (Box) o;
+        return left == box.left && top == box.top && right == box.right && bottom == box.bottom;
+    }
+
+
+    @Override
+    public int hashCode() {
+        int result = Float.floatToIntBits(left);
+        result = 31 * result + Float.floatToIntBits(top);
+        result = 31 * result + Float.floatToIntBits(right);
+        result = 31 * result + Float.floatToIntBits(bottom);
+        return result;
+    }
+
+
+    @Override
+    public String toString() {
+        return "Box(" + left + ", " + top + ", " + right + ", " + bottom + ")";
+    }
+}
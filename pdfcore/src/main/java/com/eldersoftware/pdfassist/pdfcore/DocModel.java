@@ -0,0 +1,40 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * A doc as it is exported, the title page followed by one page per DocPage
+ */
+public class DocModel {
+    private String mTitle;
+    private List<DocPage> mPages;
+
+
+    /**
+     * Constructor
+     * @param title - doc title, drawn on the title page
+     * @param pages - content pages in order
+     */
+    public DocModel(String title, List<DocPage> pages) {
+        mTitle = title;
+        mPages = Collections.unmodifiableList(new ArrayList<>(pages));
+    }
+
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+
+    public List<DocPage> getPages() {
+        return mPages;
+    }
+
+
+    public int getPageCount() {
+        return mPages.size();
+    }
+}
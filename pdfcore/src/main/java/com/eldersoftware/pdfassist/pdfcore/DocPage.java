@@ -0,0 +1,49 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+
+/**
+ * Content of a single page of a doc. Any of the parts may be null when the page doesn't have it.
+ */
+public class DocPage {
+    private String mTitle;
+    private String mImagePath;
+    private String mText;
+
+
+    /**
+     * Constructor
+     * @param title - page title
+     * @param imagePath - path of the image file
+     * @param text - body text
+     */
+    public DocPage(String title, String imagePath, String text) {
+        mTitle = title;
+        mImagePath = imagePath;
+        mText = text;
+    }
+
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+
+    public String getImagePath() {
+        return mImagePath;
+    }
+
+
+    public String getText() {
+        return mText;
+    }
+
+
+    public boolean hasImage() {
+        return mImagePath != null;
+    }
+
+
+    public boolean hasText() {
+        return mText != null;
+    }
+}
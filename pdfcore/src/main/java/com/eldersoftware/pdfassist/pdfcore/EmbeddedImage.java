@@ -0,0 +1,153 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+
+
+/**
+ * A page image ready to be written into the PDF, either a JPEG file that is copied as it is or
+ * JPEG data that has already been encoded. The rotation is applied by the placement matrix.
+ */
+public class EmbeddedImage {
+    // Kinds written by writeExternal
+    private static final int KIND_FILE = 0;
+    private static final int KIND_DATA = 1;
+
+    private File mFile;
+    private JpegInfo mJpegInfo;
+    private byte[] mData;
+    private int mWidth;
+    private int mHeight;
+    private int mRotation;
+
+
+    private EmbeddedImage(File file, JpegInfo jpegInfo, byte[] data, int width, int height,
+                          int rotation) {
+        mFile = file;
+        mJpegInfo = jpegInfo;
+        mData = data;
+        mWidth = width;
+        mHeight = height;
+        mRotation = rotation;
+    }
+
+
+    /**
+     * @param file - JPEG file
+     * @param jpegInfo - frame header read from the file
+     * @param rotation - clockwise rotation in degrees, 0, 90, 180 or 270
+     * @return EmbeddedImage that copies the file without decoding it
+     */
+    public static EmbeddedImage fromJpegFile(File file, JpegInfo jpegInfo, int rotation) {
+        return new EmbeddedImage(file, jpegInfo, null, jpegInfo.getWidth(), jpegInfo.getHeight(),
+                rotation);
+    }
+
+
+    /**
+     * @param data - encoded RGB JPEG data
+     * @param width - image width in pixels
+     * @param height - image height in pixels
+     * @param rotation - clockwise rotation in degrees, 0, 90, 180 or 270
+     * @return EmbeddedImage for the data
+     */
+    public static EmbeddedImage fromJpegData(byte[] data, int width, int height, int rotation) {
+        return new EmbeddedImage(null, null, data, width, height, rotation);
+    }
+
+
+    public int getRotation() {
+        return mRotation;
+    }
+
+
+    /**
+     * @return width of the image once it has been rotated
+     */
+    public float getDisplayWidth() {
+        return isSideways(mRotation) ? mHeight : mWidth;
+    }
+
+
+    /**
+     * @return height of the image once it has been rotated
+     */
+    public float getDisplayHeight() {
+        return isSideways(mRotation) ? mWidth : mHeight;
+    }
+
+
+    /**
+     * Writes the image as an XObject
+     * @param writer - streaming writer
+     * @return object number used to reference the image from a page
+     * @throws IOException thrown when the image can't be read or written
+     */
+    public int writeTo(PdfStreamWriter writer) throws IOException {
+        if (mFile != null) {
+            return writer.writeJpegImage(mFile, mJpegInfo);
+        }
+        return writer.writeJpegImage(mData, mWidth, mHeight);
+    }
+
+
+    /**
+     * @param rotation - rotation in degrees
+     * @return true if the rotation swaps the width and height
+     */
+    public static boolean isSideways(int rotation) {
+        return rotation == 90 || rotation == 270;
+    }
+
+
+    /**
+     * Saves the image for the PageRenderCache. Files are saved by path along with their length,
+     * encoded data is saved in full
+     * @param out - cache entry output
+     * @throws IOException thrown when the entry can't be written
+     */
+    void writeExternal(DataOutput out) throws IOException {
+        out.writeInt(mRotation);
+        if (mFile != null) {
+            out.writeInt(KIND_FILE);
+            out.writeUTF(mFile.getPath());
+            out.writeLong(mFile.length());
+            out.writeInt(mJpegInfo.getWidth());
+            out.writeInt(mJpegInfo.getHeight());
+            out.writeInt(mJpegInfo.getComponents());
+        } else {
+            out.writeInt(KIND_DATA);
+            out.writeInt(mWidth);
+            out.writeInt(mHeight);
+            out.writeInt(mData.length);
+            out.write(mData);
+        }
+    }
+
+
+    /**
+     * Reads an image saved by writeExternal
+     * @param in - cache entry input
+     * @return EmbeddedImage, or null if the file it refers to has changed size since
+     * @throws IOException thrown when the entry can't be read
+     */
+    static EmbeddedImage readExternal(DataInput in) throws IOException {
+        int rotation = in.readInt();
+        int kind = in.readInt();
+        if (kind == KIND_FILE) {
+            File file = new File(in.readUTF());
+            long length = in.readLong();
+            JpegInfo jpegInfo = new JpegInfo(in.readInt(), in.readInt(), in.readInt());
+            return file.length() == length ? fromJpegFile(file, jpegInfo, rotation) : null;
+        } else if (kind == KIND_DATA) {
+            int width = in.readInt();
+            int height = in.readInt();
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            return fromJpegData(data, width, height, rotation);
+        }
+        throw new IOException("Unknown image kind " + kind);
+    }
+}
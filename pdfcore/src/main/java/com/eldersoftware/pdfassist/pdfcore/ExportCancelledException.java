@@ -0,0 +1,17 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import java.io.IOException;
+
+
+/**
+ * Thrown by an export that was cancelled through its ExportMonitor. The export stops between
+ * pages, the caller deletes the partly written file.
+ */
+public class ExportCancelledException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+
+    public ExportCancelledException() {
+        super("Export cancelled");
+    }
+}
@@ -0,0 +1,93 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+
+/**
+ * Follows a single export. The export reports each finished page and checks for cancellation
+ * between pages, while another thread may cancel it at any time.
+ */
+public class ExportMonitor {
+    private ExportListener mListener;
+    private volatile boolean mCancelled;
+
+    private ExportTimings mTimings = new ExportTimings(0);
+    private long mStartNanos;
+
+
+    /**
+     * Listener for the progress of an export, called on the export thread
+     */
+    public interface ExportListener {
+        /**
+         * @param pageIndex - index of the finished output page, 0 is the title page
+         * @param totalPages - number of output pages, including the title page
+         * @param bytesWritten - bytes written to the file so far, 0 for exports that are
+         *                     written out once every page is finished
+         * @param elapsedMillis - time since the export started
+         */
+        void onPageExported(int pageIndex, int totalPages, long bytesWritten, long elapsedMillis);
+    }
+
+
+    public ExportMonitor() {
+        this(null);
+    }
+
+
+    /**
+     * Constructor
+     * @param listener - progress listener, null if progress isn't needed
+     */
+    public ExportMonitor(ExportListener listener) {
+        mListener = listener;
+    }
+
+
+    /**
+     * Called by the export once it knows how many pages it will write
+     * @param totalPages - number of output pages, including the title page
+     */
+    public void start(int totalPages) {
+        mTimings = new ExportTimings(totalPages);
+        mStartNanos = System.nanoTime();
+    }
+
+
+    /**
+     * Asks the export to stop, it stops before starting its next page
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+
+    /**
+     * @throws ExportCancelledException thrown if the export has been cancelled
+     */
+    public void throwIfCancelled() throws ExportCancelledException {
+        if (mCancelled) {
+            throw new ExportCancelledException();
+        }
+    }
+
+
+    public ExportTimings getTimings() {
+        return mTimings;
+    }
+
+
+    /**
+     * @param pageIndex - index of the finished output page
+     * @param bytesWritten - bytes written to the file so far
+     */
+    public void pageExported(int pageIndex, long bytesWritten) {
+        if (mListener != null) {
+            mListener.onPageExported(pageIndex, mTimings.getPageCount(), bytesWritten,
+                    (System.nanoTime() - mStartNanos) / 1000000);
+        }
+    }
+}
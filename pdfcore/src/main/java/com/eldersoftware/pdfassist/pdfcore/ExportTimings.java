@@ -0,0 +1,112 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import java.util.Locale;
+
+
+/**
+ * Time spent on each output page of an export, split into the phases of the pipeline. Page 0
+ * is the title page. Times are added from the export thread only.
+ */
+public class ExportTimings {
+    // Reading the page rows from the provider. The pages are read with one query, so its time
+    // is shared evenly across the pages
+    public static final int PHASE_QUERY = 0;
+    // Getting the page image ready, for prefetched images the time spent waiting for them
+    public static final int PHASE_DECODE = 1;
+    public static final int PHASE_LAYOUT = 2;
+    public static final int PHASE_DRAW = 3;
+    public static final int PHASE_WRITE = 4;
+    public static final int PHASE_COUNT = 5;
+
+    private static final String[] PHASE_NAMES = {"query", "decode", "layout", "draw", "write"};
+
+    private long[][] mPageNanos;
+    // Writing that isn't done per page, the in memory document is written out once at the end
+    private long mFinishNanos;
+
+
+    /**
+     * Constructor
+     * @param pageCount - number of output pages, including the title page
+     */
+    public ExportTimings(int pageCount) {
+        mPageNanos = new long[pageCount][PHASE_COUNT];
+    }
+
+
+    public int getPageCount() {
+        return mPageNanos.length;
+    }
+
+
+    /**
+     * @param pageIndex - output page index
+     * @param phase - PHASE_ constant
+     * @param nanos - time spent
+     */
+    public void add(int pageIndex, int phase, long nanos) {
+        mPageNanos[pageIndex][phase] += nanos;
+    }
+
+
+    /**
+     * @param nanos - time taken by the page query, shared evenly across the pages
+     */
+    public void setQueryNanos(long nanos) {
+        if (mPageNanos.length == 0) {
+            return;
+        }
+        long pageNanos = nanos / mPageNanos.length;
+        for (long[] page : mPageNanos) {
+            page[PHASE_QUERY] = pageNanos;
+        }
+    }
+
+
+    public void addFinishNanos(long nanos) {
+        mFinishNanos += nanos;
+    }
+
+
+    public long getNanos(int pageIndex, int phase) {
+        return mPageNanos[pageIndex][phase];
+    }
+
+
+    public long getFinishNanos() {
+        return mFinishNanos;
+    }
+
+
+    /**
+     * @param phase - PHASE_ constant
+     * @return time spent in the phase over every page
+     */
+    public long getTotalNanos(int phase) {
+        long total = 0;
+        for (long[] page : mPageNanos) {
+            total += page[phase];
+        }
+        return total;
+    }
+
+
+    public static String getPhaseName(int phase) {
+        return PHASE_NAMES[phase];
+    }
+
+
+    /**
+     * @return total milliseconds for each phase, e.g. "query=3ms decode=120ms ..."
+     */
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder();
+        for (int phase = 0; phase < PHASE_COUNT; phase++) {
+            summary.append(PHASE_NAMES[phase]).append('=')
+                    .append(getTotalNanos(phase) / 1000000).append("ms ");
+        }
+        return summary.append(String.format(Locale.ENGLISH, "finish=%dms pages=%d",
+                mFinishNanos / 1000000, mPageNanos.length)).toString();
+    }
+}
@@ -0,0 +1,85 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+
+/**
+ * Character widths of the standard Helvetica font, from its AFM file. Streamed PDFs use
+ * Helvetica, so measuring with these metrics puts the line breaks where the PDF viewer draws
+ * them.
+ */
+public class HelveticaMetrics implements TextMeasurer {
+    // AFM units are 1/1000 of the font size
+    private static final float UNITS_PER_EM = 1000f;
+
+    private static final int ASCENDER = 718;
+    private static final int DESCENDER = 207;
+
+    private static final int FIRST_CHAR = 32;
+
+    // Widths for ' ' to '~'
+    private static final int[] WIDTHS = {
+            278, 278, 355, 556, 556, 889, 667, 191, 333, 333, 389, 584, 278, 333, 278, 278,
+            556, 556, 556, 556, 556, 556, 556, 556, 556, 556, 278, 278, 584, 584, 584, 556,
+            1015, 667, 667, 722, 722, 667, 611, 778, 722, 278, 500, 667, 556, 833, 722, 778,
+            667, 778, 722, 667, 611, 722, 667, 944, 667, 667, 611, 278, 278, 278, 469, 556,
+            333, 556, 556, 500, 556, 556, 278, 556, 556, 222, 222, 500, 222, 833, 556, 556,
+            556, 556, 333, 500, 278, 556, 500, 722, 500, 500, 500, 334, 260, 334, 584
+    };
+    // Widths for the WinAnsi codes 0x80 to 0xFF, 0 where the code is unused
+    private static final int HIGH_FIRST_CHAR = 0x80;
+    private static final int[] HIGH_WIDTHS = {
+            556, 0, 222, 556, 333, 1000, 556, 556, 333, 1000, 667, 333, 1000, 0, 611, 0,
+            0, 222, 222, 333, 333, 350, 556, 1000, 333, 1000, 500, 333, 944, 0, 500, 667,
+            278, 333, 556, 556, 556, 556, 260, 556, 333, 737, 370, 556, 584, 333, 737, 333,
+            400, 584, 333, 333, 333, 556, 537, 278, 333, 333, 365, 556, 834, 834, 834, 611,
+            667, 667, 667, 667, 667, 667, 1000, 722, 667, 667, 667, 667, 278, 278, 278, 278,
+            722, 722, 778, 778, 778, 778, 778, 584, 778, 722, 722, 722, 722, 667, 667, 611,
+            556, 556, 556, 556, 556, 556, 889, 500, 556, 556, 556, 556, 278, 278, 278, 278,
+            556, 556, 556, 556, 556, 556, 556, 584, 611, 556, 556, 556, 556, 500, 556, 500
+    };
+    // Width of the '?' drawn for characters Helvetica can't show
+    private static final int DEFAULT_WIDTH = 556;
+
+
+    @Override
+    public float measureText(CharSequence text, int start, int end, float fontSize) {
+        int units = 0;
+        for (int i = start; i < end; i++) {
+            units += getCharWidth(text.charAt(i));
+        }
+        return units * fontSize / UNITS_PER_EM;
+    }
+
+
+    @Override
+    public float getAscent(float fontSize) {
+        return ASCENDER * fontSize / UNITS_PER_EM;
+    }
+
+
+    @Override
+    public float getDescent(float fontSize) {
+        return DESCENDER * fontSize / UNITS_PER_EM;
+    }
+
+
+    @Override
+    public String getFontKey() {
+        return "Helvetica";
+    }
+
+
+    private static int getCharWidth(char c) {
+        if (c == '\t') {
+            return WIDTHS[0]; // Drawn as a space
+        } else if (c == '\r' || c == '\n') {
+            return 0; // Not drawn
+        }
+        int code = WinAnsiEncoding.encode(c);
+        if (code >= HIGH_FIRST_CHAR) {
+            return HIGH_WIDTHS[code - HIGH_FIRST_CHAR];
+        } else if (code != -1) {
+            return WIDTHS[code - FIRST_CHAR];
+        }
+        return DEFAULT_WIDTH;
+    }
+}
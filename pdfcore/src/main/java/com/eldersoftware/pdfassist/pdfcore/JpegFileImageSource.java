@@ -0,0 +1,21 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import java.io.File;
+
+
+/**
+ * Embeds page images that are JPEG files as they are, other images are left out. Used where
+ * there is nothing to decode images with, such as on a build server.
+ */
+public class JpegFileImageSource implements PageImageSource {
+
+    @Override
+    public EmbeddedImage getImage(int pageIndex, String imagePath) {
+        File file = new File(imagePath);
+        JpegInfo jpegInfo = JpegInfo.read(file);
+        if (jpegInfo == null) {
+            return null;
+        }
+        return EmbeddedImage.fromJpegFile(file, jpegInfo, 0);
+    }
+}
@@ -0,0 +1,130 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+
+/**
+ * Reads the size and colour components of a JPEG from its frame header, without decoding the
+ * image. Used to embed camera JPEGs into the PDF as they are.
+ */
+public class JpegInfo {
+    private static final int MARKER_PREFIX = 0xFF;
+    private static final int MARKER_START_OF_IMAGE = 0xD8;
+    private static final int MARKER_START_OF_SCAN = 0xDA;
+
+    // Baseline, extended sequential and progressive huffman frames, the ones DCTDecode supports
+    private static final int MARKER_SOF_BASELINE = 0xC0;
+    private static final int MARKER_SOF_EXTENDED = 0xC1;
+    private static final int MARKER_SOF_PROGRESSIVE = 0xC2;
+
+    private int mWidth;
+    private int mHeight;
+    private int mComponents;
+
+
+    JpegInfo(int width, int height, int components) {
+        mWidth = width;
+        mHeight = height;
+        mComponents = components;
+    }
+
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+
+    int getComponents() {
+        return mComponents;
+    }
+
+
+    /**
+     * @return PDF colour space for the number of components
+     */
+    public String getColorSpace() {
+        return mComponents == 1 ? "DeviceGray" : "DeviceRGB";
+    }
+
+
+    /**
+     * Reads the frame header of a JPEG file
+     * @param file - image file
+     * @return JpegInfo, or null if the file isn't a greyscale or RGB JPEG that can be embedded
+     */
+    public static JpegInfo read(File file) {
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readUnsignedByte() != MARKER_PREFIX ||
+                    input.readUnsignedByte() != MARKER_START_OF_IMAGE) {
+                return null;
+            }
+
+            while (true) {
+                // Markers can be padded with any number of 0xFF bytes
+                int marker = input.readUnsignedByte();
+                if (marker != MARKER_PREFIX) {
+                    return null;
+                }
+                while (marker == MARKER_PREFIX) {
+                    marker = input.readUnsignedByte();
+                }
+
+                if (marker == MARKER_START_OF_SCAN) {
+                    return null; // Image data reached without a frame header
+                }
+
+                int segmentLength = input.readUnsignedShort();
+                if (marker == MARKER_SOF_BASELINE || marker == MARKER_SOF_EXTENDED ||
+                        marker == MARKER_SOF_PROGRESSIVE) {
+                    input.readUnsignedByte(); // Sample precision
+                    int height = input.readUnsignedShort();
+                    int width = input.readUnsignedShort();
+                    int components = input.readUnsignedByte();
+
+                    if (width == 0 || height == 0 || (components != 1 && components != 3)) {
+                        return null;
+                    }
+                    return new JpegInfo(width, height, components);
+                }
+
+                skipFully(input, segmentLength - 2);
+            }
+        } catch (EOFException e) {
+            return null;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+
+    private static void skipFully(DataInputStream input, int byteCount) throws IOException {
+        int remaining = byteCount;
+        while (remaining > 0) {
+            int skipped = input.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+}
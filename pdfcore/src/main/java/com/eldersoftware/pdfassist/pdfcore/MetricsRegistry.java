@@ -0,0 +1,190 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * In-process registry of named counters and histograms, so export costs measured on real
+ * devices can be dumped and compared. Metrics are created on first use and may be updated from
+ * any thread. The registry is written out as JSON, with the metrics sorted by name.
+ */
+public class MetricsRegistry {
+    private Map<String, Counter> mCounters = new TreeMap<>();
+    private Map<String, Histogram> mHistograms = new TreeMap<>();
+
+
+    /**
+     * @param name - counter name
+     * @return the counter, created if it doesn't exist
+     */
+    public synchronized Counter counter(String name) {
+        Counter counter = mCounters.get(name);
+        if (counter == null) {
+            counter = new Counter();
+            mCounters.put(name, counter);
+        }
+        return counter;
+    }
+
+
+    /**
+     * @param name - histogram name
+     * @param bucketBounds - upper bounds of the buckets in ascending order, only used when the
+     *                     histogram is created. Values above the last bound go in an extra bucket
+     * @return the histogram, created if it doesn't exist
+     */
+    public synchronized Histogram histogram(String name, long[] bucketBounds) {
+        Histogram histogram = mHistograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram(bucketBounds);
+            mHistograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+
+    /**
+     * Removes every metric
+     */
+    public synchronized void clear() {
+        mCounters.clear();
+        mHistograms.clear();
+    }
+
+
+    /**
+     * @return {"counters": {name: value}, "histograms": {name: {count, sum, min, max,
+     * buckets: [{le, count}]}}}, the last bucket has no "le" bound
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{\"counters\":{");
+        boolean first = true;
+        for (Map.Entry<String, Counter> entry : mCounters.entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            appendString(json, entry.getKey());
+            json.append(':').append(entry.getValue().get());
+        }
+
+        json.append("},\"histograms\":{");
+        first = true;
+        for (Map.Entry<String, Histogram> entry : mHistograms.entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            appendString(json, entry.getKey());
+            json.append(':');
+            entry.getValue().appendJson(json);
+        }
+        return json.append("}}").toString();
+    }
+
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+
+    /**
+     * Count that only goes up
+     */
+    public static class Counter {
+        private long mValue;
+
+        public synchronized void increment() {
+            mValue++;
+        }
+
+        public synchronized void add(long amount) {
+            mValue += amount;
+        }
+
+        public synchronized long get() {
+            return mValue;
+        }
+    }
+
+
+    /**
+     * Distribution of recorded values in fixed buckets, with their count, sum, min and max
+     */
+    public static class Histogram {
+        private long[] mBucketBounds;
+        private long[] mBucketCounts;
+        private long mCount;
+        private long mSum;
+        private long mMin = Long.MAX_VALUE;
+        private long mMax = Long.MIN_VALUE;
+
+        Histogram(long[] bucketBounds) {
+            mBucketBounds = bucketBounds.clone();
+            mBucketCounts = new long[bucketBounds.length + 1];
+        }
+
+        public synchronized void record(long value) {
+            int bucket = 0;
+            while (bucket < mBucketBounds.length && value > mBucketBounds[bucket]) {
+                bucket++;
+            }
+            mBucketCounts[bucket]++;
+            mCount++;
+            mSum += value;
+            mMin = Math.min(mMin, value);
+            mMax = Math.max(mMax, value);
+        }
+
+        public synchronized long getCount() {
+            return mCount;
+        }
+
+        public synchronized long getSum() {
+            return mSum;
+        }
+
+        public synchronized long getMax() {
+            return mCount > 0 ? mMax : 0;
+        }
+
+        /**
+         * @param bucket - bucket index, the bucket after the last bound holds the larger values
+         * @return number of values recorded in the bucket
+         */
+        public synchronized long getBucketCount(int bucket) {
+            return mBucketCounts[bucket];
+        }
+
+        synchronized void appendJson(StringBuilder json) {
+            json.append("{\"count\":").append(mCount)
+                    .append(",\"sum\":").append(mSum)
+                    .append(",\"min\":").append(mCount > 0 ? mMin : 0)
+                    .append(",\"max\":").append(getMax())
+                    .append(",\"buckets\":[");
+            for (int i = 0; i < mBucketCounts.length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append('{');
+                if (i < mBucketBounds.length) {
+                    json.append("\"le\":").append(mBucketBounds[i]).append(',');
+                }
+                json.append("\"count\":").append(mBucketCounts[i]).append('}');
+            }
+            json.append("]}");
+        }
+    }
+}
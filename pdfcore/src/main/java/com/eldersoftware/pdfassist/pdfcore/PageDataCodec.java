@@ -0,0 +1,96 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import java.util.regex.Pattern;
+
+
+/**
+ * Codec for the legacy page columns, which held every page of a doc joined with "_split_".
+ * Only needed to read version 1 databases, kept free of Android so it can be benchmarked on
+ * the JVM.
+ */
+public class PageDataCodec {
+    public static final String SPLIT = "_split_";
+
+    // Compiled once, String.split compiles the delimiter on every call
+    private static final Pattern SPLIT_PATTERN = Pattern.compile(SPLIT, Pattern.LITERAL);
+
+
+    private PageDataCodec() {
+    }
+
+
+    /**
+     * Splits a legacy column the same way String.split did, so trailing empty pages are dropped
+     * @param columnData - joined column, null or empty for a doc without pages
+     * @return value for each page
+     */
+    public static String[] split(String columnData) {
+        if (columnData == null || columnData.isEmpty()) {
+            return new String[0];
+        }
+        return SPLIT_PATTERN.split(columnData);
+    }
+
+
+    /**
+     * @param pageData - value for each page, null values are joined as "null"
+     * @return the values joined with the SPLIT delimiter
+     */
+    public static String join(String[] pageData) {
+        return join(pageData, -1);
+    }
+
+
+    /**
+     * Changes the value of a single page and joins the values
+     * @param pageData - value for each page, the new value is stored in it
+     * @param newData - new value
+     * @param index - page index
+     * @return the values joined with the SPLIT delimiter
+     */
+    public static String replaceAndJoin(String[] pageData, String newData, int index) {
+        pageData[index] = newData;
+        return join(pageData, -1);
+    }
+
+
+    /**
+     * Joins the values without the given page
+     * @param pageData - value for each page, not changed
+     * @param index - page index to leave out
+     * @return the values joined with the SPLIT delimiter
+     */
+    public static String removeAndJoin(String[] pageData, int index) {
+        if (index < 0 || index >= pageData.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + pageData.length);
+        }
+        return join(pageData, index);
+    }
+
+
+    /**
+     * Joins into a builder sized up front, so long docs don't copy the joined string as it grows
+     * @param pageData - value for each page
+     * @param skipIndex - page index to leave out, -1 to join every page
+     */
+    private static String join(String[] pageData, int skipIndex) {
+        int length = 0;
+        for (String value : pageData) {
+            length += String.valueOf(value).length() + SPLIT.length();
+        }
+
+        StringBuilder joined = new StringBuilder(length);
+        boolean first = true;
+        for (int i = 0; i < pageData.length; i++) {
+            if (i == skipIndex) {
+                continue;
+            }
+            if (!first) {
+                joined.append(SPLIT);
+            }
+            first = false;
+            joined.append(pageData[i]);
+        }
+        return joined.toString();
+    }
+}
@@ -0,0 +1,20 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import java.io.IOException;
+
+
+/**
+ * Supplies the page images while a doc is streamed. Images are asked for in page order, and
+ * only for pages that have an image.
+ */
+public interface PageImageSource {
+
+    /**
+     * @param pageIndex - index of the content page
+     * @param imagePath - image path of the page
+     * @return image ready to embed, or null if it can't be read and the space is left blank
+     * @throws IOException thrown when reading the image fails in a way that should stop
+     * the export
+     */
+    EmbeddedImage getImage(int pageIndex, String imagePath) throws IOException;
+}
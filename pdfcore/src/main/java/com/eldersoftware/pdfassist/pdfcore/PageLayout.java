@@ -0,0 +1,62 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+
+/**
+ * Where each part of a page is placed, in page coordinates with the origin at the top left.
+ * The image and text are null when the page doesn't have them.
+ */
+public class PageLayout {
+    private TextLayout mTitle;
+    private float mTitleTop;
+    private Box mImageRect;
+    private TextLayout mText;
+    private float mTextTop;
+
+
+    PageLayout(TextLayout title, float titleTop, Box imageRect, TextLayout text, float textTop) {
+        mTitle = title;
+        mTitleTop = titleTop;
+        mImageRect = imageRect;
+        mText = text;
+        mTextTop = textTop;
+    }
+
+
+    public TextLayout getTitle() {
+        return mTitle;
+    }
+
+
+    public float getTitleLeft() {
+        return PageLayoutEngine.MARGIN_LEFT;
+    }
+
+
+    public float getTitleTop() {
+        return mTitleTop;
+    }
+
+
+    /**
+     * @return placement of the image once rotated, null if there is no image or it couldn't
+     * be read
+     */
+    public Box getImageRect() {
+        return mImageRect;
+    }
+
+
+    public TextLayout getText() {
+        return mText;
+    }
+
+
+    public float getTextLeft() {
+        return PageLayoutEngine.MARGIN_LEFT;
+    }
+
+
+    public float getTextTop() {
+        return mTextTop;
+    }
+}
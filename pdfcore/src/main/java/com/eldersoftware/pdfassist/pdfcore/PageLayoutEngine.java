@@ -0,0 +1,126 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+
+/**
+ * Places the title, image and text of each page. Every export uses this, so the in-memory and
+ * streamed PDFs have the same margins and spacing, only the text metrics differ by font.
+ */
+public class PageLayoutEngine {
+    // Margin and dimension constants
+    public static final int PAGE_WIDTH = 595;
+    public static final int PAGE_HEIGHT = 842;
+
+    public static final int MARGIN_LEFT = 60;
+    public static final int MARGIN_RIGHT = PAGE_WIDTH - 60;
+    public static final int MARGIN_TOP = 60;
+
+    public static final int IMAGE_HEIGHT = 300;
+    public static final int IMAGE_PADDING = 40;
+
+    public static final float TITLE_FONT_SIZE = 30;
+    public static final float TEXT_FONT_SIZE = 12;
+
+    private TextLayoutEngine mTextLayoutEngine;
+
+
+    /**
+     * Constructor, text layouts are kept in the shared cache
+     * @param measurer - measures text in the font the pages will be drawn with
+     */
+    public PageLayoutEngine(TextMeasurer measurer) {
+        this(new TextLayoutEngine(measurer));
+    }
+
+
+    /**
+     * Constructor
+     * @param textLayoutEngine - breaks the titles and text into lines
+     */
+    public PageLayoutEngine(TextLayoutEngine textLayoutEngine) {
+        mTextLayoutEngine = textLayoutEngine;
+    }
+
+
+    /**
+     * Lays out the title page with the doc name on it
+     * @param title - doc title
+     * @return PageLayout with only a title
+     */
+    public PageLayout layoutTitlePage(String title) {
+        return new PageLayout(layoutTitle(title), MARGIN_TOP, null, null, 0);
+    }
+
+
+    /**
+     * Lays out a content page. The title is centred at the top, the image is fitted into a
+     * fixed height box below it and the text follows the image
+     * @param page - page content
+     * @param imageWidth - width of the image once rotated, 0 if it couldn't be read
+     * @param imageHeight - height of the image once rotated, 0 if it couldn't be read
+     * @return PageLayout for the page, pages with an unreadable image leave the space blank
+     */
+    public PageLayout layoutContentPage(DocPage page, float imageWidth, float imageHeight) {
+        TextLayout title = layoutTitle(page.getTitle());
+        float currentPageYPos = MARGIN_TOP + title.getHeight() + IMAGE_PADDING;
+
+        Box imageRect = null;
+        if (page.hasImage()) {
+            if (imageWidth > 0 && imageHeight > 0) {
+                Box imageBounds = new Box(MARGIN_LEFT, currentPageYPos, MARGIN_RIGHT,
+                        currentPageYPos + IMAGE_HEIGHT);
+                imageRect = fitImage(imageBounds, imageWidth, imageHeight);
+            }
+            currentPageYPos += IMAGE_HEIGHT + IMAGE_PADDING;
+        }
+
+        TextLayout text = null;
+        if (page.hasText()) {
+            text = mTextLayoutEngine.layout(page.getText(), TEXT_FONT_SIZE,
+                    MARGIN_RIGHT - MARGIN_LEFT, TextLayout.ALIGN_NORMAL);
+        }
+
+        return new PageLayout(title, MARGIN_TOP, imageRect, text, currentPageYPos);
+    }
+
+
+    private TextLayout layoutTitle(String title) {
+        return mTextLayoutEngine.layout(title, TITLE_FONT_SIZE, MARGIN_RIGHT - MARGIN_LEFT,
+                TextLayout.ALIGN_CENTER);
+    }
+
+
+    /**
+     * Creates a rectangle centred in the container that has the aspect ratio of the image, so
+     * the image isn't stretched or distorted
+     * @param container - container for the image bounds
+     * @param width - width of the image to be contained, once rotated
+     * @param height - height of the image to be contained, once rotated
+     * @return Box with an aspect ratio that matches the image without being larger than the
+     * container
+     */
+    public static Box fitImage(Box container, float width, float height) {
+        // Retrieve the container dimensions
+        float containerWidth = container.width();
+        float containerHeight = container.height();
+
+        // Ratio of the container against the image width
+        float widthRatio = containerWidth / width;
+
+        // Get the final image container size
+        float imageContainerX = width * widthRatio;
+        float imageContainerY = height * widthRatio;
+
+        // In case the image is in a portrait orientation that is larger the container
+        if (imageContainerY > containerHeight) {
+            float heightRatio = containerHeight / imageContainerY;
+
+            imageContainerX = imageContainerX * heightRatio;
+            imageContainerY = imageContainerY * heightRatio;
+        }
+
+        float left = container.centerX() - (imageContainerX / 2);
+        float top = container.centerY() - (imageContainerY / 2);
+
+        return new Box(left, top, left + imageContainerX, top + imageContainerY);
+    }
+}
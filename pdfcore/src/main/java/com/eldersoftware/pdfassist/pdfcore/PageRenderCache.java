@@ -0,0 +1,303 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+
+/**
+ * On-disk cache of rendered content pages, so a re-export only lays out and encodes the pages
+ * that changed. Each entry holds a pages content stream and its image, keyed by a hash of the
+ * page title, text, image path and the image files size and modified time. JPEG files are kept
+ * by path, so their entries are small. The least recently used entries are deleted once the
+ * cache is over its size.
+ */
+public class PageRenderCache {
+    // Bump when the layout or content stream changes, so older entries are never spliced in
+    private static final int FORMAT_VERSION = 2;
+
+    private static final String ENTRY_SUFFIX = ".page";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private File mDirectory;
+    private long mMaxBytes;
+
+    private long mHits;
+    private long mMisses;
+
+
+    /**
+     * Constructor
+     * @param directory - directory the entries are kept in, created if needed
+     * @param maxBytes - size the cache is trimmed to
+     */
+    public PageRenderCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+
+    /**
+     * @param page - page content
+     * @return hash of everything that changes how the page is rendered
+     */
+    public String getKey(DocPage page) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        updateInt(digest, FORMAT_VERSION);
+        updateString(digest, page.getTitle());
+        updateString(digest, page.getText());
+        updateString(digest, page.getImagePath());
+        if (page.hasImage()) {
+            File imageFile = new File(page.getImagePath());
+            updateLong(digest, imageFile.lastModified());
+            updateLong(digest, imageFile.length());
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format(Locale.ENGLISH, "%02x", b & 0xFF));
+        }
+        return key.toString();
+    }
+
+
+    /**
+     * @param key - page key
+     * @return true if there is an entry for the key, without reading it
+     */
+    public boolean contains(String key) {
+        return getEntryFile(key).isFile();
+    }
+
+
+    /**
+     * Reads an entry and marks it as recently used
+     * @param key - page key
+     * @return cached page, or null if there isn't a usable entry
+     */
+    public CachedPage get(String key) {
+        File entryFile = getEntryFile(key);
+        if (!entryFile.isFile()) {
+            countMiss();
+            return null;
+        }
+
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(entryFile)));
+            if (input.readInt() != FORMAT_VERSION) {
+                countMiss();
+                return null;
+            }
+
+            byte[] content = new byte[input.readInt()];
+            input.readFully(content);
+
+            EmbeddedImage image = null;
+            if (input.readBoolean()) {
+                image = EmbeddedImage.readExternal(input);
+                if (image == null) {
+                    countMiss(); // The image file has changed since the page was cached
+                    return null;
+                }
+            }
+
+            entryFile.setLastModified(System.currentTimeMillis());
+            countHit();
+            return new CachedPage(content, image);
+        } catch (IOException e) {
+            // Partly written or corrupt entry, it is rendered again and replaced
+            countMiss();
+            return null;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+
+    /**
+     * Saves a rendered page. The entry is written to a temporary file and renamed, so other
+     * exports never read a partly written entry
+     * @param key - page key
+     * @param content - content stream of the page
+     * @param image - image drawn on the page, null if none
+     */
+    public void put(String key, byte[] content, EmbeddedImage image) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return;
+        }
+
+        File tempFile = null;
+        DataOutputStream output = null;
+        try {
+            tempFile = File.createTempFile(key, ".tmp", mDirectory);
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(content.length);
+            output.write(content);
+            output.writeBoolean(image != null);
+            if (image != null) {
+                image.writeExternal(output);
+            }
+            output.close();
+            output = null;
+
+            if (!tempFile.renameTo(getEntryFile(key))) {
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            // A page that can't be cached is rendered again on the next export
+            closeQuietly(output);
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+
+    /**
+     * Deletes the least recently used entries until the cache is within its size
+     */
+    public void trimToSize() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long totalBytes = 0;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+        if (totalBytes <= mMaxBytes) {
+            return;
+        }
+
+        // Times are read once, entries touched by another export mustn't reorder mid sort
+        final long[] lastModified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastModified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                long difference = lastModified[a] - lastModified[b];
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+
+        for (int index : order) {
+            if (totalBytes <= mMaxBytes) {
+                break;
+            }
+            long length = files[index].length();
+            if (files[index].delete()) {
+                totalBytes -= length;
+            }
+        }
+    }
+
+
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+
+    private synchronized void countHit() {
+        mHits++;
+    }
+
+
+    private synchronized void countMiss() {
+        mMisses++;
+    }
+
+
+    private File getEntryFile(String key) {
+        return new File(mDirectory, key + ENTRY_SUFFIX);
+    }
+
+
+    private static void updateString(MessageDigest digest, String value) {
+        // Length prefixed, so null and empty strings and neighbouring values can't collide
+        if (value == null) {
+            updateInt(digest, -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        updateInt(digest, bytes.length);
+        digest.update(bytes);
+    }
+
+
+    private static void updateInt(MessageDigest digest, int value) {
+        digest.update(new byte[] {(byte) (value >>> 24), (byte) (value >>> 16),
+                (byte) (value >>> 8), (byte) value});
+    }
+
+
+    private static void updateLong(MessageDigest digest, long value) {
+        updateInt(digest, (int) (value >>> 32));
+        updateInt(digest, (int) value);
+    }
+
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+
+    /**
+     * A page read from the cache, ready to be written
+     */
+    public static class CachedPage {
+        private byte[] mContent;
+        private EmbeddedImage mImage;
+
+        CachedPage(byte[] content, EmbeddedImage image) {
+            mContent = content;
+            mImage = image;
+        }
+
+        public byte[] getContent() {
+            return mContent;
+        }
+
+        /**
+         * @return image drawn on the page, null if it has none
+         */
+        public EmbeddedImage getImage() {
+            return mImage;
+        }
+    }
+}
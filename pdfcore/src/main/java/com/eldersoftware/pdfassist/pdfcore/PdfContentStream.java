@@ -0,0 +1,127 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+
+/**
+ * Builds the content stream for a single page written by the PdfStreamWriter. Takes the same
+ * top left coordinates used by the canvas and flips them into PDF coordinates, where the
+ * origin is the bottom left of the page.
+ */
+public class PdfContentStream {
+    private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+
+    private StringBuilder mContent = new StringBuilder();
+    private int mPageHeight;
+
+
+    /**
+     * Constructor
+     * @param pageHeight - page height in points, used to flip the y coordinates
+     */
+    public PdfContentStream(int pageHeight) {
+        mPageHeight = pageHeight;
+    }
+
+
+    /**
+     * Draws each line of a text layout, using the line breaks and alignment it has already
+     * worked out
+     * @param layout - text layout, measured with the HelveticaMetrics
+     * @param left - left start point for the text layout
+     * @param top - top start point for the text layout
+     */
+    public void drawTextLayout(TextLayout layout, float left, float top) {
+        mContent.append("BT\n/").append(PdfStreamWriter.FONT_NAME).append(' ')
+                .append(format(layout.getFontSize())).append(" Tf\n");
+        for (int i = 0; i < layout.getLineCount(); i++) {
+            String line = layout.getLineText(i);
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            float x = left + layout.getLineLeft(i);
+            float y = mPageHeight - (top + layout.getLineBaseline(i));
+
+            // Absolute text matrix for each line, so the line positions don't accumulate
+            mContent.append("1 0 0 1 ").append(format(x)).append(' ').append(format(y))
+                    .append(" Tm\n(").append(escapeText(line)).append(") Tj\n");
+        }
+        mContent.append("ET\n");
+    }
+
+
+    /**
+     * Draws an image XObject scaled into the rectangle, rotated clockwise about its centre
+     * @param imageName - name the image is registered under in the page resources
+     * @param rect - placement rectangle of the rotated image, in canvas coordinates
+     * @param rotation - clockwise rotation in degrees, 0, 90, 180 or 270
+     */
+    public void drawImage(String imageName, Box rect, int rotation) {
+        float w = rect.width();
+        float h = rect.height();
+        float x = rect.left;
+        float y = mPageHeight - rect.bottom;
+
+        // Maps the images unit square onto the rectangle, the corners are swapped round
+        // for each quarter turn
+        float[] matrix;
+        switch (rotation) {
+            case 90:
+                matrix = new float[] {0, -h, w, 0, x, y + h};
+                break;
+            case 180:
+                matrix = new float[] {-w, 0, 0, -h, x + w, y + h};
+                break;
+            case 270:
+                matrix = new float[] {0, h, -w, 0, x + w, y};
+                break;
+            default:
+                matrix = new float[] {w, 0, 0, h, x, y};
+        }
+
+        mContent.append("q\n");
+        for (float value : matrix) {
+            mContent.append(format(value)).append(' ');
+        }
+        mContent.append("cm\n/").append(imageName).append(" Do\nQ\n");
+    }
+
+
+    /**
+     * @return content stream bytes, the text has already been converted to WinAnsi codes
+     */
+    public byte[] toByteArray() {
+        return mContent.toString().getBytes(LATIN_1);
+    }
+
+
+    /**
+     * Converts the text to WinAnsi codes and escapes the string delimiters, characters the
+     * standard font can't show become '?'. StreamingPdfRenderer.canRender checks a doc has none
+     * of those before it is streamed
+     * @param text - line of text
+     * @return text that can be placed in a PDF string, one char per WinAnsi code
+     */
+    private static String escapeText(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '(' || c == ')' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c == '\t') {
+                escaped.append(' ');
+            } else if (c != '\r' && c != '\n') {
+                int code = WinAnsiEncoding.encode(c);
+                escaped.append(code != -1 ? (char) code : '?');
+            }
+        }
+        return escaped.toString();
+    }
+
+
+    private static String format(float value) {
+        return String.format(Locale.ENGLISH, "%.2f", value);
+    }
+}
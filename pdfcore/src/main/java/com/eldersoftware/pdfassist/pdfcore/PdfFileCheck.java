@@ -0,0 +1,57 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+
+
+/**
+ * Cheap checks that a previously exported PDF is still the complete file that was written,
+ * without parsing it
+ */
+public class PdfFileCheck {
+    private static final String END_OF_FILE_MARKER = "%%EOF";
+
+    // The marker may be followed by a line ending and some writers add trailing whitespace
+    private static final int TAIL_LENGTH = 32;
+
+
+    private PdfFileCheck() {
+    }
+
+
+    /**
+     * @param file - exported PDF
+     * @param expectedLength - length of the file when it was exported
+     * @return true if the file exists, still has its exported length and ends with %%EOF
+     */
+    public static boolean isIntact(File file, long expectedLength) {
+        if (!file.isFile() || file.length() != expectedLength ||
+                expectedLength < END_OF_FILE_MARKER.length()) {
+            return false;
+        }
+
+        RandomAccessFile input = null;
+        try {
+            input = new RandomAccessFile(file, "r");
+            int tailLength = (int) Math.min(TAIL_LENGTH, expectedLength);
+            byte[] tail = new byte[tailLength];
+            input.seek(expectedLength - tailLength);
+            input.readFully(tail);
+
+            return new String(tail, Charset.forName("ISO-8859-1")).trim()
+                    .endsWith(END_OF_FILE_MARKER);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
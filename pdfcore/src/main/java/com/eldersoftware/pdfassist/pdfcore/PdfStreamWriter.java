@@ -0,0 +1,282 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * Writes a PDF one page at a time. Each page and its images are written to the file as soon as
+ * they are finished, only the object offsets and page object numbers are kept in memory so the
+ * heap use doesn't grow with the page count. The page tree, catalog and xref table are written
+ * when the writer is closed.
+ */
+public class PdfStreamWriter implements Closeable {
+    // PDF syntax is ASCII, the header comment uses single byte characters above 127
+    private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+
+    // Object numbers reserved before any page is written
+    private static final int CATALOG_OBJECT = 1;
+    private static final int PAGES_OBJECT = 2;
+    private static final int FONT_OBJECT = 3;
+
+    public static final String FONT_NAME = "F1";
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private CountingOutputStream mOut;
+    private ArrayList<Long> mObjectOffsets = new ArrayList<>();
+    private ArrayList<Integer> mPageObjects = new ArrayList<>();
+
+
+    /**
+     * Opens the file and writes the header and the shared font object
+     * @param file - file the PDF is written to
+     * @throws IOException thrown when the file can't be written
+     */
+    public PdfStreamWriter(File file) throws IOException {
+        mOut = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+
+        // Binary comment marks the file as containing binary data
+        write("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");
+
+        reserveObject(); // Catalog
+        reserveObject(); // Pages
+
+        // Standard Type1 font, doesn't need embedding so it costs a single small object
+        beginObject(reserveObject());
+        write("<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica " +
+                "/Encoding /WinAnsiEncoding >>\n");
+        endObject();
+    }
+
+
+    /**
+     * Writes JPEG data as an image XObject
+     * @param jpegData - JPEG file data
+     * @param width - image width in pixels
+     * @param height - image height in pixels
+     * @return object number used to reference the image from a page
+     * @throws IOException thrown when the file can't be written
+     */
+    public int writeJpegImage(byte[] jpegData, int width, int height) throws IOException {
+        int objectNumber = beginJpegImage(width, height, "DeviceRGB", jpegData.length);
+        mOut.write(jpegData);
+        endJpegImage();
+
+        return objectNumber;
+    }
+
+
+    /**
+     * Copies a JPEG file straight into an image XObject, the image is never decoded so the
+     * embedded image is byte for byte the same as the file
+     * @param jpegFile - JPEG file
+     * @param jpegInfo - size and colour space read from the files frame header
+     * @return object number used to reference the image from a page
+     * @throws IOException thrown when the file can't be read or written
+     */
+    public int writeJpegImage(File jpegFile, JpegInfo jpegInfo) throws IOException {
+        long length = jpegFile.length();
+        int objectNumber = beginJpegImage(jpegInfo.getWidth(), jpegInfo.getHeight(),
+                jpegInfo.getColorSpace(), length);
+
+        // Copies exactly the length written in the dictionary, in case the file changes
+        FileInputStream input = new FileInputStream(jpegFile);
+        try {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    throw new IOException("Image changed while being written: " + jpegFile);
+                }
+                mOut.write(buffer, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            input.close();
+        }
+        endJpegImage();
+
+        return objectNumber;
+    }
+
+
+    /**
+     * Writes a page and its content stream, then flushes so the page is on disk before the
+     * next page is started
+     * @param width - page width in points
+     * @param height - page height in points
+     * @param content - content stream, created with PdfContentStream
+     * @param images - image names used in the content stream mapped to their object numbers
+     * @throws IOException thrown when the file can't be written
+     */
+    public void writePage(int width, int height, byte[] content,
+                          Map<String, Integer> images) throws IOException {
+        int contentObject = reserveObject();
+        beginObject(contentObject);
+        write("<< /Length " + content.length + " >>\nstream\n");
+        mOut.write(content);
+        write("\nendstream\n");
+        endObject();
+
+        StringBuilder xObjects = new StringBuilder();
+        if (images != null) {
+            for (Map.Entry<String, Integer> image : images.entrySet()) {
+                xObjects.append('/').append(image.getKey()).append(' ')
+                        .append(image.getValue()).append(" 0 R ");
+            }
+        }
+
+        int pageObject = reserveObject();
+        beginObject(pageObject);
+        write("<< /Type /Page /Parent " + PAGES_OBJECT + " 0 R /MediaBox [0 0 " + width + " " +
+                height + "] /Resources << /Font << /" + FONT_NAME + " " + FONT_OBJECT +
+                " 0 R >> /XObject << " + xObjects + ">> >> /Contents " + contentObject +
+                " 0 R >>\n");
+        endObject();
+        mPageObjects.add(pageObject);
+
+        mOut.flush();
+    }
+
+
+    /**
+     * @return number of bytes written to the file so far
+     */
+    public long getBytesWritten() {
+        return mOut.getCount();
+    }
+
+
+    /**
+     * Writes the page tree, catalog, xref table and trailer then closes the file
+     * @throws IOException thrown when the file can't be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            StringBuilder kids = new StringBuilder();
+            for (int pageObject : mPageObjects) {
+                kids.append(pageObject).append(" 0 R ");
+            }
+
+            beginObject(PAGES_OBJECT);
+            write("<< /Type /Pages /Kids [" + kids + "] /Count " + mPageObjects.size() + " >>\n");
+            endObject();
+
+            beginObject(CATALOG_OBJECT);
+            write("<< /Type /Catalog /Pages " + PAGES_OBJECT + " 0 R >>\n");
+            endObject();
+
+            // Each xref entry must be exactly 20 bytes
+            long xrefOffset = mOut.getCount();
+            StringBuilder xref = new StringBuilder();
+            xref.append("xref\n0 ").append(mObjectOffsets.size() + 1).append('\n');
+            xref.append("0000000000 65535 f \n");
+            for (long offset : mObjectOffsets) {
+                xref.append(String.format(Locale.ENGLISH, "%010d 00000 n \n", offset));
+            }
+            write(xref.toString());
+
+            write("trailer\n<< /Size " + (mObjectOffsets.size() + 1) + " /Root " +
+                    CATALOG_OBJECT + " 0 R >>\nstartxref\n" + xrefOffset + "\n%%EOF\n");
+        } finally {
+            mOut.close();
+        }
+    }
+
+
+    /**
+     * Writes the image dictionary and opens its stream
+     * @return object number of the image
+     */
+    private int beginJpegImage(int width, int height, String colorSpace,
+                               long length) throws IOException {
+        int objectNumber = reserveObject();
+        beginObject(objectNumber);
+        write("<< /Type /XObject /Subtype /Image /Width " + width + " /Height " + height +
+                " /ColorSpace /" + colorSpace + " /BitsPerComponent 8 /Filter /DCTDecode /Length " +
+                length + " >>\nstream\n");
+        return objectNumber;
+    }
+
+
+    private void endJpegImage() throws IOException {
+        write("\nendstream\n");
+        endObject();
+    }
+
+
+    /**
+     * @return next object number, its offset is set when the object is written
+     */
+    private int reserveObject() {
+        mObjectOffsets.add(0L);
+        return mObjectOffsets.size();
+    }
+
+
+    private void beginObject(int objectNumber) throws IOException {
+        mObjectOffsets.set(objectNumber - 1, mOut.getCount());
+        write(objectNumber + " 0 obj\n");
+    }
+
+
+    private void endObject() throws IOException {
+        write("endobj\n");
+    }
+
+
+    private void write(String text) throws IOException {
+        mOut.write(text.getBytes(LATIN_1));
+    }
+
+
+    /**
+     * Counts the bytes written so object offsets are known without seeking the file
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private OutputStream mOut;
+        private long mCount;
+
+        CountingOutputStream(OutputStream out) {
+            mOut = out;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            mOut.write(b);
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            mOut.write(b, off, len);
+            mCount += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            mOut.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mOut.close();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Lays out a doc and streams it to a PDF file one page at a time, so memory use stays flat no
+ * matter how many pages the doc has. Text is drawn in Helvetica and measured with its metrics,
+ * so only docs whose text Helvetica can show should be streamed, see canRender.
+ * With a PageRenderCache, pages that haven't changed since they were last rendered are spliced
+ * in from the cache instead of being laid out again.
+ */
+public class StreamingPdfRenderer {
+    // Each page has at most one image, named in the page resources as Im1
+    private static final String IMAGE_NAME = "Im1";
+
+    private PageLayoutEngine mLayoutEngine;
+    private PageRenderCache mCache;
+
+
+    public StreamingPdfRenderer() {
+        this(null);
+    }
+
+
+    /**
+     * Constructor
+     * @param cache - cache of rendered pages, null to render every page
+     */
+    public StreamingPdfRenderer(PageRenderCache cache) {
+        mLayoutEngine = new PageLayoutEngine(new HelveticaMetrics());
+        mCache = cache;
+    }
+
+
+    /**
+     * The standard Helvetica font only has the WinAnsi characters, other characters would be
+     * drawn as '?'. Docs that fail this check are exported with the platform's PDF writer
+     * @param doc - doc to be written
+     * @return true if every title and text of the doc can be drawn
+     */
+    public static boolean canRender(DocModel doc) {
+        if (!WinAnsiEncoding.canEncode(doc.getTitle())) {
+            return false;
+        }
+        for (DocPage page : doc.getPages()) {
+            if (!WinAnsiEncoding.canEncode(page.getTitle()) ||
+                    !WinAnsiEncoding.canEncode(page.getText())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Checks which pages can be spliced from the cache, so their images don't need preparing
+     * @param doc - doc to be written
+     * @return true for each content page that is in the cache
+     */
+    public boolean[] findCachedPages(DocModel doc) {
+        List<DocPage> pages = doc.getPages();
+        boolean[] cached = new boolean[pages.size()];
+        if (mCache != null) {
+            for (int i = 0; i < pages.size(); i++) {
+                cached[i] = mCache.contains(mCache.getKey(pages.get(i)));
+            }
+        }
+        return cached;
+    }
+
+
+    /**
+     * Writes the title page followed by the content pages
+     * @param doc - doc to write
+     * @param images - supplies the page images
+     * @param file - file the PDF is written to
+     * @throws IOException thrown when the file can't be written
+     */
+    public void render(DocModel doc, PageImageSource images, File file) throws IOException {
+        ExportMonitor monitor = new ExportMonitor();
+        monitor.start(doc.getPages().size() + 1);
+        render(doc, images, file, monitor);
+    }
+
+
+    /**
+     * Writes the title page followed by the content pages, reporting each page to the monitor.
+     * A cancelled export stops before its next page, leaving the file partly written
+     * @param doc - doc to write
+     * @param images - supplies the page images
+     * @param file - file the PDF is written to
+     * @param monitor - monitor, already started with the number of output pages
+     * @throws IOException thrown when the file can't be written
+     * @throws ExportCancelledException thrown when the monitor is cancelled
+     */
+    public void render(DocModel doc, PageImageSource images, File file, ExportMonitor monitor)
+            throws IOException {
+        ExportTimings timings = monitor.getTimings();
+        PdfStreamWriter writer = new PdfStreamWriter(file);
+        try {
+            writeTitlePage(writer, doc.getTitle(), timings);
+            monitor.pageExported(0, writer.getBytesWritten());
+
+            List<DocPage> pages = doc.getPages();
+            for (int i = 0; i < pages.size(); i++) {
+                monitor.throwIfCancelled();
+                writeContentPage(writer, i, pages.get(i), images, timings);
+                monitor.pageExported(i + 1, writer.getBytesWritten());
+            }
+        } finally {
+            long start = System.nanoTime();
+            writer.close();
+            timings.addFinishNanos(System.nanoTime() - start);
+        }
+
+        if (mCache != null) {
+            mCache.trimToSize();
+        }
+    }
+
+
+    private void writeTitlePage(PdfStreamWriter writer, String title, ExportTimings timings)
+            throws IOException {
+        long start = System.nanoTime();
+        PageLayout layout = mLayoutEngine.layoutTitlePage(title);
+        long laidOut = System.nanoTime();
+
+        PdfContentStream content = new PdfContentStream(PageLayoutEngine.PAGE_HEIGHT);
+        content.drawTextLayout(layout.getTitle(), layout.getTitleLeft(), layout.getTitleTop());
+        byte[] contentBytes = content.toByteArray();
+        long drawn = System.nanoTime();
+
+        writer.writePage(PageLayoutEngine.PAGE_WIDTH, PageLayoutEngine.PAGE_HEIGHT,
+                contentBytes, null);
+
+        timings.add(0, ExportTimings.PHASE_LAYOUT, laidOut - start);
+        timings.add(0, ExportTimings.PHASE_DRAW, drawn - laidOut);
+        timings.add(0, ExportTimings.PHASE_WRITE, System.nanoTime() - drawn);
+    }
+
+
+    private void writeContentPage(PdfStreamWriter writer, int pageIndex, DocPage page,
+                                  PageImageSource images, ExportTimings timings)
+            throws IOException {
+        // Timings are recorded against the output page, the title page is page 0
+        int outputPage = pageIndex + 1;
+
+        String cacheKey = null;
+        if (mCache != null) {
+            long start = System.nanoTime();
+            cacheKey = mCache.getKey(page);
+            PageRenderCache.CachedPage cachedPage = mCache.get(cacheKey);
+            if (cachedPage != null) {
+                writeCachedPage(writer, cachedPage);
+                timings.add(outputPage, ExportTimings.PHASE_WRITE, System.nanoTime() - start);
+                return;
+            }
+        }
+
+        long start = System.nanoTime();
+        EmbeddedImage image = null;
+        if (page.hasImage()) {
+            image = images.getImage(pageIndex, page.getImagePath());
+        }
+        long decoded = System.nanoTime();
+
+        PageLayout layout = image != null
+                ? mLayoutEngine.layoutContentPage(page, image.getDisplayWidth(),
+                        image.getDisplayHeight())
+                : mLayoutEngine.layoutContentPage(page, 0, 0);
+        long laidOut = System.nanoTime();
+
+        // Written straight away, so only the current pages image is ever held
+        Map<String, Integer> xObjects = new HashMap<>();
+        if (image != null) {
+            xObjects.put(IMAGE_NAME, image.writeTo(writer));
+        }
+        long imageWritten = System.nanoTime();
+
+        PdfContentStream content = new PdfContentStream(PageLayoutEngine.PAGE_HEIGHT);
+        content.drawTextLayout(layout.getTitle(), layout.getTitleLeft(), layout.getTitleTop());
+        if (image != null) {
+            content.drawImage(IMAGE_NAME, layout.getImageRect(), image.getRotation());
+        }
+        if (layout.getText() != null) {
+            content.drawTextLayout(layout.getText(), layout.getTextLeft(), layout.getTextTop());
+        }
+        byte[] contentBytes = content.toByteArray();
+        long drawn = System.nanoTime();
+
+        writer.writePage(PageLayoutEngine.PAGE_WIDTH, PageLayoutEngine.PAGE_HEIGHT,
+                contentBytes, xObjects);
+
+        if (mCache != null) {
+            mCache.put(cacheKey, contentBytes, image);
+        }
+
+        timings.add(outputPage, ExportTimings.PHASE_DECODE, decoded - start);
+        timings.add(outputPage, ExportTimings.PHASE_LAYOUT, laidOut - decoded);
+        timings.add(outputPage, ExportTimings.PHASE_DRAW, drawn - imageWritten);
+        timings.add(outputPage, ExportTimings.PHASE_WRITE,
+                (imageWritten - laidOut) + (System.nanoTime() - drawn));
+    }
+
+
+    /**
+     * Writes a page from the cache, only its image is copied again
+     */
+    private void writeCachedPage(PdfStreamWriter writer,
+                                 PageRenderCache.CachedPage cachedPage) throws IOException {
+        Map<String, Integer> xObjects = new HashMap<>();
+        if (cachedPage.getImage() != null) {
+            xObjects.put(IMAGE_NAME, cachedPage.getImage().writeTo(writer));
+        }
+
+        writer.writePage(PageLayoutEngine.PAGE_WIDTH, PageLayoutEngine.PAGE_HEIGHT,
+                cachedPage.getContent(), xObjects);
+    }
+}
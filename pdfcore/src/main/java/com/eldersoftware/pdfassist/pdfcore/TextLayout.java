@@ -0,0 +1,91 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+
+/**
+ * Text broken into lines that fit a width, the off-device equivalent of a StaticLayout. Line
+ * positions are relative to the top left of the layout.
+ */
+public class TextLayout {
+    public static final int ALIGN_NORMAL = 0;
+    public static final int ALIGN_CENTER = 1;
+    public static final int ALIGN_OPPOSITE = 2;
+
+    private String mText;
+    private float mFontSize;
+    private int[] mLineStarts;
+    private int[] mLineEnds;
+    private float[] mLineLefts;
+    private float[] mLineBaselines;
+    private float mHeight;
+
+
+    /**
+     * Constructor, used by the TextLayoutEngine
+     * @param text - full text
+     * @param fontSize - font size in points
+     * @param lineStarts - first character of each line
+     * @param lineEnds - character after the last visible character of each line
+     * @param lineLefts - left of each line, after alignment
+     * @param lineBaselines - baseline of each line
+     * @param height - height of all the lines
+     */
+    TextLayout(String text, float fontSize, int[] lineStarts, int[] lineEnds, float[] lineLefts,
+               float[] lineBaselines, float height) {
+        mText = text;
+        mFontSize = fontSize;
+        mLineStarts = lineStarts;
+        mLineEnds = lineEnds;
+        mLineLefts = lineLefts;
+        mLineBaselines = lineBaselines;
+        mHeight = height;
+    }
+
+
+    public String getText() {
+        return mText;
+    }
+
+
+    public float getFontSize() {
+        return mFontSize;
+    }
+
+
+    public int getLineCount() {
+        return mLineStarts.length;
+    }
+
+
+    public int getLineStart(int line) {
+        return mLineStarts[line];
+    }
+
+
+    public int getLineEnd(int line) {
+        return mLineEnds[line];
+    }
+
+
+    public float getLineLeft(int line) {
+        return mLineLefts[line];
+    }
+
+
+    public float getLineBaseline(int line) {
+        return mLineBaselines[line];
+    }
+
+
+    /**
+     * @param line - line index
+     * @return visible text of the line, without the spaces it was broken at
+     */
+    public String getLineText(int line) {
+        return mText.substring(mLineStarts[line], mLineEnds[line]);
+    }
+
+
+    public float getHeight() {
+        return mHeight;
+    }
+}
@@ -0,0 +1,220 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * Least recently used cache of line broken text, so exporting or previewing an unchanged doc
+ * again doesn't measure the same titles and text twice. One cache is shared by every export in
+ * the process. It is bounded by both the number of layouts and the characters they hold, so a
+ * few very long texts can't keep the cache from shrinking.
+ */
+public class TextLayoutCache {
+    private static final int DEFAULT_MAX_ENTRIES = 1024;
+    private static final int DEFAULT_MAX_CHARS = 512 * 1024;
+
+    private static final TextLayoutCache sShared =
+            new TextLayoutCache(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_CHARS);
+
+    private final LinkedHashMap<Key, TextLayout> mLayouts =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private final int mMaxEntries;
+    private final int mMaxChars;
+    private int mChars;
+
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+
+
+    /**
+     * Constructor
+     * @param maxEntries - most layouts held at once
+     * @param maxChars - most characters of text held at once
+     */
+    public TextLayoutCache(int maxEntries, int maxChars) {
+        mMaxEntries = maxEntries;
+        mMaxChars = maxChars;
+    }
+
+
+    /**
+     * @return cache shared by every layout engine in the process
+     */
+    public static TextLayoutCache getShared() {
+        return sShared;
+    }
+
+
+    /**
+     * @param text - text that was laid out
+     * @param fontSize - font size in points
+     * @param width - line width in points
+     * @param alignment - TextLayout alignment
+     * @param fontKey - TextMeasurer font key
+     * @return the cached layout, or null if it hasn't been laid out or has been evicted
+     */
+    public synchronized TextLayout get(String text, float fontSize, int width, int alignment,
+                                       String fontKey) {
+        TextLayout layout = mLayouts.get(new Key(text, fontSize, width, alignment, fontKey));
+        if (layout != null) {
+            mHits++;
+        } else {
+            mMisses++;
+        }
+        return layout;
+    }
+
+
+    /**
+     * Adds a layout, evicting the least recently used layouts once over either bound
+     * @param text - text that was laid out
+     * @param fontSize - font size in points
+     * @param width - line width in points
+     * @param alignment - TextLayout alignment
+     * @param fontKey - TextMeasurer font key
+     * @param layout - layout of the text
+     */
+    public synchronized void put(String text, float fontSize, int width, int alignment,
+                                 String fontKey, TextLayout layout) {
+        if (text.length() > mMaxChars) {
+            return; // Would evict everything else and still not fit
+        }
+
+        TextLayout previous = mLayouts.put(new Key(text, fontSize, width, alignment, fontKey),
+                layout);
+        if (previous == null) {
+            mChars += text.length();
+        }
+
+        Iterator<Map.Entry<Key, TextLayout>> eldest = mLayouts.entrySet().iterator();
+        while ((mLayouts.size() > mMaxEntries || mChars > mMaxChars) && eldest.hasNext()) {
+            mChars -= eldest.next().getKey().mText.length();
+            eldest.remove();
+            mEvictions++;
+        }
+    }
+
+
+    /**
+     * Empties the cache, the stats are kept
+     */
+    public synchronized void clear() {
+        mLayouts.clear();
+        mChars = 0;
+    }
+
+
+    /**
+     * @return snapshot of the hit, miss and eviction counts
+     */
+    public synchronized Stats getStats() {
+        return new Stats(mHits, mMisses, mEvictions, mLayouts.size(), mChars);
+    }
+
+
+    /**
+     * Hit and miss counts of a cache at one point in time
+     */
+    public static class Stats {
+        private final long mHits;
+        private final long mMisses;
+        private final long mEvictions;
+        private final int mSize;
+        private final int mChars;
+
+        Stats(long hits, long misses, long evictions, int size, int chars) {
+            mHits = hits;
+            mMisses = misses;
+            mEvictions = evictions;
+            mSize = size;
+            mChars = chars;
+        }
+
+        public long getHits() {
+            return mHits;
+        }
+
+        public long getMisses() {
+            return mMisses;
+        }
+
+        public long getEvictions() {
+            return mEvictions;
+        }
+
+        public int getSize() {
+            return mSize;
+        }
+
+        public int getChars() {
+            return mChars;
+        }
+
+        /**
+         * @return fraction of lookups that were hits, 0 if there were no lookups
+         */
+        public float getHitRate() {
+            long lookups = mHits + mMisses;
+            return lookups == 0 ? 0 : (float) mHits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH,
+                    "hits=%d misses=%d hitRate=%.2f evictions=%d size=%d chars=%d",
+                    mHits, mMisses, getHitRate(), mEvictions, mSize, mChars);
+        }
+    }
+
+
+    /**
+     * Everything that changes where the lines break. The full text is compared, the hash only
+     * picks the bucket
+     */
+    private static class Key {
+        private final String mText;
+        private final float mFontSize;
+        private final int mWidth;
+        private final int mAlignment;
+        private final String mFontKey;
+        private final int mHash;
+
+        Key(String text, float fontSize, int width, int alignment, String fontKey) {
+            mText = text;
+            mFontSize = fontSize;
+            mWidth = width;
+            mAlignment = alignment;
+            mFontKey = fontKey;
+
+            int hash = text.hashCode();
+            hash = 31 * hash + Float.floatToIntBits(fontSize);
+            hash = 31 * hash + width;
+            hash = 31 * hash + alignment;
+            hash = 31 * hash + fontKey.hashCode();
+            mHash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mHash == key.mHash && mFontSize == key.mFontSize && mWidth == key.mWidth &&
+                    mAlignment == key.mAlignment && mFontKey.equals(key.mFontKey) &&
+                    mText.equals(key.mText);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+}
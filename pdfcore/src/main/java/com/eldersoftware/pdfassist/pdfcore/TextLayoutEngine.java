@@ -0,0 +1,170 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import java.util.ArrayList;
+
+
+/**
+ * Breaks text into lines the same way the StaticLayouts used to: new lines start a paragraph,
+ * lines wrap at spaces, and words wider than the line are broken between characters. Layouts
+ * are kept in a TextLayoutCache, so text that has been laid out before isn't measured again.
+ */
+public class TextLayoutEngine {
+    private TextMeasurer mMeasurer;
+    private TextLayoutCache mCache;
+
+
+    /**
+     * Constructor, layouts are cached in the shared cache
+     * @param measurer - measures text in the font the layouts will be drawn with
+     */
+    public TextLayoutEngine(TextMeasurer measurer) {
+        this(measurer, TextLayoutCache.getShared());
+    }
+
+
+    /**
+     * Constructor
+     * @param measurer - measures text in the font the layouts will be drawn with
+     * @param cache - cache for the layouts, null to lay out the text every time
+     */
+    public TextLayoutEngine(TextMeasurer measurer, TextLayoutCache cache) {
+        mMeasurer = measurer;
+        mCache = cache;
+    }
+
+
+    public TextMeasurer getMeasurer() {
+        return mMeasurer;
+    }
+
+
+    /**
+     * Lays out the text into lines no wider than the width, or returns the cached layout
+     * @param text - text, null is laid out as an empty line
+     * @param fontSize - font size in points
+     * @param width - line width in points
+     * @param alignment - TextLayout.ALIGN_NORMAL, ALIGN_CENTER or ALIGN_OPPOSITE
+     * @return TextLayout with the line positions
+     */
+    public TextLayout layout(String text, float fontSize, int width, int alignment) {
+        if (text == null) {
+            text = "";
+        }
+        if (mCache == null) {
+            return breakText(text, fontSize, width, alignment);
+        }
+
+        String fontKey = mMeasurer.getFontKey();
+        TextLayout layout = mCache.get(text, fontSize, width, alignment, fontKey);
+        if (layout == null) {
+            layout = breakText(text, fontSize, width, alignment);
+            mCache.put(text, fontSize, width, alignment, fontKey, layout);
+        }
+        return layout;
+    }
+
+
+    private TextLayout breakText(String text, float fontSize, int width, int alignment) {
+        ArrayList<int[]> lines = new ArrayList<>();
+        int paragraphStart = 0;
+        while (true) {
+            int paragraphEnd = text.indexOf('\n', paragraphStart);
+            boolean lastParagraph = paragraphEnd == -1;
+            if (lastParagraph) {
+                paragraphEnd = text.length();
+            }
+
+            // Windows line endings, the \r is dropped along with the \n
+            int visibleEnd = paragraphEnd;
+            if (visibleEnd > paragraphStart && text.charAt(visibleEnd - 1) == '\r') {
+                visibleEnd--;
+            }
+            breakParagraph(text, paragraphStart, visibleEnd, fontSize, width, lines);
+
+            if (lastParagraph) {
+                break;
+            }
+            paragraphStart = paragraphEnd + 1;
+        }
+
+        float ascent = mMeasurer.getAscent(fontSize);
+        float lineHeight = ascent + mMeasurer.getDescent(fontSize);
+
+        int lineCount = lines.size();
+        int[] lineStarts = new int[lineCount];
+        int[] lineEnds = new int[lineCount];
+        float[] lineLefts = new float[lineCount];
+        float[] lineBaselines = new float[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            int[] line = lines.get(i);
+            lineStarts[i] = line[0];
+            lineEnds[i] = line[1];
+            lineBaselines[i] = i * lineHeight + ascent;
+
+            float lineWidth = mMeasurer.measureText(text, line[0], line[1], fontSize);
+            if (alignment == TextLayout.ALIGN_CENTER) {
+                lineLefts[i] = (width - lineWidth) / 2;
+            } else if (alignment == TextLayout.ALIGN_OPPOSITE) {
+                lineLefts[i] = width - lineWidth;
+            }
+        }
+
+        return new TextLayout(text, fontSize, lineStarts, lineEnds, lineLefts, lineBaselines,
+                lineCount * lineHeight);
+    }
+
+
+    /**
+     * Greedily fills each line with as many words as fit
+     * @param text - text
+     * @param start - paragraph start
+     * @param end - paragraph end, without the new line
+     * @param fontSize - font size in points
+     * @param width - line width in points
+     * @param lines - start and end of each line are added to this list
+     */
+    private void breakParagraph(String text, int start, int end, float fontSize, int width,
+                                ArrayList<int[]> lines) {
+        if (start == end) {
+            lines.add(new int[] {start, end}); // Empty paragraphs still take up a line
+            return;
+        }
+
+        int lineStart = start;
+        while (lineStart < end) {
+            int lineEnd = -1;
+            int nextLineStart = end;
+
+            int position = lineStart;
+            while (position < end) {
+                int wordEnd = position;
+                while (wordEnd < end && text.charAt(wordEnd) != ' ') {
+                    wordEnd++;
+                }
+                if (mMeasurer.measureText(text, lineStart, wordEnd, fontSize) > width) {
+                    break;
+                }
+
+                lineEnd = wordEnd;
+                position = wordEnd;
+                while (position < end && text.charAt(position) == ' ') {
+                    position++;
+                }
+                nextLineStart = position;
+            }
+
+            // The first word doesn't fit on its own, so it is broken between characters
+            if (lineEnd == -1) {
+                lineEnd = lineStart + 1;
+                while (lineEnd < end && text.charAt(lineEnd) != ' ' &&
+                        mMeasurer.measureText(text, lineStart, lineEnd + 1, fontSize) <= width) {
+                    lineEnd++;
+                }
+                nextLineStart = lineEnd;
+            }
+
+            lines.add(new int[] {lineStart, lineEnd});
+            lineStart = nextLineStart;
+        }
+    }
+}
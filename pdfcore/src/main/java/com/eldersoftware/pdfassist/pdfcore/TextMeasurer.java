@@ -0,0 +1,39 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+
+/**
+ * Measures text in the font it will be drawn with. The layout engine only needs widths and the
+ * line height, so the same line breaking works for the canvas fonts and the PDF standard fonts.
+ */
+public interface TextMeasurer {
+
+    /**
+     * @param text - text
+     * @param start - first character to measure
+     * @param end - character after the last one to measure
+     * @param fontSize - font size in points
+     * @return width of the characters in points
+     */
+    float measureText(CharSequence text, int start, int end, float fontSize);
+
+
+    /**
+     * @param fontSize - font size in points
+     * @return distance from the top of a line to its baseline, positive
+     */
+    float getAscent(float fontSize);
+
+
+    /**
+     * @param fontSize - font size in points
+     * @return distance from the baseline to the bottom of a line, positive
+     */
+    float getDescent(float fontSize);
+
+
+    /**
+     * @return identifies the font and any settings that change the widths, measurers that
+     * return the same key must break lines in the same places
+     */
+    String getFontKey();
+}
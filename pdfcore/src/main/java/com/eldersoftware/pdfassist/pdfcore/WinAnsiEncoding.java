@@ -0,0 +1,58 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+
+/**
+ * Maps characters to the WinAnsiEncoding used by the standard Helvetica font in streamed PDFs.
+ * Codes 0x20 to 0x7E and 0xA0 to 0xFF are the same as Latin-1, codes 0x80 to 0x9F hold the
+ * punctuation and letters Windows-1252 puts there instead of the Latin-1 control characters.
+ */
+public class WinAnsiEncoding {
+    // Unicode character for each code from 0x80 to 0x9F, 0 where the code is unused
+    private static final char[] HIGH_CONTROL_CHARS = {
+            '\u20AC', 0, '\u201A', '\u0192', '\u201E', '\u2026', '\u2020', '\u2021',
+            '\u02C6', '\u2030', '\u0160', '\u2039', '\u0152', 0, '\u017D', 0,
+            0, '\u2018', '\u2019', '\u201C', '\u201D', '\u2022', '\u2013', '\u2014',
+            '\u02DC', '\u2122', '\u0161', '\u203A', '\u0153', 0, '\u017E', '\u0178'
+    };
+    private static final int HIGH_CONTROL_START = 0x80;
+
+
+    private WinAnsiEncoding() {
+    }
+
+
+    /**
+     * @param c - character
+     * @return WinAnsi code of the character, -1 if Helvetica can't show it
+     */
+    public static int encode(char c) {
+        if ((c >= 0x20 && c <= 0x7E) || (c >= 0xA0 && c <= 0xFF)) {
+            return c;
+        }
+        for (int i = 0; i < HIGH_CONTROL_CHARS.length; i++) {
+            if (c != 0 && HIGH_CONTROL_CHARS[i] == c) {
+                return HIGH_CONTROL_START + i;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Line breaks and tabs are allowed, they never reach the PDF as characters
+     * @param text - text to check, may be null
+     * @return true if every character of the text can be shown
+     */
+    public static boolean canEncode(CharSequence text) {
+        if (text == null) {
+            return true;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\n' && c != '\r' && c != '\t' && encode(c) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,44 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Counters, histogram buckets and the JSON dump of the MetricsRegistry
+ */
+public class MetricsRegistryTest {
+
+    @Test
+    public void histogram_recordsIntoBucketsByUpperBound() {
+        MetricsRegistry registry = new MetricsRegistry();
+        MetricsRegistry.Histogram histogram = registry.histogram("ms", new long[] {10, 100});
+        histogram.record(5);
+        histogram.record(10);
+        histogram.record(50);
+        histogram.record(1000);
+
+        assertEquals(2, histogram.getBucketCount(0));
+        assertEquals(1, histogram.getBucketCount(1));
+        assertEquals(1, histogram.getBucketCount(2));
+        assertEquals(4, histogram.getCount());
+        assertEquals(1065, histogram.getSum());
+        assertEquals(1000, histogram.getMax());
+        assertSame(histogram, registry.histogram("ms", new long[] {1}));
+    }
+
+
+    @Test
+    public void toJson_writesMetricsSortedByName() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("b").add(3);
+        registry.counter("a\"").increment();
+        registry.histogram("h", new long[] {1}).record(2);
+
+        assertEquals("{\"counters\":{\"a\\\"\":1,\"b\":3},\"histograms\":{\"h\":" +
+                        "{\"count\":1,\"sum\":2,\"min\":2,\"max\":2,\"buckets\":" +
+                        "[{\"le\":1,\"count\":0},{\"count\":1}]}}}",
+                registry.toJson());
+    }
+}
@@ -0,0 +1,34 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The legacy "_split_" codec must read and write columns exactly as the old String.split and
+ * TextUtils.join code did
+ */
+public class PageDataCodecTest {
+
+    @Test
+    public void split_matchesStringSplit() {
+        String[] columns = {"a_split_b_split_c", "a_split__split_c", "a_split_b_split__split_",
+                "_split_a", "single", "x_split_null"};
+        for (String column : columns) {
+            assertArrayEquals(column, column.split("_split_"), PageDataCodec.split(column));
+        }
+        assertEquals(0, PageDataCodec.split(null).length);
+        assertEquals(0, PageDataCodec.split("").length);
+    }
+
+
+    @Test
+    public void replaceAndRemove_joinWithDelimiter() {
+        String[] pages = {"a", "b", null};
+        assertEquals("a_split_x_split_null", PageDataCodec.replaceAndJoin(pages, "x", 1));
+        assertEquals("x", pages[1]);
+        assertEquals("a_split_null", PageDataCodec.removeAndJoin(pages, 1));
+        assertEquals("", PageDataCodec.removeAndJoin(new String[] {"only"}, 0));
+    }
+}
@@ -0,0 +1,231 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Structure of the PDFs written by the StreamingPdfRenderer
+ */
+public class StreamingPdfRendererTest {
+    private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+
+    @Test
+    public void render_writesEveryPageWithValidXref() throws IOException {
+        List<DocPage> pages = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            pages.add(new DocPage("Page " + i, null, i % 2 == 0 ? "Some (text) for " + i : null));
+        }
+        File file = mFolder.newFile("doc.pdf");
+
+        new StreamingPdfRenderer().render(new DocModel("Doc", pages), new JpegFileImageSource(),
+                file);
+
+        String pdf = readFile(file);
+        assertTrue(pdf.startsWith("%PDF-1.4"));
+        assertTrue(pdf.endsWith("%%EOF\n"));
+        assertTrue(pdf.contains("/Count 21"));
+        assertTrue(pdf.contains("(Some \\(text\\) for 0) Tj"));
+
+        // Every xref entry must point at the start of its object
+        int xrefOffset = Integer.parseInt(find(pdf, "startxref\n(\\d+)"));
+        assertTrue(pdf.startsWith("xref", xrefOffset));
+        Matcher entries = Pattern.compile("(\\d{10}) 00000 n \n").matcher(pdf);
+        int objectNumber = 1;
+        while (entries.find(xrefOffset)) {
+            int offset = Integer.parseInt(entries.group(1));
+            assertTrue("object " + objectNumber, pdf.startsWith(objectNumber + " 0 obj", offset));
+            xrefOffset = entries.end();
+            objectNumber++;
+        }
+        assertEquals(Integer.parseInt(find(pdf, "/Size (\\d+)")), objectNumber);
+    }
+
+
+    @Test
+    public void render_unreadableImage_leavesPageWithoutImage() throws IOException {
+        File notJpeg = mFolder.newFile("image.png");
+        List<DocPage> pages = new ArrayList<>();
+        pages.add(new DocPage("Page", notJpeg.getPath(), null));
+        File file = mFolder.newFile("doc.pdf");
+
+        new StreamingPdfRenderer().render(new DocModel("Doc", pages), new JpegFileImageSource(),
+                file);
+
+        String pdf = readFile(file);
+        assertTrue(!pdf.contains("/Subtype /Image"));
+        assertTrue(pdf.contains("/Count 2"));
+    }
+
+
+    @Test
+    public void render_withPageCache_splicesUnchangedPages() throws IOException {
+        File image = mFolder.newFile("image.jpg");
+        ImageIO.write(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB), "jpg", image);
+
+        List<DocPage> pages = new ArrayList<>();
+        pages.add(new DocPage("Photo", image.getPath(), "Under the photo"));
+        for (int i = 0; i < 9; i++) {
+            pages.add(new DocPage("Page " + i, null, "Text " + i));
+        }
+        PageRenderCache cache = new PageRenderCache(mFolder.newFolder("cache"), 1024 * 1024);
+        StreamingPdfRenderer renderer = new StreamingPdfRenderer(cache);
+
+        File first = mFolder.newFile("first.pdf");
+        renderer.render(new DocModel("Doc", pages), new JpegFileImageSource(), first);
+        assertEquals(0, cache.getHits());
+
+        // One page edited, the rest come from the cache
+        pages.set(5, new DocPage("Page 4", null, "Edited"));
+        File second = mFolder.newFile("second.pdf");
+        renderer.render(new DocModel("Doc", pages), new JpegFileImageSource(), second);
+        assertEquals(9, cache.getHits());
+        assertEquals(11, cache.getMisses());
+
+        String pdf = readFile(second);
+        assertTrue(pdf.contains("(Edited) Tj"));
+        assertTrue(pdf.contains("(Under the photo) Tj"));
+        assertTrue(pdf.contains("/Filter /DCTDecode /Length " + image.length()));
+
+        // Unchanged doc gives the same file
+        File third = mFolder.newFile("third.pdf");
+        renderer.render(new DocModel("Doc", pages), new JpegFileImageSource(), third);
+        assertEquals(pdf, readFile(third));
+        assertTrue(new StreamingPdfRenderer(cache).findCachedPages(
+                new DocModel("Doc", pages))[5]);
+    }
+
+
+    @Test
+    public void fileCheck_detectsTruncatedExport() throws IOException {
+        List<DocPage> pages = new ArrayList<>();
+        pages.add(new DocPage("Page", null, "Text"));
+        File file = mFolder.newFile("doc.pdf");
+        new StreamingPdfRenderer().render(new DocModel("Doc", pages), new JpegFileImageSource(),
+                file);
+        long length = file.length();
+
+        assertTrue(PdfFileCheck.isIntact(file, length));
+        assertFalse(PdfFileCheck.isIntact(file, length + 1));
+
+        RandomAccessFile truncate = new RandomAccessFile(file, "rw");
+        truncate.setLength(length - 8);
+        truncate.close();
+        assertFalse(PdfFileCheck.isIntact(file, length - 8));
+    }
+
+
+    @Test
+    public void render_withMonitor_reportsEachPageAndStopsWhenCancelled() throws IOException {
+        List<DocPage> pages = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            pages.add(new DocPage("Page " + i, null, "Text " + i));
+        }
+        final List<Integer> exported = new ArrayList<>();
+        final long[] lastBytes = {0};
+        final ExportMonitor[] monitor = new ExportMonitor[1];
+        monitor[0] = new ExportMonitor(new ExportMonitor.ExportListener() {
+            @Override
+            public void onPageExported(int pageIndex, int totalPages, long bytesWritten,
+                                       long elapsedMillis) {
+                assertEquals(11, totalPages);
+                assertTrue(bytesWritten > lastBytes[0]);
+                lastBytes[0] = bytesWritten;
+                exported.add(pageIndex);
+                if (pageIndex == 3) {
+                    monitor[0].cancel();
+                }
+            }
+        });
+        monitor[0].start(pages.size() + 1);
+
+        try {
+            new StreamingPdfRenderer().render(new DocModel("Doc", pages),
+                    new JpegFileImageSource(), mFolder.newFile("doc.pdf"), monitor[0]);
+            fail("Cancelled export should throw");
+        } catch (ExportCancelledException e) {
+            // Expected
+        }
+
+        assertEquals(4, exported.size());
+        assertEquals(Integer.valueOf(3), exported.get(3));
+        assertTrue(monitor[0].getTimings().getNanos(1, ExportTimings.PHASE_LAYOUT) > 0);
+        assertEquals(0, monitor[0].getTimings().getNanos(5, ExportTimings.PHASE_LAYOUT));
+    }
+
+
+    @Test
+    public void render_winAnsiPunctuation_writesWinAnsiCodes() throws IOException {
+        // En dash, curly quotes and euro are outside Latin-1 but in WinAnsi
+        String text = "\u2013 \u201Cquoted\u201D \u20AC5 caf\u00E9";
+        List<DocPage> pages = new ArrayList<>();
+        pages.add(new DocPage("Page", null, text));
+        DocModel doc = new DocModel("Doc", pages);
+        File file = mFolder.newFile("doc.pdf");
+
+        assertTrue(StreamingPdfRenderer.canRender(doc));
+        new StreamingPdfRenderer().render(doc, new JpegFileImageSource(), file);
+
+        // En dash 0x96, quotes 0x93 and 0x94, euro 0x80, e acute stays 0xE9
+        assertTrue(readFile(file).contains("(\u0096 \u0093quoted\u0094 \u00805 caf\u00E9) Tj"));
+    }
+
+
+    @Test
+    public void canRender_nonLatinText_isFalse() {
+        List<DocPage> cyrillic = new ArrayList<>();
+        cyrillic.add(new DocPage("\u041F\u0440\u0438\u0432\u0435\u0442", null, null));
+        List<DocPage> cjk = new ArrayList<>();
+        cjk.add(new DocPage("Page", null, "Line one\n\u6587\u5B57"));
+
+        assertFalse(StreamingPdfRenderer.canRender(new DocModel("Doc", cyrillic)));
+        assertFalse(StreamingPdfRenderer.canRender(new DocModel("Doc", cjk)));
+        assertFalse(StreamingPdfRenderer.canRender(
+                new DocModel("\u0394\u03BF\u03BA", new ArrayList<DocPage>())));
+        assertTrue(StreamingPdfRenderer.canRender(new DocModel("Doc", new ArrayList<DocPage>())));
+    }
+
+
+    private static String find(String text, String regex) {
+        Matcher matcher = Pattern.compile(regex).matcher(text);
+        assertTrue(regex, matcher.find());
+        return matcher.group(1);
+    }
+
+
+    private static String readFile(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream input = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                offset += input.read(data, offset, data.length - offset);
+            }
+        } finally {
+            input.close();
+        }
+        return new String(data, LATIN_1);
+    }
+}
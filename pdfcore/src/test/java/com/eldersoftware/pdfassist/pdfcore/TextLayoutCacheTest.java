@@ -0,0 +1,75 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Lookups and eviction of the TextLayoutCache
+ */
+public class TextLayoutCacheTest {
+    private static final int WIDTH = 475;
+
+
+    @Test
+    public void repeatedLayout_isServedFromCache() {
+        TextLayoutCache cache = new TextLayoutCache(16, 1024);
+        TextLayoutEngine engine = new TextLayoutEngine(new HelveticaMetrics(), cache);
+
+        TextLayout first = engine.layout("Bathroom", 30, WIDTH, TextLayout.ALIGN_CENTER);
+        TextLayout second = engine.layout("Bathroom", 30, WIDTH, TextLayout.ALIGN_CENTER);
+
+        assertSame(first, second);
+        assertEquals(1, cache.getStats().getHits());
+        assertEquals(1, cache.getStats().getMisses());
+    }
+
+
+    @Test
+    public void differentPaintConfig_isLaidOutAgain() {
+        TextLayoutCache cache = new TextLayoutCache(16, 1024);
+        TextLayoutEngine engine = new TextLayoutEngine(new HelveticaMetrics(), cache);
+
+        engine.layout("Bathroom", 30, WIDTH, TextLayout.ALIGN_CENTER);
+        engine.layout("Bathroom", 12, WIDTH, TextLayout.ALIGN_CENTER);
+        engine.layout("Bathroom", 30, WIDTH, TextLayout.ALIGN_NORMAL);
+        engine.layout("Bathroom", 30, WIDTH - 1, TextLayout.ALIGN_CENTER);
+
+        assertEquals(0, cache.getStats().getHits());
+        assertEquals(4, cache.getStats().getSize());
+    }
+
+
+    @Test
+    public void overEntryBound_evictsLeastRecentlyUsed() {
+        TextLayoutCache cache = new TextLayoutCache(2, 1024);
+        TextLayoutEngine engine = new TextLayoutEngine(new HelveticaMetrics(), cache);
+
+        engine.layout("one", 12, WIDTH, TextLayout.ALIGN_NORMAL);
+        engine.layout("two", 12, WIDTH, TextLayout.ALIGN_NORMAL);
+        engine.layout("one", 12, WIDTH, TextLayout.ALIGN_NORMAL);
+        engine.layout("three", 12, WIDTH, TextLayout.ALIGN_NORMAL);
+
+        assertNull(cache.get("two", 12, WIDTH, TextLayout.ALIGN_NORMAL, "Helvetica"));
+        assertNotNull(cache.get("one", 12, WIDTH, TextLayout.ALIGN_NORMAL, "Helvetica"));
+        assertEquals(2, cache.getStats().getSize());
+        assertEquals(1, cache.getStats().getEvictions());
+    }
+
+
+    @Test
+    public void overCharacterBound_evictsUntilTextFits() {
+        TextLayoutCache cache = new TextLayoutCache(16, 10);
+        TextLayoutEngine engine = new TextLayoutEngine(new HelveticaMetrics(), cache);
+
+        engine.layout("one", 12, WIDTH, TextLayout.ALIGN_NORMAL);
+        engine.layout("two", 12, WIDTH, TextLayout.ALIGN_NORMAL);
+        engine.layout("three", 12, WIDTH, TextLayout.ALIGN_NORMAL);
+
+        assertNull(cache.get("one", 12, WIDTH, TextLayout.ALIGN_NORMAL, "Helvetica"));
+        assertEquals(8, cache.getStats().getChars());
+    }
+}
@@ -0,0 +1,88 @@
+package com.eldersoftware.pdfassist.pdfcore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Line breaking of the TextLayoutEngine, measured with the Helvetica metrics
+ */
+public class TextLayoutEngineTest {
+    private static final float FONT_SIZE = 12;
+    private static final int WIDTH = PageLayoutEngine.MARGIN_RIGHT - PageLayoutEngine.MARGIN_LEFT;
+
+    private TextMeasurer mMeasurer = new HelveticaMetrics();
+    private TextLayoutEngine mEngine = new TextLayoutEngine(mMeasurer);
+
+
+    @Test
+    public void shortText_staysOnOneLine() {
+        TextLayout layout = mEngine.layout("Kitchen", FONT_SIZE, WIDTH, TextLayout.ALIGN_NORMAL);
+
+        assertEquals(1, layout.getLineCount());
+        assertEquals("Kitchen", layout.getLineText(0));
+        assertEquals(0, layout.getLineLeft(0), 0);
+    }
+
+
+    @Test
+    public void longText_wrapsAtSpacesWithinWidth() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("word").append(i).append(' ');
+        }
+
+        TextLayout layout = mEngine.layout(text.toString(), FONT_SIZE, WIDTH,
+                TextLayout.ALIGN_NORMAL);
+
+        assertTrue(layout.getLineCount() > 1);
+        for (int i = 0; i < layout.getLineCount(); i++) {
+            String line = layout.getLineText(i);
+            assertTrue(line, mMeasurer.measureText(line, 0, line.length(), FONT_SIZE) <= WIDTH);
+            assertTrue(line, !line.startsWith(" ") && !line.endsWith(" "));
+        }
+    }
+
+
+    @Test
+    public void newLines_startParagraphs() {
+        TextLayout layout = mEngine.layout("one\r\n\ntwo", FONT_SIZE, WIDTH,
+                TextLayout.ALIGN_NORMAL);
+
+        assertEquals(3, layout.getLineCount());
+        assertEquals("one", layout.getLineText(0));
+        assertEquals("", layout.getLineText(1));
+        assertEquals("two", layout.getLineText(2));
+        assertEquals(3 * (mMeasurer.getAscent(FONT_SIZE) + mMeasurer.getDescent(FONT_SIZE)),
+                layout.getHeight(), 0.001);
+    }
+
+
+    @Test
+    public void wordWiderThanLine_isBrokenBetweenCharacters() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append('W');
+        }
+
+        TextLayout layout = mEngine.layout(text.toString(), FONT_SIZE, WIDTH,
+                TextLayout.ALIGN_NORMAL);
+
+        assertTrue(layout.getLineCount() > 1);
+        int characters = 0;
+        for (int i = 0; i < layout.getLineCount(); i++) {
+            characters += layout.getLineText(i).length();
+        }
+        assertEquals(200, characters);
+    }
+
+
+    @Test
+    public void centredText_isCentredInWidth() {
+        TextLayout layout = mEngine.layout("Title", FONT_SIZE, WIDTH, TextLayout.ALIGN_CENTER);
+
+        float lineWidth = mMeasurer.measureText("Title", 0, 5, FONT_SIZE);
+        assertEquals((WIDTH - lineWidth) / 2, layout.getLineLeft(0), 0.001);
+    }
+}